@@ -0,0 +1,68 @@
+package experiments;
+
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.lexicon.tr.TurkishDictionaryLoader;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code morphology.analyze} over the distinct surfaces of the parse set.
+ * <p>
+ * Cold: a morphology with the analysis cache disabled, so every call does the full analysis. Warm: the default
+ * morphology after all surfaces were analyzed once, so every call is a cache hit.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AnalyzeBenchmark {
+
+    private ImmutableList<String> surfaces;
+    private TurkishMorphology uncachedMorphology;
+    private TurkishMorphology cachedMorphology;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        surfaces = BenchmarkCorpus.surfaces();
+
+        uncachedMorphology = TurkishMorphology.builder()
+                .setLexicon(TurkishDictionaryLoader.loadDefaultDictionaries())
+                .disableCache()
+                .build();
+
+        cachedMorphology = MorphologySnapshot.load();
+        for (String surface : surfaces) {
+            cachedMorphology.analyze(surface);
+        }
+    }
+
+    @Benchmark
+    public void analyzeCold(Blackhole blackhole) {
+        for (String surface : surfaces) {
+            blackhole.consume(uncachedMorphology.analyze(surface));
+        }
+    }
+
+    @Benchmark
+    public void analyzeWarm(Blackhole blackhole) {
+        for (String surface : surfaces) {
+            blackhole.consume(cachedMorphology.analyze(surface));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package experiments;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fixed inputs for the benchmarks, taken from simpleparseset999.txt. Same data in every run, so the results are
+ * comparable between runs.
+ **/
+final class BenchmarkCorpus {
+
+    static final int PARSE_SET_INDEX = 999;
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * Distinct surfaces in the order they first appear
+     */
+    static ImmutableList<String> surfaces() {
+        final List<Pair<String, String>> lines;
+        try {
+            lines = Resources.asCharSource(Resources.getResource("simpleparseset" + PARSE_SET_INDEX + ".txt"),
+                    Charset.forName("utf-8")).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final Set<String> surfaces = new LinkedHashSet<>();
+        for (Pair<String, String> line : lines) {
+            surfaces.add(line.getLeft());
+        }
+        return ImmutableList.copyOf(surfaces);
+    }
+
+    /**
+     * All analyses of all distinct surfaces
+     */
+    static ImmutableList<SingleAnalysis> analyses(TurkishMorphology morphology) {
+        final ImmutableList.Builder<SingleAnalysis> builder = ImmutableList.builder();
+        for (String surface : surfaces()) {
+            final WordAnalysis analysis = morphology.analyze(surface);
+            builder.addAll(analysis);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,111 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link CorpusPipeline} over simpleparseset999.txt split into {@code files} gzipped files, with platform thread and
+ * virtual thread readers. The formatted analysis cache is warmed up once, so the passes measure reading,
+ * decompressing, scheduling and matching rather than the morphology.
+ * <p>
+ * The {@code VIRTUAL} runs use virtual threads in the Java 21 build, {@code mvn -P java21,benchmark -DskipTests verify},
+ * and a platform thread per file otherwise.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CorpusPipelineBenchmark {
+
+    private static final int ANALYZERS = 4;
+
+    @Param({"8", "256"})
+    public int files;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public CorpusPipeline.Readers readers;
+
+    private Path directory;
+    private List<Path> corpora;
+    private ParseSetEvaluator evaluator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("corpus-pipeline-benchmark");
+        corpora = split(directory, files);
+
+        final TurkishMorphology morphology = MorphologySnapshot.shared();
+        final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
+        final FormattedAnalysisCache cache = FormattedAnalysisCache.withMaxEntries(morphology, formatter, DisambiguateSentences.ANALYSIS_CACHE_SIZE);
+        evaluator = new ParseSetEvaluator(morphology, formatter, false).withCache(cache);
+        new CorpusPipeline(evaluator, ANALYZERS, CorpusPipeline.Readers.PLATFORM, ANALYZERS).evaluate(corpora);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path corpus : corpora) {
+            Files.deleteIfExists(corpus);
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public EvaluationResult evaluate() {
+        return new CorpusPipeline(evaluator, ANALYZERS, readers, ANALYZERS).evaluate(corpora);
+    }
+
+    /**
+     * Deals the sentences of the parse set round robin into {@code count} files
+     */
+    private static List<Path> split(Path directory, int count) throws IOException {
+        final List<Path> corpora = new ArrayList<>(count);
+        final List<Writer> writers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Path corpus = directory.resolve(String.format("part-%04d.txt.gz", i));
+            corpora.add(corpus);
+            writers.add(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(corpus)), StandardCharsets.UTF_8));
+        }
+
+        final List<String> lines = Resources.readLines(Resources.getResource("simpleparseset" + BenchmarkCorpus.PARSE_SET_INDEX + ".txt"),
+                StandardCharsets.UTF_8);
+        int sentence = 0;
+        for (String line : lines) {
+            final Writer writer = writers.get(sentence % count);
+            writer.write(line);
+            writer.write('\n');
+            if (SimpleParseSetReader.END_OF_SENTENCE.equals(line))
+                sentence++;
+        }
+        for (Writer writer : writers) {
+            writer.close();
+        }
+        return corpora;
+    }
+}
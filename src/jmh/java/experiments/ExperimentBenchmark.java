@@ -0,0 +1,51 @@
+package experiments;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole evaluation pass of {@link DisambiguateSentences} over simpleparseset999.txt, with a fresh formatted
+ * analysis cache per pass as in {@code doExperiment}. The morphology is shared, so its own cache is warm after the
+ * first pass.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExperimentBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private TurkishMorphology morphology;
+    private AnalysisFormatter formatter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        morphology = MorphologySnapshot.shared();
+        formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
+    }
+
+    @Benchmark
+    public EvaluationResult doExperiment() throws IOException {
+        final FormattedAnalysisCache cache = FormattedAnalysisCache.withMaxEntries(morphology, formatter, DisambiguateSentences.ANALYSIS_CACHE_SIZE);
+        return DisambiguateSentences.runExperiment(BenchmarkCorpus.PARSE_SET_INDEX, false, morphology, formatter, threads, cache);
+    }
+}
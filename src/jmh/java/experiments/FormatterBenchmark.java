@@ -0,0 +1,73 @@
+package experiments;
+
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.SingleAnalysis;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code format()} of the Sabanci-METU formatters over all analyses of the surfaces in the parse set.
+ * <p>
+ * Scores are per corpus pass; divide by the analysis count printed in setup for a single analysis. The benchmark
+ * profile runs with {@code -prof gc}, so {@code gc.alloc.rate.norm} compares the bytes each formatter allocates per
+ * pass.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FormatterBenchmark {
+
+    @Param({"1", "2", "3"})
+    public int formatterVersion;
+
+    @Param({"true", "false"})
+    public boolean addIndices;
+
+    private ImmutableList<SingleAnalysis> analyses;
+    private AnalysisFormatter formatter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        analyses = BenchmarkCorpus.analyses(MorphologySnapshot.shared());
+
+        switch (formatterVersion) {
+            case 1:
+                formatter = new SabanciMetuTreeBankAnalysisFormatter(addIndices);
+                break;
+            case 2:
+                formatter = new SabanciMetuTreeBankAnalysisFormatter2(addIndices);
+                break;
+            case 3:
+                formatter = new SabanciMetuTreeBankAnalysisFormatter3(addIndices);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown formatter version " + formatterVersion);
+        }
+
+        System.out.println("Analysis count: " + analyses.size());
+    }
+
+    @Benchmark
+    public void format(Blackhole blackhole) {
+        for (SingleAnalysis analysis : analyses) {
+            blackhole.consume(formatter.format(analysis));
+        }
+    }
+}
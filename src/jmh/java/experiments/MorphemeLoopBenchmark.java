@@ -0,0 +1,109 @@
+package experiments;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import zemberek.core.turkish.PrimaryPos;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.morphotactics.Morpheme;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The group emission loop of {@link SabanciMetuTreeBankAnalysisFormatter} driven by {@link MorphemeDescriptor}s
+ * ({@link #descriptorLoop}) against the loop it replaced, which collected {@code morpheme.id} strings into group
+ * lists, asked {@code id.startsWith("Neg")} per morpheme and joined the groups ({@link #stringLoop}). Both start
+ * from the cached lexeme prefix, so only the loop differs.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MorphemeLoopBenchmark {
+
+    @Param({"true", "false"})
+    public boolean addIndices;
+
+    private ImmutableList<SingleAnalysis> analyses;
+    private SabanciMetuTreeBankAnalysisFormatter formatter;
+    private LexemePrefixes lexemePrefixes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        analyses = BenchmarkCorpus.analyses(MorphologySnapshot.shared());
+        formatter = new SabanciMetuTreeBankAnalysisFormatter(addIndices);
+        lexemePrefixes = SabanciMetuTreeBankAnalysisFormatter.lexemePrefixes();
+
+        for (SingleAnalysis analysis : analyses) {
+            if (!formatter.format(analysis).equals(stringLoop(analysis)))
+                throw new IllegalStateException("Loops differ for " + analysis.formatLong());
+        }
+    }
+
+    @Benchmark
+    public void descriptorLoop(Blackhole blackhole) {
+        for (SingleAnalysis analysis : analyses) {
+            blackhole.consume(formatter.format(analysis));
+        }
+    }
+
+    @Benchmark
+    public void stringLoop(Blackhole blackhole) {
+        for (SingleAnalysis analysis : analyses) {
+            blackhole.consume(stringLoop(analysis));
+        }
+    }
+
+    private String stringLoop(SingleAnalysis analysis) {
+        final List<List<String>> groups = new ArrayList<>();
+
+        List<String> currentGroup = new ArrayList<>(Arrays.asList(lexemePrefixes.of(analysis.getDictionaryItem())));
+        PrimaryPos currentPos = analysis.getDictionaryItem().primaryPos;
+        int currentMorphemeCountInDerivationalGroup = 0;
+
+        final List<SingleAnalysis.MorphemeData> surfaces = analysis.getMorphemeDataList();
+        for (int i = 1; i < surfaces.size(); i++) {
+            final Morpheme morpheme = surfaces.get(i).morpheme;
+
+            if (morpheme.derivational) {
+                groups.add(currentGroup);
+                final PrimaryPos nextPos = surfaces.get(i + 1).morpheme.pos;
+                currentPos = nextPos;
+                currentGroup = new ArrayList<>(Arrays.asList(nextPos.getStringForm()));
+                currentMorphemeCountInDerivationalGroup = 0;
+            } else if (currentPos == PrimaryPos.Verb && !morpheme.id.startsWith("Neg") && currentMorphemeCountInDerivationalGroup == 0) {
+                currentGroup.add("Pos");
+            }
+
+            currentMorphemeCountInDerivationalGroup++;
+            currentGroup.add(morpheme.id);
+        }
+        groups.add(currentGroup);
+
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < groups.size(); i++) {
+            builder.append("(");
+            if (addIndices)
+                builder.append(i + 1).append(",");
+            builder.append("\"").append(Joiner.on("+").join(groups.get(i))).append("\")");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package experiments;
+
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import zemberek.morphology.analysis.SingleAnalysis;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The rule table of {@link SabanciMetuTreeBankAnalysisFormatter2} on its own, over the pre-rule formats of all
+ * analyses in the parse set. {@link #applyRulesSequentially} is the old one-{@code replace}-per-rule chain.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RulesBenchmark {
+
+    @Param({"true", "false"})
+    public boolean addIndices;
+
+    private SabanciMetuTreeBankAnalysisFormatter2 formatter;
+    private ImmutableList<String> rulelessFormats;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        formatter = new SabanciMetuTreeBankAnalysisFormatter2(addIndices);
+
+        final ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (SingleAnalysis analysis : BenchmarkCorpus.analyses(MorphologySnapshot.shared())) {
+            builder.add(formatter.formatWithoutRules(analysis));
+        }
+        rulelessFormats = builder.build();
+    }
+
+    @Benchmark
+    public void applyRules(Blackhole blackhole) {
+        for (String base : rulelessFormats) {
+            blackhole.consume(formatter.applyRules(base));
+        }
+    }
+
+    @Benchmark
+    public void applyRulesSequentially(Blackhole blackhole) {
+        final SequentialReplacer rules = SabanciMetuTreeBankAnalysisFormatter2.rules();
+        for (String base : rulelessFormats) {
+            blackhole.consume(rules.replaceSequentially(base));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package experiments;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import zemberek.morphology.TurkishMorphology;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start: a single morphology construction in a fresh JVM, with the default dictionaries and from the
+ * {@link MorphologySnapshot}.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    /**
+     * Writes the snapshot if there is none yet, so that it is never measured
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (!Files.isRegularFile(MorphologySnapshot.snapshotFile()))
+            MorphologySnapshot.load();
+    }
+
+    @Benchmark
+    public TurkishMorphology createWithDefaults() {
+        return TurkishMorphology.createWithDefaults();
+    }
+
+    @Benchmark
+    public TurkishMorphology loadSnapshot() throws IOException {
+        return MorphologySnapshot.load();
+    }
+}
@@ -0,0 +1,202 @@
+package experiments;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Multi-pattern substring matcher, compiled once into a dense Aho-Corasick automaton.
+ * <p>
+ * The index of a pattern is its priority: queries answer "the smallest pattern index that occurs in the text",
+ * optionally above a given index. That is what ordered rule tables need.
+ * <p>
+ * Immutable and thread safe.
+ **/
+public class AhoCorasickMatcher {
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final String[] patterns;
+
+    /**
+     * Characters used in the patterns, sorted. Class of a char is its position here + 1, class 0 is "any other char"
+     */
+    private final char[] alphabet;
+    private final byte[] asciiClasses;
+    private final int classCount;
+
+    /**
+     * transitions[state * classCount + charClass]
+     */
+    private final int[] transitions;
+
+    /**
+     * Sorted indices of all patterns that end at a state, including the ones inherited over failure links
+     */
+    private final int[][] outputs;
+
+    public AhoCorasickMatcher(List<String> patterns) {
+        this.patterns = patterns.toArray(new String[0]);
+
+        final TreeSet<Character> chars = new TreeSet<>();
+        for (String pattern : this.patterns) {
+            Validate.notEmpty(pattern, "Empty pattern");
+            for (int i = 0; i < pattern.length(); i++)
+                chars.add(pattern.charAt(i));
+        }
+
+        this.alphabet = new char[chars.size()];
+        int k = 0;
+        for (Character c : chars)
+            this.alphabet[k++] = c;
+        Validate.isTrue(alphabet.length < Byte.MAX_VALUE, "Too many distinct pattern characters");
+
+        this.asciiClasses = new byte[128];
+        for (int i = 0; i < alphabet.length; i++) {
+            if (alphabet[i] < 128)
+                asciiClasses[alphabet[i]] = (byte) (i + 1);
+        }
+        this.classCount = alphabet.length + 1;
+
+        // trie
+        final List<int[]> children = new ArrayList<>();
+        final List<TreeSet<Integer>> stateOutputs = new ArrayList<>();
+        children.add(newRow());
+        stateOutputs.add(new TreeSet<>());
+
+        for (int p = 0; p < this.patterns.length; p++) {
+            final String pattern = this.patterns[p];
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                final int charClass = charClass(pattern.charAt(i));
+                int next = children.get(state)[charClass];
+                if (next <= 0) {
+                    next = children.size();
+                    children.add(newRow());
+                    stateOutputs.add(new TreeSet<>());
+                    children.get(state)[charClass] = next;
+                }
+                state = next;
+            }
+            stateOutputs.get(state).add(p);
+        }
+
+        // failure links, folded into a complete transition table
+        final int stateCount = children.size();
+        this.transitions = new int[stateCount * classCount];
+        final int[] failures = new int[stateCount];
+        final Deque<Integer> queue = new ArrayDeque<>();
+
+        final int[] rootRow = children.get(0);
+        for (int c = 0; c < classCount; c++) {
+            final int next = rootRow[c];
+            if (next > 0) {
+                transitions[c] = next;
+                failures[next] = 0;
+                queue.add(next);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            stateOutputs.get(state).addAll(stateOutputs.get(failures[state]));
+            final int[] row = children.get(state);
+            for (int c = 0; c < classCount; c++) {
+                final int next = row[c];
+                final int fallback = transitions[failures[state] * classCount + c];
+                if (next > 0) {
+                    transitions[state * classCount + c] = next;
+                    failures[next] = fallback;
+                    queue.add(next);
+                } else {
+                    transitions[state * classCount + c] = fallback;
+                }
+            }
+        }
+
+        this.outputs = new int[stateCount][];
+        for (int s = 0; s < stateCount; s++) {
+            final TreeSet<Integer> set = stateOutputs.get(s);
+            if (set.isEmpty()) {
+                outputs[s] = NO_OUTPUT;
+            } else {
+                outputs[s] = new int[set.size()];
+                int i = 0;
+                for (Integer p : set)
+                    outputs[s][i++] = p;
+            }
+        }
+    }
+
+    private int[] newRow() {
+        return new int[classCount];
+    }
+
+    private int charClass(char c) {
+        if (c < 128)
+            return asciiClasses[c];
+        final int i = Arrays.binarySearch(alphabet, c);
+        return i < 0 ? 0 : i + 1;
+    }
+
+    public int patternCount() {
+        return patterns.length;
+    }
+
+    public String pattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * @return smallest index of a pattern that occurs in the text, -1 if none occurs
+     */
+    public int firstPattern(CharSequence text) {
+        return firstPatternAbove(text, 0, -1);
+    }
+
+    /**
+     * @return smallest index of a pattern that occurs in the text from {@code from} on, -1 if none occurs
+     */
+    public int firstPattern(CharSequence text, int from) {
+        return firstPatternAbove(text, from, -1);
+    }
+
+    public boolean containsAny(CharSequence text) {
+        return firstPatternAbove(text, 0, -1) >= 0;
+    }
+
+    /**
+     * @return smallest index greater than {@code after} of a pattern that occurs in the text, -1 if none occurs
+     */
+    public int firstPatternAbove(CharSequence text, int after) {
+        return firstPatternAbove(text, 0, after);
+    }
+
+    private int firstPatternAbove(CharSequence text, int from, int after) {
+        int best = Integer.MAX_VALUE;
+        int state = 0;
+        for (int i = from; i < text.length(); i++) {
+            state = transitions[state * classCount + charClass(text.charAt(i))];
+            final int[] output = outputs[state];
+            if (output.length == 0 || output[output.length - 1] <= after)
+                continue;
+
+            for (int p : output) {
+                if (p > after) {
+                    if (p < best) {
+                        best = p;
+                        if (best == after + 1)
+                            return best;
+                    }
+                    break;
+                }
+            }
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+}
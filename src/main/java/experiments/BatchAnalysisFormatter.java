@@ -0,0 +1,20 @@
+package experiments;
+
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.SingleAnalysis;
+
+/**
+ * An {@link AnalysisFormatter} that can format many analyses into one {@link FormattedBatch}: all candidates of a
+ * {@code WordAnalysis}, or the best analyses of the tokens of a sentence.
+ **/
+public interface BatchAnalysisFormatter extends AnalysisFormatter {
+
+    /**
+     * Appends one slice per analysis to the batch, in iteration order
+     */
+    default void formatAll(Iterable<SingleAnalysis> analyses, FormattedBatch batch) {
+        for (SingleAnalysis analysis : analyses) {
+            batch.add(format(analysis));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package experiments;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.Validate;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates many simple parse sets in one run:
+ * <pre>
+ *     BatchEvaluation &lt;threads&gt; &lt;output directory&gt; &lt;directory or glob&gt;...
+ * </pre>
+ * A directory stands for the {@code .txt}, {@code .txt.gz} and {@code .bin} files in it; a glob may only have wildcards
+ * in the file name, e.g. {@code treebank/splits/dev-*.txt.gz}. {@code .bin} files are read as {@link CompiledParseSet}s.
+ * <p>
+ * The corpora are read concurrently and their chunks go to one shared pool of {@code threads} workers, so a small
+ * corpus doesn't leave threads idle while a big one is evaluated. All of them use the same {@link TurkishMorphology}
+ * and {@link FormattedAnalysisCache}; surfaces that are common across corpora are analyzed once.
+ * <p>
+ * Writes {@code <corpus name>.summary.txt} for every corpus and {@code aggregate.summary.txt} for all of them together
+ * to the output directory, and prints a table of the corpora. The name of a corpus is its path relative to the deepest
+ * directory that holds all corpora, so {@code a/dev.txt} and {@code b/dev.txt} get summaries of their own in
+ * {@code a/} and {@code b/} under the output directory.
+ **/
+public class BatchEvaluation {
+
+    private final TurkishMorphology morphology;
+    private final AnalysisFormatter formatter;
+    private final FormattedAnalysisCache cache;
+    private final int threads;
+
+    public BatchEvaluation(TurkishMorphology morphology, AnalysisFormatter formatter, FormattedAnalysisCache cache, int threads) {
+        Validate.isTrue(threads > 0);
+        this.morphology = morphology;
+        this.formatter = formatter;
+        this.cache = cache;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Validate.isTrue(args.length >= 3, "Usage: BatchEvaluation <threads> <output directory> <directory or glob>...");
+        final int threads = Integer.parseInt(args[0]);
+        final Path outputDirectory = Paths.get(args[1]);
+        final List<Path> corpora = corpora(args, 2);
+        Validate.isTrue(!corpora.isEmpty(), "No corpus files found");
+
+        final TurkishMorphology morphology = MorphologySnapshot.shared();
+        final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
+        final FormattedAnalysisCache cache = FormattedAnalysisCache.withMaxEntries(morphology, formatter, DisambiguateSentences.ANALYSIS_CACHE_SIZE);
+
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final Map<Path, CorpusResult> results = new BatchEvaluation(morphology, formatter, cache, threads).evaluate(corpora);
+        stopwatch.stop();
+
+        Files.createDirectories(outputDirectory);
+        final Map<Path, String> names = names(corpora);
+        final EvaluationResult aggregate = new EvaluationResult(false);
+        for (Map.Entry<Path, CorpusResult> entry : results.entrySet()) {
+            aggregate.merge(entry.getValue().result);
+            writeSummary(outputDirectory.resolve(names.get(entry.getKey()) + ".summary.txt"), entry.getValue().result);
+        }
+        writeSummary(outputDirectory.resolve("aggregate.summary.txt"), aggregate);
+
+        printTable(System.out, results, names, aggregate, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        cache.printStats(System.out);
+    }
+
+    /**
+     * @return absolute files of the directories and globs in {@code args} from {@code from} on, each directory and glob
+     * sorted by name, without duplicates
+     */
+    static List<Path> corpora(String[] args, int from) throws IOException {
+        final Set<Path> corpora = new LinkedHashSet<>();
+        for (int i = from; i < args.length; i++) {
+            final Path path = Paths.get(args[i]);
+            final Path directory;
+            final String glob;
+            if (Files.isDirectory(path)) {
+                directory = path;
+                glob = "*.{txt,txt.gz,bin}";
+            } else {
+                directory = path.toAbsolutePath().getParent();
+                glob = path.getFileName().toString();
+            }
+
+            final TreeSet<Path> files = new TreeSet<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file))
+                        files.add(file.toAbsolutePath().normalize());
+                }
+            }
+            corpora.addAll(files);
+        }
+        return ImmutableList.copyOf(corpora);
+    }
+
+    /**
+     * @param corpora absolute files, as returned by {@link #corpora(String[], int)}
+     * @return distinct name of every corpus: its path relative to the deepest directory that holds all of them
+     */
+    static Map<Path, String> names(List<Path> corpora) {
+        Path common = corpora.get(0).getParent();
+        for (Path corpus : corpora) {
+            while (common != null && !corpus.startsWith(common)) {
+                common = common.getParent();
+            }
+        }
+
+        final Map<Path, String> names = new LinkedHashMap<>();
+        for (Path corpus : corpora) {
+            names.put(corpus, common == null ? corpus.toString() : common.relativize(corpus).toString());
+        }
+        return names;
+    }
+
+    /**
+     * @return results in the order of the given corpora
+     */
+    public Map<Path, CorpusResult> evaluate(List<Path> corpora) throws IOException {
+        // the drivers only read and wait for their chunks, the work is done in the shared worker pool
+        final ExecutorService workers = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        final ExecutorService drivers = Executors.newFixedThreadPool(workers == null ? 1 : Math.min(threads, corpora.size()));
+        try {
+            final List<Future<CorpusResult>> futures = new ArrayList<>(corpora.size());
+            for (Path corpus : corpora) {
+                futures.add(drivers.submit(() -> evaluate(corpus, workers)));
+            }
+
+            final Map<Path, CorpusResult> results = new LinkedHashMap<>();
+            for (int i = 0; i < corpora.size(); i++) {
+                results.put(corpora.get(i), ParseSetEvaluator.get(futures.get(i)));
+            }
+            return results;
+        } finally {
+            drivers.shutdown();
+            if (workers != null)
+                workers.shutdown();
+        }
+    }
+
+    private CorpusResult evaluate(Path corpus, ExecutorService workers) throws IOException {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final ParseSetEvaluator evaluator = new ParseSetEvaluator(morphology, formatter, false, workers, ParseSetEvaluator.DEFAULT_CHUNK_SIZE)
+                .withCache(cache);
+        final EvaluationResult result;
+        if (CompiledParseSet.isCompiled(corpus)) {
+            result = evaluator.evaluate(CompiledParseSet.open(corpus).lines());
+        } else {
+            try (SimpleParseSetReader reader = SimpleParseSetReader.open(corpus)) {
+                result = evaluator.evaluate(reader);
+            }
+        }
+        return new CorpusResult(result, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    private static void writeSummary(Path file, EvaluationResult result) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+            result.printSummary(out);
+            result.printSkipRuleHits(out);
+        }
+    }
+
+    static void printTable(PrintStream out, Map<Path, CorpusResult> results, Map<Path, String> names, EvaluationResult aggregate,
+                           long elapsedMillis) {
+        long corpusMillis = 0;
+        out.println("=====Corpora");
+        out.println(String.format(Locale.ROOT, "%-40s %10s %10s %10s %10s", "corpus", "surfaces", "correct %", "unparsable", "millis"));
+        for (Map.Entry<Path, CorpusResult> entry : results.entrySet()) {
+            final CorpusResult corpus = entry.getValue();
+            out.println(String.format(Locale.ROOT, "%-40s %10d %10.2f %10d %10d", names.get(entry.getKey()), corpus.result.getNumberOfSurfaces(),
+                    correctPercentage(corpus.result), corpus.result.unparsable, corpus.elapsedMillis));
+            corpusMillis += corpus.elapsedMillis;
+        }
+        out.println(String.format(Locale.ROOT, "%-40s %10d %10.2f %10d %10d", "aggregate", aggregate.getNumberOfSurfaces(),
+                correctPercentage(aggregate), aggregate.unparsable, elapsedMillis));
+        out.println("Sum of corpus wall times :\t\t" + corpusMillis + " ms");
+        out.println("Wall time                :\t\t" + elapsedMillis + " ms");
+    }
+
+    private static double correctPercentage(EvaluationResult result) {
+        return result.getNumberOfSurfaces() == 0 ? 0 : result.getCorrectParses() * 100.0 / result.getNumberOfSurfaces();
+    }
+
+    public static class CorpusResult {
+        final EvaluationResult result;
+        final long elapsedMillis;
+
+        CorpusResult(EvaluationResult result, long elapsedMillis) {
+            this.result = result;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public EvaluationResult result() {
+            return result;
+        }
+    }
+}
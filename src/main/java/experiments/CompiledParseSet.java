@@ -0,0 +1,207 @@
+package experiments;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Memory mapped reader of a parse set compiled by {@link SimpleParseSetCompiler}. Opening only maps the file and reads
+ * the header; lines are decoded when they are accessed. Each string and expected parse is decoded at most once and
+ * the same instance is returned afterwards.
+ * <p>
+ * Lines and sentences are random access {@link List} views, so a part of the parse set can be evaluated without
+ * touching the rest, e.g. {@code evaluator.evaluate(parseSet.lines(from, to))} for a shard of sentences.
+ * <p>
+ * Thread safe. Two threads may decode the same string at the same time; both get equal strings.
+ **/
+public class CompiledParseSet {
+
+    static final String EXTENSION = ".bin";
+
+    private final ByteBuffer buffer;
+
+    private final int stringCount;
+    private final int parseCount;
+    private final int tokenCount;
+    private final int sentenceCount;
+
+    private final int stringOffsetsPosition;
+    private final int parseOffsetsPosition;
+    private final int parseDataPosition;
+    private final int tokenSurfacesPosition;
+    private final int tokenParsesPosition;
+    private final int sentenceStartsPosition;
+    private final int stringBytesPosition;
+
+    private final String[] strings;
+    private final String[] parses;
+
+    private final List<Pair<String, String>> lines;
+
+    CompiledParseSet(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        Validate.isTrue(buffer.getInt(0) == SimpleParseSetCompiler.MAGIC, "Not a compiled parse set");
+        Validate.isTrue(buffer.getInt(4) == SimpleParseSetCompiler.VERSION, "Unsupported compiled parse set version %d", buffer.getInt(4));
+        Validate.isTrue(buffer.getInt(8) == DisambiguateSentences.parseResultReplaceHacksFingerprint(),
+                "Parse set was compiled with other replace hacks, compile it again");
+
+        stringCount = buffer.getInt(12);
+        parseCount = buffer.getInt(16);
+        tokenCount = buffer.getInt(20);
+        sentenceCount = buffer.getInt(24);
+
+        stringOffsetsPosition = SimpleParseSetCompiler.HEADER_INTS * 4;
+        parseOffsetsPosition = stringOffsetsPosition + (stringCount + 1) * 4;
+        parseDataPosition = parseOffsetsPosition + (parseCount + 1) * 4;
+        tokenSurfacesPosition = parseDataPosition + intAt(parseOffsetsPosition, parseCount) * 4;
+        tokenParsesPosition = tokenSurfacesPosition + tokenCount * 4;
+        sentenceStartsPosition = tokenParsesPosition + tokenCount * 4;
+        stringBytesPosition = sentenceStartsPosition + (sentenceCount + 1) * 4;
+
+        strings = new String[stringCount];
+        parses = new String[parseCount];
+        lines = new LineList();
+    }
+
+    public static CompiledParseSet open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new CompiledParseSet(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return whether the file is named like a compiled parse set; the evaluation entry points read these files with
+     * {@link #open(Path)} and all other ones as text
+     */
+    public static boolean isCompiled(Path path) {
+        return path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    public int sentenceCount() {
+        return sentenceCount;
+    }
+
+    public int distinctSurfaceAndTagCount() {
+        return stringCount;
+    }
+
+    public int distinctParseCount() {
+        return parseCount;
+    }
+
+    /**
+     * @return all lines, without sentence boundaries
+     */
+    public List<Pair<String, String>> lines() {
+        return lines;
+    }
+
+    /**
+     * @return lines of the sentences {@code fromSentence} (inclusive) to {@code toSentence} (exclusive)
+     */
+    public List<Pair<String, String>> lines(int fromSentence, int toSentence) {
+        Validate.isTrue(0 <= fromSentence && fromSentence <= toSentence && toSentence <= sentenceCount,
+                "Invalid sentence range [%d, %d) of %d", fromSentence, toSentence, sentenceCount);
+        return lines.subList(sentenceStart(fromSentence), sentenceStart(toSentence));
+    }
+
+    public List<Pair<String, String>> sentence(int index) {
+        return lines(index, index + 1);
+    }
+
+    public List<List<Pair<String, String>>> sentences() {
+        final List<List<Pair<String, String>>> sentences = new ArrayList<>(sentenceCount);
+        for (int i = 0; i < sentenceCount; i++) {
+            sentences.add(sentence(i));
+        }
+        return sentences;
+    }
+
+    public int sentenceStart(int sentence) {
+        return intAt(sentenceStartsPosition, sentence);
+    }
+
+    public int surfaceId(int token) {
+        Validate.validIndex(lines, token);
+        return intAt(tokenSurfacesPosition, token);
+    }
+
+    public int parseId(int token) {
+        Validate.validIndex(lines, token);
+        return intAt(tokenParsesPosition, token);
+    }
+
+    public String string(int id) {
+        String string = strings[id];
+        if (string == null) {
+            final int from = intAt(stringOffsetsPosition, id);
+            final int to = intAt(stringOffsetsPosition, id + 1);
+            final ByteBuffer bytes = buffer.duplicate();
+            bytes.position(stringBytesPosition + from);
+            bytes.limit(stringBytesPosition + to);
+            string = StandardCharsets.UTF_8.decode(bytes).toString();
+            strings[id] = string;
+        }
+        return string;
+    }
+
+    public String parse(int id) {
+        String parse = parses[id];
+        if (parse == null) {
+            parse = decodeParse(id);
+            parses[id] = parse;
+        }
+        return parse;
+    }
+
+    private String decodeParse(int id) {
+        int position = intAt(parseOffsetsPosition, id);
+        final int groupCount = intAt(parseDataPosition, position++);
+        if (groupCount == 0)
+            return string(intAt(parseDataPosition, position));
+
+        final StringBuilder builder = new StringBuilder();
+        for (int group = 1; group <= groupCount; group++) {
+            builder.append('(').append(group).append(",\"");
+            final int tagCount = intAt(parseDataPosition, position++);
+            for (int i = 0; i < tagCount; i++) {
+                if (i > 0)
+                    builder.append('+');
+                builder.append(string(intAt(parseDataPosition, position++)));
+            }
+            builder.append("\")");
+        }
+        return builder.toString();
+    }
+
+    private int intAt(int sectionPosition, int index) {
+        return buffer.getInt(sectionPosition + index * 4);
+    }
+
+    private class LineList extends AbstractList<Pair<String, String>> implements RandomAccess {
+        @Override
+        public Pair<String, String> get(int token) {
+            return Pair.of(string(surfaceId(token)), parse(parseId(token)));
+        }
+
+        @Override
+        public int size() {
+            return tokenCount;
+        }
+    }
+}
@@ -1,296 +1,207 @@
-//package experiments;
-//
-//import com.google.common.base.Joiner;
-//import com.google.common.collect.*;
-//import com.google.common.io.CharSource;
-//import com.google.common.io.LineProcessor;
-//import com.google.common.io.Resources;
-//import org.apache.commons.lang3.Validate;
-//import org.apache.commons.lang3.tuple.Pair;
-//import zemberek.morphology.TurkishMorphology;
-//import zemberek.morphology.analysis.AnalysisFormatter;
-//import zemberek.morphology.analysis.WordAnalysis;
-//
-//import java.io.IOException;
-//import java.nio.charset.Charset;
-//import java.util.Collection;
-//import java.util.List;
-//import java.util.Map;
-//
-//public class ConvertSabanciMetuToZemberekFormat {
-//
-//    public static void main(String[] args) throws IOException {
-//
-//        TurkishMorphology morphology = TurkishMorphology.createWithDefaults();
-//        final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter(true);
-//
-//        doExperiment(999, false, morphology, formatter);
-//
-//
-////
-////            final List<MorphemeContainer> retrievedResults = this.parse(surfaceToParse);
-////            if (Character.isUpperCase(surfaceToParse.charAt(0))) {
-////                retrievedResults.addAll(this.parse(Character.toLowerCase(surfaceToParse.charAt(0)) + surfaceToParse.substring(1)));
-////            }
-////
-////            if (CollectionUtils.isEmpty(retrievedResults)) {
-////                if (printSurfaces)
-////                    System.out.println("Surface '" + surfaceToParse + "' is not parseable");
-////                unparsableSurfaces.add(surfaceToParse + "\t" + expectedResult);
-////                unparsable++;
-////            } else {
-////                final Collection<String> formattedRetrievedResults = MorphemeContainerFormatter.formatMorphemeContainersWithDerivationGrouping(retrievedResults);
-////                if (!formattedRetrievedResults.contains(expectedResult)) {
-////                    if (printSurfaces) {
-////                        System.out.println("Surface '" + surfaceToParse + "' is parseable, but expected result '" + expectedResult + "' is not found!");
-////                        System.out.println("\t" + Joiner.on("\n\t").join(formattedRetrievedResults));
-////                    }
-////                    incorrectParsedSurfaces.add(expectedResult);
-////                    incorrectParses++;
-////                }
-////            }
-////        }
-////
-//
-////
-////
-////        TurkishMorphology morphology = TurkishMorphology.createWithDefaults();
-////
-////        String sentence = "Yarın akşam kar yağacak gibi.";
-////        Log.info("Sentence  = " + sentence);
-////        List<WordAnalysis> analyses = morphology.analyzeSentence(sentence);
-////
-////        Log.info("Sentence word analysis result:");
-////        for (WordAnalysis entry : analyses) {
-////            Log.info("Word = " + entry.getInput());
-////            for (SingleAnalysis analysis : entry) {
-////                Log.info(analysis.formatLong());
-////            }
-////        }
-////        SentenceAnalysis result = morphology.disambiguate(sentence, analyses);
-////
-////        Log.info("\nAfter ambiguity resolution : ");
-////
-////        result.bestAnalysis().forEach(Log::info);
-//    }
-//
-//    private static void doExperiment(int index, boolean printSurfaces, TurkishMorphology morphology, AnalysisFormatter formatter) throws IOException {
-//
-//        final CharSource source = Resources.asCharSource(Resources.getResource("simpleparseset" + index + ".txt"),
-//                Charset.forName("utf-8"));
-//
-//        //read all in advance
-//        final List<Pair<String, String>> lines = source.readLines(new SimpleParseSetValidationLineProcessor());
-//
-//        final int numberOfSurfaces = lines.size();
-//        System.out.println("Number of words to parse " + numberOfSurfaces);
-//
-//        int unparsable = 0;
-//        int incorrectParses = 0;
-//        int skippedSurfaces = 0;
-//        int skippedExpectedParseResults = 0;
-//
-//        final TreeMultiset<String> unparsableSurfaces = TreeMultiset.create();
-//        final TreeMultiset<String> incorrectParsedSurfaces = TreeMultiset.create();
-//
-//        for (Pair<String, String> line : lines) {
-//            final String surfaceToParse = line.getLeft();
-//            if (SURFACES_TO_SKIP.contains(surfaceToParse)) {
-//                if (printSurfaces)
-//                    System.out.println("Surface '" + surfaceToParse + "' is a skippedSurface");
-//                skippedSurfaces++;
-//                continue;
-//            }
-//
-//            final String expectedResult = line.getRight();
-//            if (isSkippedExpectedParseResult(expectedResult)) {
-//                if (printSurfaces)
-//                    System.out.println("Surface with expected parse result '" + expectedResult + "' is a skippedExpectedParseResult");
-//                skippedExpectedParseResults++;
-//                continue;
-//            }
-//
-//            final WordAnalysis analysis = morphology.analyze(surfaceToParse);
-//
-//            if (analysis.analysisCount() == 0) {
-//                if (printSurfaces)
-//                    System.out.println("Surface '" + surfaceToParse + "' is not parseable");
-//                unparsableSurfaces.add(surfaceToParse + "\t" + expectedResult);
-//                unparsable++;
-//            } else {
-//                final Collection<String> formattedRetrievedResults = FluentIterable.from(analysis).transform(input -> formatter.format(input)).toList();
-//                if (!formattedRetrievedResults.contains(expectedResult)) {
-//                    if (printSurfaces) {
-//                        System.out.println("Surface '" + surfaceToParse + "' is parseable, but expected result '" + expectedResult + "' is not found!");
-//                        System.out.println("\t" + Joiner.on("\n\t").join(formattedRetrievedResults));
-//                    }
-//                    incorrectParsedSurfaces.add(surfaceToParse + " ----> " + expectedResult + " ----> " + formattedRetrievedResults.toString());
-//                    incorrectParses++;
-//                }
-//            }
-//        }
-//
-//
-//        final int correctParses = numberOfSurfaces - unparsable - incorrectParses - skippedSurfaces - skippedExpectedParseResults;
-//
-//        System.out.println("========SUMMARY===========");
-//        System.out.println("Surface count             :\t\t" + numberOfSurfaces);
-//        System.out.println("Unparsable                :\t\t" + unparsable);
-//        System.out.println("Incorrect parses          :\t\t" + incorrectParses);
-//        System.out.println("Skipped surfaces          :\t\t" + skippedSurfaces);
-//        System.out.println("Skipped parse results     :\t\t" + skippedExpectedParseResults);
-//        System.out.println("Correct parses            :\t\t" + correctParses);
-//        System.out.println("Correct parse %           :\t\t" + (correctParses) * 1.0 / numberOfSurfaces * 100);
-//
-//        final ImmutableMultiset<String> unparsableSurfacesByFrequencies = Multisets.copyHighestCountFirst(unparsableSurfaces);
-//        final ImmutableMultiset<String> incorrectParsedSurfacesByFrequencies = Multisets.copyHighestCountFirst(incorrectParsedSurfaces);
-//
-//        System.out.println("=====Unparsable surfaces");
-//        for (Multiset.Entry<String> entry : unparsableSurfacesByFrequencies.entrySet()) {
-//            System.out.println(entry.getElement() + "\t\t\t" + entry.getCount());
-//        }
-//
-//        System.out.println("=====Incorrect parsed surfaces with occurrence count > 1=====");
-//        for (Multiset.Entry<String> entry : incorrectParsedSurfacesByFrequencies.entrySet()) {
-//            if (entry.getCount() > 1)
-//                System.out.println(entry.getElement() + "\t\t\t" + entry.getCount());
-//        }
-//
-//
-//    }
-//
-//    public static class SimpleParseSetValidationLineProcessor implements LineProcessor<List<Pair<String, String>>> {
-//        final ImmutableList.Builder<Pair<String, String>> builder = ImmutableList.builder();
-//
-//        @Override
-//        public boolean processLine(final String line) throws IOException {
-//            if (!"#END#OF#SENTENCE#".equals(line)) {
-//                final String[] split = line.split("=", 2);
-//                Validate.isTrue(split.length == 2, line);
-//                final String surface = split[0];
-//                final String expectedParseResultStr = applyParseResultReplaceHack(split[1]);
-//                builder.add(Pair.of(surface, expectedParseResultStr));
-//            }
-//            return true;
-//        }
-//
-//        private String applyParseResultReplaceHack(String expectedParseResultStr) {
-//            for (Map.Entry<String, String> parseResultReplaceHackEntry : PARSE_RESULT_REPLACE_HACK_MAP.entrySet()) {
-//                expectedParseResultStr = expectedParseResultStr.replace(parseResultReplaceHackEntry.getKey(), parseResultReplaceHackEntry.getValue());
-//            }
-//            return expectedParseResultStr;
-//        }
-//
-//        @Override
-//        public List<Pair<String, String>> getResult() {
-//            return builder.build();
-//        }
-//    }
-//
-//    private static boolean isSkippedExpectedParseResult(String expectedResult) {
-//        if (EXPECTED_PARSE_RESULTS_TO_SKIP.contains(expectedResult))
-//            return true;
-//        for (String s : EXPECTED_PARSE_RESULTS_TO_SKIP) {
-//            if (expectedResult.contains(s))
-//                return true;
-//        }
-//
-//        return false;
-//    }
-//
-//    private static final ImmutableMap<String, String> PARSE_RESULT_REPLACE_HACK_MAP = new ImmutableMap.Builder<String, String>()
-//            // for example, in simple parse set, there is a suffix Prog1 for "iyor", and Prog2 for "makta"
-//            // but, we don't differentiate them and use "Prog" for both
-//            // thus, we need a small hack for validating simple parse sets
-//            .put("Prog1", "Prog")
-//            .put("Prog2", "Prog")
-//            .put("Inf1", "Inf")
-//            .put("Inf2", "Inf")
-//            .put("Inf3", "Inf")
-//            .put("WithoutHavingDoneSo1", "WithoutHavingDoneSo")
-//            .put("WithoutHavingDoneSo2", "WithoutHavingDoneSo")
-//
-//            //TODO: Hastily suffix is without polarity in simple parse sets, but in TRNLTK, they need polarity
-//            .put("Hastily", "Hastily+Pos")
-//
-//            //TODO: BIG TODO! not supported yet!
-//            .put("Postp+PCNom", "Postp")
-//            .put("Postp+PCDat", "Postp")
-//            .put("Postp+PCAcc", "Postp")
-//            .put("Postp+PCLoc", "Postp")
-//            .put("Postp+PCAbl", "Postp")
-//            .put("Postp+PCIns", "Postp")
-//            .put("Postp+PCGen", "Postp")
-//
-//            .build();
-//
-//    private static final ImmutableSet<String> SURFACES_TO_SKIP = new ImmutableSet.Builder<String>()
-//            .add("yapıyon").add("korkuyo").add("yakak")
-//            .add("Hiiç").add("Giir").add("hii").add("Geeç").add("yo").add("Yoo").add("ööö")     // mark as "Arbitrary Interjection"
-//            .add("Aaa").add("ham").add("aga").add("Eee").add("daa").add("çoook")
-//            .add("Börtü")
-//            .add("eşşek")
-//            .add("vb.").add("vb")
-//
-//            .add("on'da").add("onaltıotuz'da").add("dokuz'a").add("dokuz.").add("atmışbeş'e").add("doksanaltı'dan")
-//            .add("doksandokuz.").add("dokuzkırkbeş'te").add("onikinci.").add("oniki.").add("onbirbindokuzyüzdoksansekiz").add("ondokuz.sekiz")
-//            .add("otuzbeşer").add("yedi.").add("yetmişaltı.").add("yirmibeş'lik").add("yirmisekizer").add("yirmiüç'üncü").add("onsekiz.")
-//            .add("19.8'lik")
-//            .add("i").add("ii").add("ci").add("yı").add("na")
-//            .add("ikiyüzyirmiüç.yedi")
-//            .add("dortyuz-besyuz")
-//            .add("emmioğlu").add("vizyonuuum")
-//            .add("diyip").add("diyin")
-//            .add("cigara").add("for").add("garni").add("hard").add("ilkyardım").add("kafatasımı").add("memişler")
-//            .add("the").add("thermal").add("volatilite").add("yankee").add("control")
-//            .add(",bir")
-//            .add("eşgüdüm").add("garnisine").add("adaları'na").add("anfide").add("düşkırıklığına").add("habire")
-//            .add("krizmalarıyla").add("kuruyemiş").add("mastıralar").add("mersi").add("önyüzünü").add("krizma")
-//            .add("metodoljik")
-//            .add("selahiyet").add("selahiyeti").add("mevlüt").add("usül")
-//
-//            // "beyin meyin kalmamisti"
-//            .add("meyin").add("melektronik").add("mekonomi").add("mişletme").add("miçki").add("mumar").add("mefahat").add("moşku")
-//            .add("mırık").add("meker")
-//
-//
-//            .add("yüzeysel").add("çıtırlarla").add("vahlara").add("epeyce").add("ekononomik")
-//
-//            .build();
-//
-//    private static final ImmutableSet<String> EXPECTED_PARSE_RESULTS_TO_SKIP = new ImmutableSet.Builder<String>()
-//            .add("1+Num+Card")
-//            .add("70+Num+Card")
-//            .add("Num+Distrib")
-//
-//            .add("Postp")
-//            // sacmalik!
-//            .add("+Num+Card")       //skip all numbers because of the commented crap below
-////            .add("ikibin+Num").add("sekizonikibindokuzyuzdoksansekiz").add("onsekiz").add("onyedi")
-////            .add("doksandokuz").add("bindokuzyüzseksendokuz").add("onbirbindokuzyüzdoksansekiz")
-////            .add("binyediyüzotuzdört").add("onbir")
-//            .add("onyedi+Num+Ord").add("kırkyedi")
-//            .add("ağbi+Noun")
-//            .add("birbuçuk+Num+Real").add("ikibuçuk+Num+Real").add("binüçyüz+Num+Real")
-//            .add("birbuçuk+Noun")
-//            .add("case+Noun")
-//            .add("flaster+Noun")
-//            .add("toplusözleşme+Noun").add("anayol+Noun").add("ağabeyi+Noun")
-//            .add("system+Noun")
-//            .add("planjon+Noun").add("papiş+Noun").add("ortakokul+Noun").add("praznik+Noun").add("gözbebek+Noun+")
-//            .add("hoşkal+Noun").add("lordlar+Noun").add("işyeri+Noun").add("yanıbaş+Noun").add("karayol+Noun")
-//            .add("sözet+Verb").add("terket+Verb").add("varetme+Noun").add("yeral+Verb").add("yolaç+Verb").add("elatma+Noun")
-//            .add("ayırdet+Verb")
-//            .add("bastırıvemiş")
-//
-//            .add("_").add("+Prop").add("+Abbr+")
-//
-//            // -sel
-//            .add("dinsel+Adj").add("(1,\"toplumsal+Adj\")").add("kişisel+Adj").add("tarihsel").add("içgüdüsel")
-//            .add("matematiksel").add("mantıksal").add("deneysel").add("gözlemsel").add("kimyasal")
-//            .add("ereksel").add("nedensel").add("fiziksel").add("bütünsel").add("duygusal").add("ruhsal")
-//            .add("kavramsal").add("nesnel+Adj").add("algısal").add("içsel").add("geleneksel").add("madensel")
-//            .add("hukuksal").add("parasal")
-//
-//            .build();
-//}
\ No newline at end of file
+package experiments;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.CountingInputStream;
+import org.apache.commons.lang3.Validate;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Converts Turkish text to a simple parse set: every token is analyzed, disambiguated in its sentence, formatted with
+ * {@link SabanciMetuTreeBankAnalysisFormatter2} and written as a {@code surface=analysis} line, sentences ending with
+ * {@link SimpleParseSetReader#END_OF_SENTENCE}.
+ * <pre>
+ *     ConvertSabanciMetuToZemberekFormat &lt;threads&gt; &lt;input&gt; &lt;output&gt; [text|tokens]
+ * </pre>
+ * In {@code text} mode (default) every non-empty input line is a sentence and is tokenized by the morphology. In
+ * {@code tokens} mode the input has one token per line and sentences end with an empty line or the end of sentence
+ * marker. Files ending with {@code .gz} are read and written compressed.
+ * <p>
+ * Batches of sentences are converted in parallel, each into UTF-8 bytes, and written in input order through one
+ * buffered stream. At most a few batches per thread are in flight, so memory use doesn't depend on the input size.
+ * Tokens without an analysis are written as {@code surface=*UNKNOWN*}.
+ **/
+public class ConvertSabanciMetuToZemberekFormat {
+
+    static final String UNKNOWN = "*UNKNOWN*";
+
+    private static final int SENTENCES_PER_BATCH = 256;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final TurkishMorphology morphology;
+    private final AnalysisFormatter formatter;
+    private final boolean tokenized;
+
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong unknownTokens = new AtomicLong();
+    private final AtomicLong tokenizationFallbacks = new AtomicLong();
+
+    public ConvertSabanciMetuToZemberekFormat(TurkishMorphology morphology, AnalysisFormatter formatter, boolean tokenized) {
+        this.morphology = morphology;
+        this.formatter = formatter;
+        this.tokenized = tokenized;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Validate.isTrue(args.length >= 3, "Usage: ConvertSabanciMetuToZemberekFormat <threads> <input> <output> [text|tokens]");
+        final int threads = Integer.parseInt(args[0]);
+        final Path input = Paths.get(args[1]);
+        final Path output = Paths.get(args[2]);
+        final boolean tokenized = args.length > 3 && "tokens".equals(args[3]);
+
+        final TurkishMorphology morphology = MorphologySnapshot.shared();
+        final ConvertSabanciMetuToZemberekFormat converter = new ConvertSabanciMetuToZemberekFormat(morphology, new SabanciMetuTreeBankAnalysisFormatter2(true), tokenized);
+
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final long sentences;
+        final long inputBytes;
+        try (CountingInputStream counting = new CountingInputStream(Files.newInputStream(input));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(decompressed(counting, input), StandardCharsets.UTF_8), BUFFER_SIZE);
+             OutputStream out = compressed(Files.newOutputStream(output), output)) {
+            sentences = converter.convert(reader, out, executor);
+            inputBytes = counting.getCount();
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
+        stopwatch.stop();
+
+        final double seconds = stopwatch.elapsed(TimeUnit.MILLISECONDS) / 1000.0;
+        System.out.println("Sentences                 :\t\t" + sentences);
+        System.out.println("Tokens                    :\t\t" + converter.tokens.get());
+        System.out.println("Unknown tokens            :\t\t" + converter.unknownTokens.get());
+        System.out.println("Tokenization fallbacks    :\t\t" + converter.tokenizationFallbacks.get());
+        System.out.println("Seconds                   :\t\t" + seconds);
+        System.out.println("Input MB/s                :\t\t" + inputBytes / 1e6 / seconds);
+        System.out.println("Tokens/s                  :\t\t" + converter.tokens.get() / seconds);
+    }
+
+    private static InputStream decompressed(InputStream in, Path path) throws IOException {
+        return path.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+
+    private static OutputStream compressed(OutputStream out, Path path) throws IOException {
+        return path.getFileName().toString().endsWith(".gz") ? new GZIPOutputStream(out, BUFFER_SIZE) : new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    /**
+     * @param executor null to convert on the calling thread
+     * @return number of sentences written
+     */
+    public long convert(BufferedReader reader, OutputStream out, ExecutorService executor) throws IOException {
+        long sentences = 0;
+        final int maxPendingBatches = 4 * Runtime.getRuntime().availableProcessors();
+        final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+        List<List<String>> batch;
+        while (!(batch = nextBatch(reader)).isEmpty()) {
+            sentences += batch.size();
+            if (executor == null) {
+                out.write(convert(batch));
+                continue;
+            }
+
+            if (pending.size() >= maxPendingBatches)
+                out.write(ParseSetEvaluator.get(pending.poll()));
+            final List<List<String>> sentencesOfBatch = batch;
+            pending.add(executor.submit(() -> convert(sentencesOfBatch)));
+        }
+
+        while (!pending.isEmpty()) {
+            out.write(ParseSetEvaluator.get(pending.poll()));
+        }
+        out.flush();
+        return sentences;
+    }
+
+    /**
+     * @return sentences of the next batch; a sentence is its tokens in tokens mode, and in text mode a one element list
+     * of the line as it is, which the morphology tokenizes
+     */
+    private List<List<String>> nextBatch(BufferedReader reader) throws IOException {
+        final List<List<String>> batch = new ArrayList<>(SENTENCES_PER_BATCH);
+        List<String> tokens = new ArrayList<>();
+        String line;
+        while (batch.size() < SENTENCES_PER_BATCH && (line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!tokenized) {
+                if (!line.isEmpty())
+                    batch.add(Collections.singletonList(line));
+            } else if (line.isEmpty() || SimpleParseSetReader.END_OF_SENTENCE.equals(line)) {
+                if (!tokens.isEmpty()) {
+                    batch.add(tokens);
+                    tokens = new ArrayList<>();
+                }
+            } else {
+                tokens.add(line);
+            }
+        }
+        if (!tokens.isEmpty())
+            batch.add(tokens);
+        return batch;
+    }
+
+    byte[] convert(List<List<String>> sentences) {
+        final StringBuilder builder = new StringBuilder(sentences.size() * 512);
+        for (List<String> sentence : sentences) {
+            convertSentence(sentence, builder);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void convertSentence(List<String> words, StringBuilder out) {
+        final String sentence = tokenized ? Joiner.on(' ').join(words) : words.get(0);
+
+        List<WordAnalysis> analyses = morphology.analyzeSentence(sentence);
+        if (tokenized && !SentenceEvaluator.sameInputs(analyses, words)) {
+            // keep the given tokenization
+            tokenizationFallbacks.incrementAndGet();
+            analyses = new ArrayList<>(words.size());
+            for (String word : words) {
+                analyses.add(morphology.analyze(word));
+            }
+        }
+
+        final List<SingleAnalysis> best = morphology.disambiguate(sentence, analyses).bestAnalysis();
+        for (int i = 0; i < analyses.size(); i++) {
+            final WordAnalysis analysis = analyses.get(i);
+            out.append(analysis.getInput()).append('=');
+            if (analysis.analysisCount() == 0) {
+                out.append(UNKNOWN);
+                unknownTokens.incrementAndGet();
+            } else {
+                out.append(formatter.format(best.get(i)));
+            }
+            out.append('\n');
+        }
+        out.append(SimpleParseSetReader.END_OF_SENTENCE).append('\n');
+        tokens.addAndGet(analyses.size());
+    }
+}
@@ -0,0 +1,156 @@
+package experiments;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Evaluates many corpus files into one {@link EvaluationResult}. Every file is read and decompressed by a reader task,
+ * or mapped if it is a {@link CompiledParseSet}; readers cut whole sentences into chunks of about
+ * {@link ParseSetEvaluator#DEFAULT_CHUNK_SIZE} lines and hand them to a fixed pool of {@code analyzers} threads. At most
+ * {@code 4 * analyzers} chunks are in flight over all files; a reader waits for room before it reads on, so memory
+ * doesn't grow with the number or size of the files.
+ * <p>
+ * The readers are either a fixed pool of platform threads, where a file waits for a free reader, or a thread per file
+ * (see {@link ReaderThreads}), where all files are read at the same time and only the analyzers are bounded. The
+ * thread per file is a virtual thread in the java21 build and a platform thread otherwise.
+ * <p>
+ * The result is the same as the one of evaluating the files one after another: chunks of a file are merged in order,
+ * files in the given order.
+ **/
+public class CorpusPipeline {
+
+    public enum Readers {
+        PLATFORM,
+        /**
+         * A thread per file: virtual in the java21 build, a platform thread otherwise
+         */
+        VIRTUAL
+    }
+
+    private final ParseSetEvaluator evaluator;
+    private final int analyzers;
+    private final Readers readers;
+    private final int platformReaders;
+
+    /**
+     * @param evaluator       evaluator without an executor, run by the analyzer threads
+     * @param platformReaders size of the reader pool for {@link Readers#PLATFORM}
+     */
+    public CorpusPipeline(ParseSetEvaluator evaluator, int analyzers, Readers readers, int platformReaders) {
+        Validate.isTrue(analyzers > 0 && platformReaders > 0);
+        this.evaluator = evaluator;
+        this.analyzers = analyzers;
+        this.readers = readers;
+        this.platformReaders = platformReaders;
+    }
+
+    public EvaluationResult evaluate(List<Path> corpora) {
+        final ExecutorService analyzerPool = Executors.newFixedThreadPool(analyzers);
+        final ExecutorService readerPool = readers == Readers.VIRTUAL
+                ? ReaderThreads.newThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(Math.min(platformReaders, Math.max(1, corpora.size())));
+        final Semaphore inFlight = new Semaphore(4 * analyzers);
+        try {
+            final List<Future<EvaluationResult>> files = new ArrayList<>(corpora.size());
+            for (Path corpus : corpora) {
+                files.add(readerPool.submit(() -> read(corpus, analyzerPool, inFlight)));
+            }
+
+            final EvaluationResult result = evaluator.newResult();
+            for (Future<EvaluationResult> file : files) {
+                result.merge(ParseSetEvaluator.get(file));
+            }
+            return result;
+        } finally {
+            readerPool.shutdown();
+            analyzerPool.shutdown();
+        }
+    }
+
+    private EvaluationResult read(Path corpus, ExecutorService analyzerPool, Semaphore inFlight) throws InterruptedException {
+        final EvaluationResult result = evaluator.newResult();
+        final Deque<Future<EvaluationResult>> pending = new ArrayDeque<>();
+        try {
+            if (CompiledParseSet.isCompiled(corpus))
+                readCompiled(corpus, result, pending, analyzerPool, inFlight);
+            else
+                readText(corpus, result, pending, analyzerPool, inFlight);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read " + corpus, e);
+        }
+
+        while (!pending.isEmpty()) {
+            result.merge(ParseSetEvaluator.get(pending.poll()));
+        }
+        return result;
+    }
+
+    private void readText(Path corpus, EvaluationResult result, Deque<Future<EvaluationResult>> pending,
+                          ExecutorService analyzerPool, Semaphore inFlight) throws IOException, InterruptedException {
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(corpus)) {
+            List<Pair<String, String>> chunk = new ArrayList<>(ParseSetEvaluator.DEFAULT_CHUNK_SIZE);
+            List<Pair<String, String>> sentence;
+            while ((sentence = reader.nextSentence()) != null) {
+                chunk.addAll(sentence);
+                if (chunk.size() >= ParseSetEvaluator.DEFAULT_CHUNK_SIZE) {
+                    pending.add(submit(chunk, analyzerPool, inFlight));
+                    chunk = new ArrayList<>(ParseSetEvaluator.DEFAULT_CHUNK_SIZE);
+                }
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    result.merge(ParseSetEvaluator.get(pending.poll()));
+                }
+            }
+            if (!chunk.isEmpty())
+                pending.add(submit(chunk, analyzerPool, inFlight));
+            result.replaceHackHits.addAll(reader.replaceHackHits());
+        }
+    }
+
+    /**
+     * Cuts the sentences of the compiled parse set into chunks; the chunks are views of the mapped file
+     */
+    private void readCompiled(Path corpus, EvaluationResult result, Deque<Future<EvaluationResult>> pending,
+                              ExecutorService analyzerPool, Semaphore inFlight) throws IOException, InterruptedException {
+        final CompiledParseSet parseSet = CompiledParseSet.open(corpus);
+        int from = 0;
+        for (int to = 1; to <= parseSet.sentenceCount(); to++) {
+            if (to == parseSet.sentenceCount()
+                    || parseSet.sentenceStart(to) - parseSet.sentenceStart(from) >= ParseSetEvaluator.DEFAULT_CHUNK_SIZE) {
+                pending.add(submit(parseSet.lines(from, to), analyzerPool, inFlight));
+                from = to;
+            }
+            while (!pending.isEmpty() && pending.peek().isDone()) {
+                result.merge(ParseSetEvaluator.get(pending.poll()));
+            }
+        }
+    }
+
+    private Future<EvaluationResult> submit(List<Pair<String, String>> lines, ExecutorService analyzerPool, Semaphore inFlight)
+            throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return analyzerPool.submit(() -> {
+                try {
+                    return evaluator.evaluate(lines, 0, lines.size());
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+}
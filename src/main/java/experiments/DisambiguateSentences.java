@@ -1,157 +1,317 @@
 package experiments;
 
-import com.google.common.base.Joiner;
-import com.google.common.collect.*;
-import com.google.common.io.CharSource;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
 import com.google.common.io.LineProcessor;
 import com.google.common.io.Resources;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
 import zemberek.morphology.TurkishMorphology;
 import zemberek.morphology.analysis.AnalysisFormatter;
-import zemberek.morphology.analysis.WordAnalysis;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.Collection;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class DisambiguateSentences {
 
+    static final long ANALYSIS_CACHE_SIZE = 100_000;
+    private static final boolean COMPARE_DEDUPLICATED = Boolean.getBoolean("deduplicated.compare");
+
     public static void main(String[] args) throws IOException {
 
-        TurkishMorphology morphology = TurkishMorphology.createWithDefaults();
+        TurkishMorphology morphology = MorphologySnapshot.shared();
         final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
 
-        doExperiment(999, false, morphology, formatter);
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        final String mode = args.length > 1 ? args[1] : "tokens";
+        Metrics.reset();
+        if ("sentences".equals(mode))
+            doSentenceExperiment(999, morphology, formatter, threads);
+        else if ("incremental".equals(mode))
+            doIncrementalExperiment(999, morphology, threads);
+        else if ("deduplicated".equals(mode))
+            doDeduplicatedExperiment(999, morphology, formatter, threads);
+        else if ("pipeline".equals(mode))
+            doPipelineExperiment(args, morphology, formatter, threads);
+        else
+            doExperiment(999, false, morphology, formatter, threads);
+
+        Metrics.dump(System.out);
     }
 
-    private static void doExperiment(int index, boolean printSurfaces, TurkishMorphology morphology, AnalysisFormatter formatter) throws IOException {
-
-        final CharSource source = Resources.asCharSource(Resources.getResource("simpleparseset" + index + ".txt"),
-                Charset.forName("utf-8"));
+    /**
+     * Evaluates the corpus files given after the reader kind, {@code <threads> pipeline <virtual|platform> <directory or
+     * glob>...}, with a {@link CorpusPipeline} of {@code threads} analyzers
+     */
+    private static void doPipelineExperiment(String[] args, TurkishMorphology morphology, AnalysisFormatter formatter, int threads) throws IOException {
+        Validate.isTrue(args.length >= 4, "Usage: DisambiguateSentences <threads> pipeline <virtual|platform> <directory or glob>...");
+        final CorpusPipeline.Readers readers = CorpusPipeline.Readers.valueOf(args[2].toUpperCase(Locale.ROOT));
+        final List<Path> corpora = BatchEvaluation.corpora(args, 3);
+        Validate.isTrue(!corpora.isEmpty(), "No corpus files found");
+
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final FormattedAnalysisCache cache = FormattedAnalysisCache.withMaxEntries(morphology, formatter, ANALYSIS_CACHE_SIZE);
+        final ParseSetEvaluator evaluator = new ParseSetEvaluator(morphology, formatter, false).withCache(cache);
+        final EvaluationResult result = new CorpusPipeline(evaluator, threads, readers, threads).evaluate(corpora);
+        stopwatch.stop();
+
+        System.out.println("Number of words parsed " + result.getNumberOfSurfaces());
+        result.printSummary(System.out);
+        final String readerThreads = readers == CorpusPipeline.Readers.PLATFORM ? "" : ReaderThreads.virtualThreads()
+                ? " (virtual threads)" : " (platform thread per file, virtual threads need the java21 build)";
+        System.out.println("Files " + corpora.size() + " with " + readers + " readers" + readerThreads + ", elapsed " + stopwatch);
+        cache.printStats(System.out);
+    }
 
-        //read all in advance
-        final List<Pair<String, String>> lines = source.readLines(new SimpleParseSetValidationLineProcessor());
+    /**
+     * Same summary as {@link #doExperiment}, evaluating every distinct (surface, expected parse) pair once. With
+     * {@code -Ddeduplicated.compare=true} the parse set is then evaluated line by line as well, to check that the
+     * summaries are the same and to measure what the deduplication saves; {@code ExperimentBenchmark} is the place for
+     * careful timing.
+     */
+    private static void doDeduplicatedExperiment(int index, TurkishMorphology morphology, AnalysisFormatter formatter, int threads) throws IOException {
+        final Stopwatch countStopwatch = Stopwatch.createStarted();
+        final Multiset<Pair<String, String>> lines;
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset" + index + ".txt"))) {
+            lines = ParseSetEvaluator.countLines(reader);
+        }
+        countStopwatch.stop();
+
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        final Stopwatch evaluationStopwatch = Stopwatch.createUnstarted();
+        final Stopwatch lineByLineStopwatch = Stopwatch.createUnstarted();
+        final EvaluationResult result;
+        EvaluationResult lineByLine = null;
+        try {
+            evaluationStopwatch.start();
+            result = new ParseSetEvaluator(morphology, formatter, false, executor, ParseSetEvaluator.DEFAULT_CHUNK_SIZE).evaluate(lines);
+            evaluationStopwatch.stop();
+
+            if (COMPARE_DEDUPLICATED) {
+                // second, so it runs on a warm JVM and morphology: the saving is rather under- than overstated
+                lineByLineStopwatch.start();
+                try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset" + index + ".txt"))) {
+                    lineByLine = new ParseSetEvaluator(morphology, formatter, false, executor, ParseSetEvaluator.DEFAULT_CHUNK_SIZE).evaluate(reader);
+                }
+                lineByLineStopwatch.stop();
+            }
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
 
-        final int numberOfSurfaces = lines.size();
-        System.out.println("Number of words to parse " + numberOfSurfaces);
+        Validate.validState(lineByLine == null || summary(result).equals(summary(lineByLine)),
+                "Deduplicated and line by line summaries differ");
+
+        System.out.println("Number of words parsed " + result.getNumberOfSurfaces());
+        result.printSummary(System.out);
+
+        final int distinct = lines.elementSet().size();
+        final long countMillis = countStopwatch.elapsed(TimeUnit.MILLISECONDS);
+        final long evaluationMillis = evaluationStopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+        System.out.println("=====Deduplication");
+        System.out.println("Lines                     :\t\t" + lines.size());
+        System.out.println("Distinct lines            :\t\t" + distinct);
+        System.out.println("Deduplication ratio       :\t\t" + lines.size() * 1.0 / distinct);
+        System.out.println("Counting ms               :\t\t" + countMillis);
+        System.out.println("Evaluation ms             :\t\t" + evaluationMillis);
+        if (lineByLine != null) {
+            final long lineByLineMillis = lineByLineStopwatch.elapsed(TimeUnit.MILLISECONDS);
+            System.out.println("Line by line ms           :\t\t" + lineByLineMillis);
+            System.out.println("Saved ms                  :\t\t" + (lineByLineMillis - countMillis - evaluationMillis));
+        }
+    }
 
-        int unparsable = 0;
-        int incorrectParses = 0;
-        int skippedSurfaces = 0;
-        int skippedExpectedParseResults = 0;
+    private static String summary(EvaluationResult result) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(bytes, false, "UTF-8")) {
+            result.printSummary(out);
+            return bytes.toString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-        final TreeMultiset<String> unparsableSurfaces = TreeMultiset.create();
-        final TreeMultiset<String> incorrectParsedSurfaces = TreeMultiset.create();
+    /**
+     * Same summary as {@link #doExperiment}, with the analyses and verdicts kept in an {@link IncrementalEvaluationStore}
+     * between runs. The corpus is streamed into its distinct lines and only the lines that the store can't answer
+     * are evaluated.
+     */
+    private static void doIncrementalExperiment(int index, TurkishMorphology morphology, int threads) throws IOException {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final Path storePath = MorphologySnapshot.cacheDirectory().resolve("incremental-evaluation" + index + ".gz");
+        Files.createDirectories(storePath.getParent());
+
+        final IncrementalEvaluationStore store = new IncrementalEvaluationStore(morphology, true);
+        store.load(storePath);
+
+        final Multiset<Pair<String, String>> lines;
+        final Multiset<String> replaceHackHits;
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset" + index + ".txt"))) {
+            lines = ParseSetEvaluator.countLines(reader);
+            replaceHackHits = reader.replaceHackHits();
+        }
 
-        for (Pair<String, String> line : lines) {
-            final String surfaceToParse = line.getLeft();
-            if (SURFACES_TO_SKIP.contains(surfaceToParse)) {
-                if (printSurfaces)
-                    System.out.println("Surface '" + surfaceToParse + "' is a skippedSurface");
-                skippedSurfaces++;
-                continue;
-            }
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        final EvaluationResult result;
+        try {
+            result = store.evaluate(lines, new ParseSetEvaluator(morphology, store.formatter(), false, executor, ParseSetEvaluator.DEFAULT_CHUNK_SIZE)
+                    .withCache(store));
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
+        result.replaceHackHits.addAll(replaceHackHits);
+        store.save(storePath);
 
-            final String expectedResult = line.getRight();
-            if (isSkippedExpectedParseResult(expectedResult)) {
-                if (printSurfaces)
-                    System.out.println("Surface with expected parse result '" + expectedResult + "' is a skippedExpectedParseResult");
-                skippedExpectedParseResults++;
-                continue;
-            }
+        System.out.println("Number of words parsed " + result.getNumberOfSurfaces());
+        result.printSummary(System.out);
+        store.printStats(System.out);
+        System.out.println("Elapsed " + stopwatch);
+    }
 
-            final WordAnalysis analysis = morphology.analyze(surfaceToParse);
-
-            if (analysis.analysisCount() == 0) {
-                if (printSurfaces)
-                    System.out.println("Surface '" + surfaceToParse + "' is not parseable");
-                unparsableSurfaces.add(surfaceToParse + "\t" + expectedResult);
-                unparsable++;
-            } else {
-                final Collection<String> formattedRetrievedResults = FluentIterable.from(analysis).transform(input -> formatter.format(input)).toList();
-                if (!formattedRetrievedResults.contains(expectedResult)) {
-                    if (printSurfaces) {
-                        System.out.println("Surface '" + surfaceToParse + "' is parseable, but expected result '" + expectedResult + "' is not found!");
-                        System.out.println("\t" + Joiner.on("\n\t").join(formattedRetrievedResults));
-                    }
-                    incorrectParsedSurfaces.add(surfaceToParse + " ----> " + expectedResult + " ----> " + formattedRetrievedResults.toString());
-                    incorrectParses++;
-                }
-            }
+    private static void doSentenceExperiment(int index, TurkishMorphology morphology, AnalysisFormatter formatter, int threads) throws IOException {
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        final SentenceEvaluator.Result result;
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset" + index + ".txt"))) {
+            result = new SentenceEvaluator(morphology, formatter, executor).evaluate(reader);
+        } finally {
+            if (executor != null)
+                executor.shutdown();
         }
 
+        result.printSummary(System.out);
+    }
 
-        final int correctParses = numberOfSurfaces - unparsable - incorrectParses - skippedSurfaces - skippedExpectedParseResults;
+    private static void doExperiment(int index, boolean printSurfaces, TurkishMorphology morphology, AnalysisFormatter formatter, int threads) throws IOException {
 
-        System.out.println("========SUMMARY===========");
-        System.out.println("Surface count             :\t\t" + numberOfSurfaces);
-        System.out.println("Unparsable                :\t\t" + unparsable);
-        System.out.println("Incorrect parses          :\t\t" + incorrectParses);
-        System.out.println("Skipped surfaces          :\t\t" + skippedSurfaces);
-        System.out.println("Skipped parse results     :\t\t" + skippedExpectedParseResults);
-        System.out.println("Correct parses            :\t\t" + correctParses);
-        System.out.println("Correct parse %           :\t\t" + (correctParses) * 1.0 / numberOfSurfaces * 100);
+        final FormattedAnalysisCache cache = FormattedAnalysisCache.withMaxEntries(morphology, formatter, ANALYSIS_CACHE_SIZE);
+        final EvaluationResult result = runExperiment(index, printSurfaces, morphology, formatter, threads, cache);
 
-        final ImmutableMultiset<String> unparsableSurfacesByFrequencies = Multisets.copyHighestCountFirst(unparsableSurfaces);
-        final ImmutableMultiset<String> incorrectParsedSurfacesByFrequencies = Multisets.copyHighestCountFirst(incorrectParsedSurfaces);
+        if (printSurfaces)
+            System.out.print(result.log);
 
-        System.out.println("=====Incorrect parsed surfaces with occurrence count > 1=====");
-        for (Multiset.Entry<String> entry : incorrectParsedSurfacesByFrequencies.entrySet()) {
-            if (entry.getCount() > 1)
-                System.out.println(entry.getElement() + "\t\t\t" + entry.getCount());
-        }
+        System.out.println("Number of words parsed " + result.getNumberOfSurfaces());
+        result.printSummary(System.out);
+        result.printSkipRuleHits(System.out);
+        cache.printStats(System.out);
+        SabanciMetuTreeBankAnalysisFormatter2.lexemePrefixes().printStats(System.out);
+    }
 
-        System.out.println("=====Unparsable surfaces");
-        for (Multiset.Entry<String> entry : unparsableSurfacesByFrequencies.entrySet()) {
-            System.out.println(entry.getElement() + "\t\t\t" + entry.getCount());
+    /**
+     * The evaluation part of {@link #doExperiment}, without printing anything. Also used by the benchmarks.
+     */
+    static EvaluationResult runExperiment(int index, boolean printSurfaces, TurkishMorphology morphology, AnalysisFormatter formatter,
+                                          int threads, FormattedAnalysisCache cache) throws IOException {
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset" + index + ".txt"))) {
+            return new ParseSetEvaluator(morphology, formatter, printSurfaces, executor, ParseSetEvaluator.DEFAULT_CHUNK_SIZE)
+                    .withCache(cache)
+                    .evaluate(reader);
+        } finally {
+            if (executor != null)
+                executor.shutdown();
         }
-
-
     }
 
-    public static class SimpleParseSetValidationLineProcessor implements LineProcessor<List<Pair<String, String>>> {
-        final ImmutableList.Builder<Pair<String, String>> builder = ImmutableList.builder();
+    /**
+     * Keeps the lines as {@link InternedLines} with a dictionary of their own, and the hits of the replace hacks in
+     * these lines in {@link #replaceHackHits}
+     */
+    public static class SimpleParseSetValidationLineProcessor implements LineProcessor<InternedLines> {
+        final InternedLines lines = new InternedLines();
+        final HashMultiset<String> replaceHackHits = HashMultiset.create();
+        private final SequentialReplacer.RuleListener replaceHackCounter = replaceHackCounter(replaceHackHits);
 
         @Override
         public boolean processLine(final String line) throws IOException {
-            if (!"#END#OF#SENTENCE#".equals(line)) {
-                final String[] split = line.split("=", 2);
-                Validate.isTrue(split.length == 2, line);
-                final String surface = split[0];
-                final String expectedParseResultStr = applyParseResultReplaceHack(split[1]);
-                builder.add(Pair.of(surface, expectedParseResultStr));
+            if (!SimpleParseSetReader.END_OF_SENTENCE.equals(line)) {
+                final Pair<String, String> pair = parseLine(line, replaceHackCounter);
+                lines.append(pair.getLeft(), pair.getRight());
             }
             return true;
         }
 
-        private String applyParseResultReplaceHack(String expectedParseResultStr) {
-            for (Map.Entry<String, String> parseResultReplaceHackEntry : PARSE_RESULT_REPLACE_HACK_MAP.entrySet()) {
-                expectedParseResultStr = expectedParseResultStr.replace(parseResultReplaceHackEntry.getKey(), parseResultReplaceHackEntry.getValue());
-            }
-            return expectedParseResultStr;
-        }
-
         @Override
-        public List<Pair<String, String>> getResult() {
-            return builder.build();
+        public InternedLines getResult() {
+            return lines;
         }
     }
 
-    private static boolean isSkippedExpectedParseResult(String expectedResult) {
-        if (EXPECTED_PARSE_RESULTS_TO_SKIP.contains(expectedResult))
-            return true;
-        for (String s : EXPECTED_PARSE_RESULTS_TO_SKIP) {
-            if (expectedResult.contains(s))
-                return true;
-        }
+    static Pair<String, String> parseLine(String line) {
+        return parseLine(line, null);
+    }
+
+    /**
+     * @param replaceHackListener notified of every replace hack that changes the expected parse; may be null
+     */
+    static Pair<String, String> parseLine(String line, SequentialReplacer.RuleListener replaceHackListener) {
+        final long start = Metrics.start();
+        final String[] split = line.split("=", 2);
+        Validate.isTrue(split.length == 2, line);
+        final String surface = split[0];
+        final String expectedParseResultStr = applyParseResultReplaceHack(split[1], replaceHackListener);
+        Metrics.record(Metrics.Stage.PARSE_LINE, start);
+        return Pair.of(surface, expectedParseResultStr);
+    }
+
+    static String applyParseResultReplaceHack(String expectedParseResultStr, SequentialReplacer.RuleListener listener) {
+        return PARSE_RESULT_REPLACE_HACKS.replace(expectedParseResultStr, listener);
+    }
+
+    /**
+     * @return listener for {@link #parseLine(String, SequentialReplacer.RuleListener)} that counts the hits of every
+     * replace hack into {@code hits}
+     */
+    static SequentialReplacer.RuleListener replaceHackCounter(Multiset<String> hits) {
+        return (rule, text) -> hits.add(PARSE_RESULT_REPLACE_HACKS.target(rule));
+    }
+
+    /**
+     * Changes whenever the replace hacks change; compiled parse sets store the hacks already applied
+     */
+    static int parseResultReplaceHacksFingerprint() {
+        return PARSE_RESULT_REPLACE_HACK_MAP.toString().hashCode();
+    }
+
+    /**
+     * Changes whenever {@link #SURFACES_TO_SKIP} or {@link #EXPECTED_PARSE_RESULTS_TO_SKIP} change
+     */
+    static int skipSetsFingerprint() {
+        return (SURFACES_TO_SKIP.toString() + EXPECTED_PARSE_RESULTS_TO_SKIP.toString()).hashCode();
+    }
+
+    static boolean isSkippedSurface(String surface) {
+        return SURFACES_TO_SKIP.contains(surface);
+    }
+
+    static boolean isSkippedExpectedParseResult(String expectedResult) {
+        return EXPECTED_PARSE_RESULT_SKIP_MATCHER.containsAny(expectedResult);
+    }
 
-        return false;
+    /**
+     * @return first entry of {@link #EXPECTED_PARSE_RESULTS_TO_SKIP} that the expected result contains, null if none
+     */
+    static String skippedExpectedParseResultRule(String expectedResult) {
+        final int rule = EXPECTED_PARSE_RESULT_SKIP_MATCHER.firstPattern(expectedResult);
+        return rule < 0 ? null : EXPECTED_PARSE_RESULT_SKIP_MATCHER.pattern(rule);
     }
 
-    private static final ImmutableMap<String, String> PARSE_RESULT_REPLACE_HACK_MAP = new ImmutableMap.Builder<String, String>()
+    static final ImmutableMap<String, String> PARSE_RESULT_REPLACE_HACK_MAP = new ImmutableMap.Builder<String, String>()
 //            // for example, in simple parse set, there is a suffix Prog1 for "iyor", and Prog2 for "makta"
 //            // but, we don't differentiate them and use "Prog" for both
 //            // thus, we need a small hack for validating simple parse sets
@@ -177,7 +337,7 @@ public class DisambiguateSentences {
 
             .build();
 
-    private static final ImmutableSet<String> SURFACES_TO_SKIP = new ImmutableSet.Builder<String>()
+    static final ImmutableSet<String> SURFACES_TO_SKIP = new ImmutableSet.Builder<String>()
             .add("yapıyon").add("korkuyo").add("yakak")
             .add("Hiiç").add("Giir").add("hii").add("Geeç").add("yo").add("Yoo").add("ööö")     // mark as "Arbitrary Interjection"
             .add("Aaa").add("ham").add("aga").add("Eee").add("daa").add("çoook")
@@ -257,7 +417,7 @@ public class DisambiguateSentences {
 
             .build();
 
-    private static final ImmutableSet<String> EXPECTED_PARSE_RESULTS_TO_SKIP = new ImmutableSet.Builder<String>()
+    static final ImmutableSet<String> EXPECTED_PARSE_RESULTS_TO_SKIP = new ImmutableSet.Builder<String>()
             .add("1+Num+Card")
             .add("70+Num+Card")
             .add("Num+Distrib")
@@ -292,4 +452,16 @@ public class DisambiguateSentences {
             .add("hukuksal").add("parasal")
 
             .build();
-}
\ No newline at end of file
+
+    private static final SequentialReplacer PARSE_RESULT_REPLACE_HACKS = compile(PARSE_RESULT_REPLACE_HACK_MAP);
+
+    private static final AhoCorasickMatcher EXPECTED_PARSE_RESULT_SKIP_MATCHER = new AhoCorasickMatcher(EXPECTED_PARSE_RESULTS_TO_SKIP.asList());
+
+    private static SequentialReplacer compile(Map<String, String> replacements) {
+        final SequentialReplacer.Builder builder = SequentialReplacer.builder();
+        for (Map.Entry<String, String> entry : replacements.entrySet()) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,292 @@
+package experiments;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Occurrence counts of (surface, expected parse) pairs, for the error lists of an {@link EvaluationResult}. Without a
+ * capacity, the strings are interned to int ids in a {@link StringDictionary} and a pair is counted under one {@code long} key in a
+ * {@link LongLongHashMap}, so the table itself holds no strings; the message that is printed for a pair is only built in {@link #top} for the pairs that
+ * are printed. The dictionary is the one of the run, e.g. the one of the {@link InternedLines} being evaluated, whose
+ * ids can be counted as they are; tables of different dictionaries are merged by string.
+ * <p>
+ * With a capacity, at most twice that many pairs are kept and the table is a Space-Saving sketch: when full, it is
+ * pruned to the {@code capacity} most frequent pairs and a pair that is seen later starts from the highest dropped
+ * count ({@link #floor()}). Kept counts are then overestimates by at most their {@link Entry#error}, and any pair that
+ * is not kept occurred at most {@link #floor()} times. Without a capacity the counts are exact.
+ * <p>
+ * A bounded table doesn't intern into the dictionary, which can't drop strings, so memory stays bounded however many
+ * distinct pairs a noisy corpus has: a pair is keyed by a 64 bit hash of its strings, and the strings are kept on the
+ * heap only while the pair is in the table. Ids that are added are decoded with the dictionary.
+ * <p>
+ * Not thread safe, tables of the workers are {@link #merge}d.
+ **/
+final class ErrorTable {
+
+    private static final HashFunction PAIR_HASH = Hashing.murmur3_128();
+
+    private final int capacity;
+
+    private final StringDictionary dictionary;
+    /**
+     * Surface and expected parse of the pairs in the table by key, only with a capacity
+     */
+    private Map<Long, String[]> strings;
+    private LongLongHashMap counts = new LongLongHashMap();
+    private LongLongHashMap errors;
+    private long floor;
+
+    /**
+     * @param capacity number of pairs to report reliably, 0 for exact counts of all pairs
+     */
+    ErrorTable(int capacity) {
+        this(capacity, new StringDictionary());
+    }
+
+    ErrorTable(int capacity, StringDictionary dictionary) {
+        this.capacity = capacity;
+        this.dictionary = dictionary;
+        this.errors = capacity > 0 ? new LongLongHashMap() : null;
+        this.strings = capacity > 0 ? new HashMap<>() : null;
+    }
+
+    void add(String surface, String expected, long count) {
+        if (strings != null)
+            add(hashKey(surface, expected), surface, expected, count);
+        else
+            add(key(dictionary.id(surface), dictionary.id(expected)), null, null, count);
+    }
+
+    /**
+     * @param surfaceId  id of the surface in the dictionary of the table
+     * @param expectedId id of the expected parse in the dictionary of the table
+     */
+    void add(int surfaceId, int expectedId, long count) {
+        if (strings != null)
+            add(dictionary.string(surfaceId), dictionary.string(expectedId), count);
+        else
+            add(key(surfaceId, expectedId), null, null, count);
+    }
+
+    /**
+     * @param surface  null without a capacity
+     * @param expected null without a capacity
+     */
+    private void add(long key, String surface, String expected, long count) {
+        final boolean present = counts.get(key, -1) >= 0;
+        if (!present && strings != null)
+            strings.put(key, new String[]{surface, expected});
+        if (floor > 0 && !present) {
+            counts.addTo(key, floor + count);
+            errors.addTo(key, floor);
+        } else {
+            counts.addTo(key, count);
+        }
+
+        if (capacity > 0 && counts.size() >= 2 * capacity)
+            prune();
+    }
+
+    void merge(ErrorTable table) {
+        Validate.isTrue(capacity == table.capacity, "Tables of different capacities");
+        // bounded tables are keyed by their strings already
+        final ErrorTable other = strings != null || table.dictionary == dictionary ? table : table.remap(dictionary);
+        if (strings != null) {
+            for (Map.Entry<Long, String[]> entry : other.strings.entrySet()) {
+                strings.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        if (floor == 0 && other.floor == 0) {
+            for (int slot = 0; slot < other.counts.slots(); slot++) {
+                if (other.counts.isUsed(slot)) {
+                    final long key = other.counts.keyAt(slot);
+                    counts.addTo(key, other.counts.valueAt(slot));
+                }
+            }
+        } else {
+            // a pair that is missing from one of the tables may have occurred up to the floor of that table there
+            final LongLongHashMap merged = new LongLongHashMap(counts.size() + other.counts.size());
+            final LongLongHashMap mergedErrors = new LongLongHashMap(counts.size() + other.counts.size());
+            for (int slot = 0; slot < counts.slots(); slot++) {
+                if (counts.isUsed(slot)) {
+                    final long key = counts.keyAt(slot);
+                    merged.addTo(key, counts.valueAt(slot) + other.floor);
+                    mergedErrors.addTo(key, error(key) + other.floor);
+                }
+            }
+            for (int slot = 0; slot < other.counts.slots(); slot++) {
+                if (other.counts.isUsed(slot)) {
+                    final long key = other.counts.keyAt(slot);
+                    // replaces the floor of the other table that was added above, or adds the floor of this one
+                    final long adjustment = counts.get(key, -1) >= 0 ? -other.floor : floor;
+                    merged.addTo(key, other.counts.valueAt(slot) + adjustment);
+                    mergedErrors.addTo(key, other.error(key) + adjustment);
+                }
+            }
+            counts = merged;
+            errors = mergedErrors;
+            floor += other.floor;
+        }
+
+        if (capacity > 0 && counts.size() >= 2 * capacity)
+            prune();
+    }
+
+    /**
+     * Number of pairs in the table, not more than twice the capacity
+     */
+    int size() {
+        return counts.size();
+    }
+
+    /**
+     * Highest count a pair that is not in the table can have, 0 when the counts are exact
+     */
+    long floor() {
+        return floor;
+    }
+
+    /**
+     * @param limit     maximum number of entries
+     * @param minCount  entries with smaller counts are left out
+     * @param formatter builds the message of a (surface, expected parse) pair; called only for the returned entries
+     *                  and the ones tied with the last of them
+     * @return entries by count descending, then message ascending
+     */
+    List<Entry> top(int limit, long minCount, BiFunction<String, String, String> formatter) {
+        int n = 0;
+        int[] selected = new int[counts.size()];
+        for (int slot = 0; slot < counts.slots(); slot++) {
+            if (counts.isUsed(slot) && counts.valueAt(slot) >= minCount)
+                selected[n++] = slot;
+        }
+        selected = Arrays.copyOf(selected, n);
+
+        if (n > limit) {
+            final long[] sortedCounts = new long[n];
+            for (int i = 0; i < n; i++) {
+                sortedCounts[i] = counts.valueAt(selected[i]);
+            }
+            Arrays.sort(sortedCounts);
+            final long cutoff = sortedCounts[n - limit];
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                if (counts.valueAt(selected[i]) >= cutoff)
+                    selected[kept++] = selected[i];
+            }
+            selected = Arrays.copyOf(selected, kept);
+        }
+
+        final List<Entry> entries = new ArrayList<>(selected.length);
+        for (int slot : selected) {
+            final long key = counts.keyAt(slot);
+            final String message;
+            if (strings != null) {
+                final String[] pair = strings.get(key);
+                message = formatter.apply(pair[0], pair[1]);
+            } else {
+                message = formatter.apply(dictionary.string((int) (key >>> 32)), dictionary.string((int) key));
+            }
+            entries.add(new Entry(message, counts.valueAt(slot), error(key)));
+        }
+        entries.sort(Comparator.<Entry>comparingLong(entry -> -entry.count).thenComparing(entry -> entry.message));
+        return entries.size() > limit ? entries.subList(0, limit) : entries;
+    }
+
+    /**
+     * @return copy of this exact table with the keys of the given dictionary
+     */
+    private ErrorTable remap(StringDictionary target) {
+        final ErrorTable remapped = new ErrorTable(capacity, target);
+        for (int slot = 0; slot < counts.slots(); slot++) {
+            if (counts.isUsed(slot)) {
+                final long key = counts.keyAt(slot);
+                final long remappedKey = key(target.id(dictionary.string((int) (key >>> 32))), target.id(dictionary.string((int) key)));
+                remapped.counts.addTo(remappedKey, counts.valueAt(slot));
+            }
+        }
+        return remapped;
+    }
+
+    private long error(long key) {
+        return errors == null ? 0 : errors.get(key, 0);
+    }
+
+    private static long key(int surfaceId, int expectedId) {
+        return (long) surfaceId << 32 | expectedId;
+    }
+
+    /**
+     * Key of a pair in a bounded table; the length of the surface keeps {@code (ab, c)} and {@code (a, bc)} apart
+     */
+    private static long hashKey(String surface, String expected) {
+        return PAIR_HASH.newHasher()
+                .putInt(surface.length())
+                .putUnencodedChars(surface)
+                .putUnencodedChars(expected)
+                .hash().asLong();
+    }
+
+    /**
+     * Keeps the {@code capacity} pairs with the highest counts
+     */
+    private void prune() {
+        final long[] sortedCounts = new long[counts.size()];
+        int n = 0;
+        for (int slot = 0; slot < counts.slots(); slot++) {
+            if (counts.isUsed(slot))
+                sortedCounts[n++] = counts.valueAt(slot);
+        }
+        Arrays.sort(sortedCounts);
+        final long threshold = sortedCounts[n - capacity];
+        int ties = 0;
+        for (int i = n - capacity; i < n && sortedCounts[i] == threshold; i++) {
+            ties++;
+        }
+
+        final LongLongHashMap oldCounts = counts;
+        final LongLongHashMap oldErrors = errors;
+        final Map<Long, String[]> oldStrings = strings;
+        counts = new LongLongHashMap(capacity);
+        errors = new LongLongHashMap(capacity);
+        strings = new HashMap<>();
+
+        for (int slot = 0; slot < oldCounts.slots(); slot++) {
+            if (!oldCounts.isUsed(slot))
+                continue;
+            final long count = oldCounts.valueAt(slot);
+            final long key = oldCounts.keyAt(slot);
+            if (count > threshold || (count == threshold && ties-- > 0)) {
+                counts.addTo(key, count);
+                errors.addTo(key, oldErrors.get(key, 0));
+                strings.put(key, oldStrings.get(key));
+            } else {
+                floor = Math.max(floor, count);
+            }
+        }
+    }
+
+    static final class Entry {
+        final String message;
+        final long count;
+        /**
+         * Upper bound of the overestimation of the count, 0 when exact
+         */
+        final long error;
+
+        Entry(String message, long count, long error) {
+            this.message = message;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package experiments;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Client of an {@link EvaluationDaemon}. From the command line:
+ * <pre>
+ *     EvaluationClient evaluate [corpus] [formatter] [all|none|surfaces|parses]
+ *     EvaluationClient analyze [formatter] [surface]...       surfaces are read from stdin if none are given
+ *     EvaluationClient stats | ping | shutdown
+ * </pre>
+ * {@code evaluate} without arguments is the default experiment of {@link DisambiguateSentences}, on a warm morphology:
+ * {@code simpleparseset999.txt} with {@link SabanciMetuTreeBankAnalysisFormatter2}. The other experiments have no
+ * request type and run in their own process.
+ * <p>
+ * The client authenticates with the token of the daemon's token file, see {@link EvaluationDaemon}. One connection
+ * can send any number of requests; not thread safe.
+ **/
+public class EvaluationClient implements Closeable {
+
+    private static final Joiner FIELD_JOINER = Joiner.on(EvaluationDaemon.FIELD_SEPARATOR);
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+
+    public EvaluationClient(int port) throws IOException {
+        this(port, EvaluationDaemon.TOKEN_FILE);
+    }
+
+    public EvaluationClient(int port, Path tokenFile) throws IOException {
+        final String token = EvaluationDaemon.readToken(tokenFile);
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        try {
+            request(EvaluationDaemon.AUTH, token);
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final List<String> request = new ArrayList<>(Arrays.asList(args.length > 0 ? args : new String[]{"evaluate"}));
+        final String type = request.get(0);
+        if (type.equals("evaluate")) {
+            defaults(request, "simpleparseset999.txt", "sabanci2");
+            // evaluate <formatter> <corpus> on the wire
+            request.add(1, request.remove(2));
+        } else if (type.equals("analyze")) {
+            defaults(request, "sabanci2");
+            if (request.size() == 2)
+                request.addAll(readSurfaces());
+        }
+
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        try (EvaluationClient client = new EvaluationClient(EvaluationDaemon.PORT)) {
+            for (String line : client.request(request)) {
+                System.out.println(line);
+            }
+        }
+        System.err.println(type + " took " + stopwatch);
+    }
+
+    /**
+     * Fills in the missing arguments after the request type
+     */
+    private static void defaults(List<String> request, String... defaults) {
+        for (int i = request.size() - 1; i < defaults.length; i++) {
+            request.add(defaults[i]);
+        }
+    }
+
+    private static List<String> readSurfaces() throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        final List<String> surfaces = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty())
+                surfaces.add(line.trim());
+        }
+        return surfaces;
+    }
+
+    /**
+     * @return lines of the response
+     * @throws IllegalStateException with the message of the daemon if the request failed
+     */
+    public List<String> request(List<String> fields) throws IOException {
+        out.write(FIELD_JOINER.join(fields));
+        out.write('\n');
+        out.flush();
+
+        final String status = in.readLine();
+        if (status == null)
+            throw new IOException("Daemon closed the connection");
+        if (status.startsWith(EvaluationDaemon.ERROR))
+            throw new IllegalStateException(status.substring(EvaluationDaemon.ERROR.length()).trim());
+
+        final int count = Integer.parseInt(status.substring(EvaluationDaemon.OK.length()).trim());
+        final List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(in.readLine());
+        }
+        return lines;
+    }
+
+    public List<String> request(String... fields) throws IOException {
+        return request(Arrays.asList(fields));
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
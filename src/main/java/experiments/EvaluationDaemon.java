@@ -0,0 +1,465 @@
+package experiments;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import org.apache.commons.lang3.Validate;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.AnalysisFormatters;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a {@link TurkishMorphology}, the formatters and a {@link FormattedAnalysisCache} per formatter warm in one
+ * process and serves requests on a loopback port, so an experiment doesn't pay for building the morphology and for
+ * JIT warm-up every time. {@link EvaluationClient} is the command line client.
+ * <p>
+ * Only the default experiment of {@link DisambiguateSentences} ({@code evaluate}) and candidate lookups
+ * ({@code analyze}) are served; the other modes of {@link DisambiguateSentences}, {@link BatchEvaluation} and
+ * {@link FormatterComparison} still start a process of their own.
+ * <p>
+ * A connection starts with {@code auth<TAB><token>}, where the token is the one the daemon wrote to its token file
+ * ({@link #TOKEN_FILE}) when it started. The file is readable by its owner only, so only the user that runs the
+ * daemon can talk to it; a connection with a wrong token is answered with an error and closed. After that, a request
+ * is one line of tab separated fields, the request type first:
+ * <pre>
+ *     analyze   &lt;formatter&gt; &lt;surface&gt;...                       one line per surface: the surface and its candidates
+ *     evaluate  &lt;formatter&gt; &lt;corpus&gt; [all|none|surfaces|parses]  summary of the corpus, with the given skip sets
+ *     stats                                                 latency of every request type
+ *     ping
+ *     shutdown
+ * </pre>
+ * The corpus is a resource such as {@code simpleparseset999.txt}, or a file under the corpus directory given with the
+ * {@code daemon.corpus.dir} system property; without that property no files are served. A file ending in
+ * {@code .bin} is read as a {@link CompiledParseSet}. The response is
+ * {@code OK <line count>} and the lines, or {@code ERROR <message>}. Errors only repeat what the request said, never
+ * what a corpus file contains.
+ * <p>
+ * Every connection is served by a thread of its own that reads its requests one after another; the analysis and
+ * evaluation work of all connections goes to one shared pool of workers, in chunks, so concurrent clients share the
+ * workers instead of each getting a single thread.
+ * <p>
+ * The port is {@link #DEFAULT_PORT} unless the {@code daemon.port} system property is set, the token file is
+ * {@code ~/.evaluation-daemon.token} unless the {@code daemon.token.file} system property is set.
+ **/
+public class EvaluationDaemon implements Closeable {
+
+    static final int DEFAULT_PORT = 7399;
+    static final int PORT = Integer.getInteger("daemon.port", DEFAULT_PORT);
+    static final Path TOKEN_FILE = Paths.get(System.getProperty("daemon.token.file",
+            Paths.get(System.getProperty("user.home"), ".evaluation-daemon.token").toString()));
+    /**
+     * Null if only resources are served
+     */
+    static final Path CORPUS_DIRECTORY = System.getProperty("daemon.corpus.dir") == null ? null
+            : Paths.get(System.getProperty("daemon.corpus.dir"));
+
+    static final String AUTH = "auth";
+
+    static final String OK = "OK";
+    static final String ERROR = "ERROR";
+    static final char FIELD_SEPARATOR = '\t';
+
+    private static final int ANALYZE_CHUNK_SIZE = 256;
+    private static final Splitter FIELD_SPLITTER = Splitter.on(FIELD_SEPARATOR);
+
+    enum RequestType {
+        ANALYZE, EVALUATE, STATS, PING, SHUTDOWN;
+
+        final String command = name().toLowerCase(Locale.ROOT);
+
+        static RequestType of(String command) {
+            for (RequestType type : values()) {
+                if (type.command.equals(command))
+                    return type;
+            }
+            throw new IllegalArgumentException("Unknown request type '" + command + "'");
+        }
+    }
+
+    private final TurkishMorphology morphology;
+    private final Map<String, AnalysisFormatter> formatters;
+    private final Map<String, FormattedAnalysisCache> caches = new LinkedHashMap<>();
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final Map<RequestType, LatencyHistogram> latencies = new EnumMap<>(RequestType.class);
+    private final String token;
+    private final Path tokenFile;
+    private final Path corpusDirectory;
+
+    public EvaluationDaemon(TurkishMorphology morphology, Map<String, AnalysisFormatter> formatters, int port, int threads) throws IOException {
+        this(morphology, formatters, port, threads, TOKEN_FILE, CORPUS_DIRECTORY);
+    }
+
+    /**
+     * @param corpusDirectory directory of the corpus files that can be evaluated, null to serve resources only
+     */
+    public EvaluationDaemon(TurkishMorphology morphology, Map<String, AnalysisFormatter> formatters, int port, int threads,
+                            Path tokenFile, Path corpusDirectory) throws IOException {
+        Validate.isTrue(threads > 0);
+        this.corpusDirectory = corpusDirectory == null ? null : corpusDirectory.toRealPath();
+        this.morphology = morphology;
+        this.formatters = ImmutableMap.copyOf(formatters);
+        for (Map.Entry<String, AnalysisFormatter> entry : formatters.entrySet()) {
+            caches.put(entry.getKey(), FormattedAnalysisCache.withMaxEntries(morphology, entry.getValue(), DisambiguateSentences.ANALYSIS_CACHE_SIZE));
+        }
+        for (RequestType type : RequestType.values()) {
+            latencies.put(type, new LatencyHistogram());
+        }
+        this.token = newToken();
+        this.tokenFile = tokenFile;
+        writeToken(tokenFile, token);
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    private static String newToken() {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        return BaseEncoding.base16().lowerCase().encode(bytes);
+    }
+
+    /**
+     * Writes the token to a file that only the owner can read, created with these permissions so that it is never
+     * readable by others, and moved over the token file of an earlier run
+     */
+    private static void writeToken(Path file, String token) throws IOException {
+        final Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary;
+        try {
+            temporary = Files.createTempFile(directory, ".evaluation-daemon", ".token",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system; temporary files are private to the user there
+            temporary = Files.createTempFile(directory, ".evaluation-daemon", ".token");
+        }
+        Files.write(temporary, token.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String readToken(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Usage: {@code EvaluationDaemon [threads]}; serves until a {@code shutdown} request
+     */
+    public static void main(String[] args) throws IOException {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        try (EvaluationDaemon daemon = new EvaluationDaemon(MorphologySnapshot.shared(), defaultFormatters(), PORT, threads)) {
+            System.out.println("Serving on " + daemon.serverSocket.getLocalSocketAddress() + " with " + threads
+                    + " workers, started in " + stopwatch);
+            daemon.serve();
+        }
+    }
+
+    static Map<String, AnalysisFormatter> defaultFormatters() {
+        return ImmutableMap.of(
+                "sabanci1", new SabanciMetuTreeBankAnalysisFormatter(true),
+                "sabanci2", new SabanciMetuTreeBankAnalysisFormatter2(true),
+                "sabanci3", new SabanciMetuTreeBankAnalysisFormatter3(true),
+                "oflazer", AnalysisFormatters.OFLAZER_STYLE);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the daemon is closed
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed())
+                    return;
+                throw e;
+            }
+            clients.add(socket);
+            // close() may have missed it
+            if (serverSocket.isClosed()) {
+                closeQuietly(socket);
+                return;
+            }
+            connections.execute(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            if (!authenticated(in.readLine())) {
+                out.write(ERROR + " Unauthorized\n");
+                out.flush();
+                return;
+            }
+            out.write(OK + " 0\n");
+            out.flush();
+
+            String request;
+            while ((request = in.readLine()) != null) {
+                writeResponse(out, request);
+                out.flush();
+                if (request.equals(RequestType.SHUTDOWN.command)) {
+                    close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away or the daemon was closed, nothing to answer to
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    private boolean authenticated(String line) {
+        if (line == null || !line.startsWith(AUTH + FIELD_SEPARATOR))
+            return false;
+        final byte[] given = line.substring(AUTH.length() + 1).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(given, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeResponse(Writer out, String request) throws IOException {
+        final List<String> lines;
+        try {
+            lines = handle(request);
+        } catch (RuntimeException e) {
+            out.write(ERROR + " " + String.valueOf(e.getMessage()).replace('\n', ' ') + "\n");
+            return;
+        }
+        out.write(OK + " " + lines.size() + "\n");
+        for (String line : lines) {
+            out.write(line);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @return lines of the response
+     */
+    List<String> handle(String request) {
+        final List<String> fields = FIELD_SPLITTER.splitToList(request);
+        final RequestType type = RequestType.of(fields.get(0));
+        final long start = System.nanoTime();
+        final List<String> lines;
+        switch (type) {
+            case ANALYZE:
+                lines = analyze(cache(field(fields, 1)), fields.subList(Math.min(2, fields.size()), fields.size()));
+                break;
+            case EVALUATE:
+                lines = evaluate(field(fields, 1), field(fields, 2), fields.size() > 3 ? fields.get(3) : "all");
+                break;
+            case STATS:
+                lines = stats();
+                break;
+            case PING:
+                lines = Arrays.asList("pong");
+                break;
+            case SHUTDOWN:
+                lines = Arrays.asList("bye");
+                break;
+            default:
+                throw new IllegalStateException(type.toString());
+        }
+        latencies.get(type).record(System.nanoTime() - start);
+        return lines;
+    }
+
+    private static String field(List<String> fields, int index) {
+        Validate.isTrue(index < fields.size() && !fields.get(index).isEmpty(), "Missing field %d of %s", index, fields.get(0));
+        return fields.get(index);
+    }
+
+    private FormattedAnalysisCache cache(String formatter) {
+        final FormattedAnalysisCache cache = caches.get(formatter);
+        Validate.isTrue(cache != null, "Unknown formatter '%s', one of %s", formatter, formatters.keySet());
+        return cache;
+    }
+
+    private List<String> analyze(FormattedAnalysisCache cache, List<String> surfaces) {
+        final List<Future<List<String>>> futures = new ArrayList<>();
+        for (List<String> chunk : Lists.partition(surfaces, ANALYZE_CHUNK_SIZE)) {
+            futures.add(workers.submit(() -> {
+                final List<String> lines = new ArrayList<>(chunk.size());
+                for (String surface : chunk) {
+                    final StringBuilder line = new StringBuilder(surface);
+                    for (GoldParse parse : cache.formattedAnalyses(surface)) {
+                        line.append(FIELD_SEPARATOR).append(parse);
+                    }
+                    lines.add(line.toString());
+                }
+                return lines;
+            }));
+        }
+
+        final List<String> lines = new ArrayList<>(surfaces.size());
+        for (Future<List<String>> future : futures) {
+            lines.addAll(ParseSetEvaluator.get(future));
+        }
+        return lines;
+    }
+
+    private List<String> evaluate(String formatter, String corpus, String skipSets) {
+        Validate.isTrue(Arrays.asList("all", "none", "surfaces", "parses").contains(skipSets), "Unknown skip sets '%s'", skipSets);
+        final boolean skipSurfaces = skipSets.equals("all") || skipSets.equals("surfaces");
+        final boolean skipExpectedParseResults = skipSets.equals("all") || skipSets.equals("parses");
+
+        final FormattedAnalysisCache cache = cache(formatter);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final Path file = corpusFile(corpus);
+        final URL resource = file == null ? resource(corpus) : null;
+        final CompiledParseSet compiled;
+        final SimpleParseSetReader opened;
+        try {
+            compiled = file != null && CompiledParseSet.isCompiled(file) ? CompiledParseSet.open(file) : null;
+            opened = compiled != null ? null : file != null ? SimpleParseSetReader.open(file) : SimpleParseSetReader.open(resource);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Can't read corpus " + corpus);
+        }
+        final EvaluationResult result;
+        try (SimpleParseSetReader reader = opened) {
+            final ParseSetEvaluator evaluator = new ParseSetEvaluator(morphology, formatters.get(formatter), false, workers, ParseSetEvaluator.DEFAULT_CHUNK_SIZE)
+                    .withCache(cache)
+                    .withSkipSets(skipSurfaces, skipExpectedParseResults);
+            result = compiled != null ? evaluator.evaluate(compiled.lines()) : evaluator.evaluate(reader);
+        } catch (IOException | RuntimeException e) {
+            // the messages of the reader may quote lines of the file
+            throw new IllegalArgumentException("Can't evaluate corpus " + corpus);
+        }
+
+        final List<String> lines = print(result::printSummary);
+        lines.add("Elapsed " + stopwatch);
+        return lines;
+    }
+
+    /**
+     * @return real path of the file of the corpus directory, or null if there is no such file and the corpus is
+     * looked up in the resources; nothing outside of these
+     */
+    private Path corpusFile(String corpus) {
+        final Path name = Paths.get(corpus);
+        Validate.isTrue(!name.isAbsolute() && !name.normalize().startsWith("..") && !corpus.startsWith("/"),
+                "Corpus %s is not a relative name", corpus);
+        if (corpusDirectory == null)
+            return null;
+        final Path path = corpusDirectory.resolve(corpus).normalize();
+        if (!Files.isRegularFile(path))
+            return null;
+        // symbolic links must not lead out either
+        final Path real;
+        try {
+            real = path.toRealPath();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't read corpus " + corpus);
+        }
+        Validate.isTrue(real.startsWith(corpusDirectory), "Corpus %s is outside of the corpus directory", corpus);
+        return real;
+    }
+
+    private static URL resource(String corpus) {
+        final URL resource = EvaluationDaemon.class.getClassLoader().getResource(corpus);
+        Validate.isTrue(resource != null, "Unknown corpus %s", corpus);
+        return resource;
+    }
+
+    private List<String> stats() {
+        final List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "%-10s %10s %10s %10s %10s %12s", "request", "count", "mean us", "p50 us", "p99 us", "max us"));
+        for (Map.Entry<RequestType, LatencyHistogram> entry : latencies.entrySet()) {
+            final LatencyHistogram h = entry.getValue();
+            lines.add(String.format(Locale.ROOT, "%-10s %10d %10.0f %10d %10d %12d", entry.getKey().command, h.count(),
+                    h.mean() / 1000, h.valueAt(0.5) / 1000, h.valueAt(0.99) / 1000, h.max() / 1000));
+        }
+        for (Map.Entry<String, FormattedAnalysisCache> entry : caches.entrySet()) {
+            lines.add("=====Formatter " + entry.getKey());
+            lines.addAll(print(entry.getValue()::printStats));
+        }
+        return lines;
+    }
+
+    private static List<String> print(Consumer<PrintStream> printer) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(bytes, false, "UTF-8")) {
+            printer.accept(out);
+            return new ArrayList<>(Splitter.on('\n').omitEmptyStrings().splitToList(bytes.toString("UTF-8").replace("\r", "")));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stops accepting connections, lets the running requests finish and closes the connections, so that their threads
+     * don't keep the process alive waiting for the next request
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        Files.deleteIfExists(tokenFile);
+        connections.shutdown();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Socket socket : clients) {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+}
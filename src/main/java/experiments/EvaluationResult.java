@@ -0,0 +1,137 @@
+package experiments;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Counters and error tables of an evaluation over (a part of) a simple parse set.
+ * <p>
+ * The error tables count (surface, expected parse) pairs exactly by default. {@code -Derrors.maxEntries=<n>} bounds
+ * them to about the n most frequent pairs each, see {@link ErrorTable}; {@code -Derrors.top=<k>} prints only the k
+ * most frequent of every list.
+ * <p>
+ * Not thread safe; every worker fills its own instance and they are merged afterwards. Merging is order independent
+ * for the numbers and multisets, and the per-surface log is concatenated in merge order.
+ **/
+public class EvaluationResult {
+
+    static final int ERROR_TABLE_CAPACITY = Integer.getInteger("errors.maxEntries", 0);
+    static final int PRINTED_ERRORS = Integer.getInteger("errors.top", Integer.MAX_VALUE);
+
+    int numberOfSurfaces;
+    int unparsable;
+    int incorrectParses;
+    int skippedSurfaces;
+    int skippedExpectedParseResults;
+
+    final ErrorTable unparsableSurfaces;
+    final ErrorTable incorrectParsedSurfaces;
+
+    /**
+     * Analyses of the incorrectly parsed surfaces are looked up here again for the printed ones
+     */
+    Function<String, List<GoldParse>> candidates;
+
+    /**
+     * Hits per entry of the skip sets
+     */
+    final HashMultiset<String> skippedSurfaceHits = HashMultiset.create();
+    final HashMultiset<String> skippedExpectedParseResultHits = HashMultiset.create();
+    /**
+     * Hits per replace hack in the lines that were read for this result
+     */
+    final HashMultiset<String> replaceHackHits = HashMultiset.create();
+
+    /**
+     * Per-surface messages, only when surfaces are printed
+     */
+    final StringBuilder log;
+
+    public EvaluationResult(boolean keepLog) {
+        this(keepLog, new StringDictionary());
+    }
+
+    /**
+     * @param dictionary strings of the error tables, shared by the results of the workers of one run
+     */
+    EvaluationResult(boolean keepLog, StringDictionary dictionary) {
+        this.log = keepLog ? new StringBuilder() : null;
+        this.unparsableSurfaces = new ErrorTable(ERROR_TABLE_CAPACITY, dictionary);
+        this.incorrectParsedSurfaces = new ErrorTable(ERROR_TABLE_CAPACITY, dictionary);
+    }
+
+    public void merge(EvaluationResult other) {
+        numberOfSurfaces += other.numberOfSurfaces;
+        unparsable += other.unparsable;
+        incorrectParses += other.incorrectParses;
+        skippedSurfaces += other.skippedSurfaces;
+        skippedExpectedParseResults += other.skippedExpectedParseResults;
+        unparsableSurfaces.merge(other.unparsableSurfaces);
+        incorrectParsedSurfaces.merge(other.incorrectParsedSurfaces);
+        if (candidates == null)
+            candidates = other.candidates;
+        skippedSurfaceHits.addAll(other.skippedSurfaceHits);
+        skippedExpectedParseResultHits.addAll(other.skippedExpectedParseResultHits);
+        replaceHackHits.addAll(other.replaceHackHits);
+        if (log != null && other.log != null)
+            log.append(other.log);
+    }
+
+    public int getNumberOfSurfaces() {
+        return numberOfSurfaces;
+    }
+
+    public int getCorrectParses() {
+        return numberOfSurfaces - unparsable - incorrectParses - skippedSurfaces - skippedExpectedParseResults;
+    }
+
+    public void printSummary(PrintStream out) {
+        final int correctParses = getCorrectParses();
+
+        out.println("========SUMMARY===========");
+        out.println("Surface count             :\t\t" + numberOfSurfaces);
+        out.println("Unparsable                :\t\t" + unparsable);
+        out.println("Incorrect parses          :\t\t" + incorrectParses);
+        out.println("Skipped surfaces          :\t\t" + skippedSurfaces);
+        out.println("Skipped parse results     :\t\t" + skippedExpectedParseResults);
+        out.println("Correct parses            :\t\t" + correctParses);
+        out.println("Correct parse %           :\t\t" + (correctParses) * 1.0 / numberOfSurfaces * 100);
+
+        out.println("=====Incorrect parsed surfaces with occurrence count > 1=====");
+        printErrors(out, incorrectParsedSurfaces.top(PRINTED_ERRORS, 2, this::incorrectParseMessage), incorrectParsedSurfaces);
+
+        out.println("=====Unparsable surfaces");
+        printErrors(out, unparsableSurfaces.top(PRINTED_ERRORS, 1, (surface, expected) -> surface + "\t" + expected), unparsableSurfaces);
+    }
+
+    private String incorrectParseMessage(String surface, String expected) {
+        final String message = surface + " ----> " + expected;
+        return candidates == null ? message : message + " ----> " + candidates.apply(surface).toString();
+    }
+
+    private static void printErrors(PrintStream out, List<ErrorTable.Entry> entries, ErrorTable table) {
+        if (table.floor() > 0)
+            out.println("(approximate: pairs that are not listed occurred at most " + table.floor() + " times)");
+        for (ErrorTable.Entry entry : entries) {
+            out.println(entry.message + "\t\t\t" + entry.count + (entry.error > 0 ? "\t(+-" + entry.error + ")" : ""));
+        }
+    }
+
+    public void printSkipRuleHits(PrintStream out) {
+        printHits(out, "Skipped surface hits", skippedSurfaceHits);
+        printHits(out, "Skipped parse result rule hits", skippedExpectedParseResultHits);
+        printHits(out, "Parse result replace hack hits", replaceHackHits);
+    }
+
+    static void printHits(PrintStream out, String title, Multiset<String> hits) {
+        out.println("=====" + title);
+        for (Multiset.Entry<String> entry : Multisets.copyHighestCountFirst(hits).entrySet()) {
+            out.println(entry.getElement() + "\t\t\t" + entry.getCount());
+        }
+    }
+}
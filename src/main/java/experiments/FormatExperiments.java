@@ -14,7 +14,7 @@ public class FormatExperiments {
     private static final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
 
     public static void main(String[] args) {
-        final TurkishMorphology morphology = TurkishMorphology.createWithDefaults();
+        final TurkishMorphology morphology = MorphologySnapshot.shared();
 
 //        printWordAnalysis(morphology, "taranmış", "(1,\"tara+Verb\")(2,\"Verb+Pass+Pos+Narr+A3sg\")", 1);
 //        printWordAnalysis(morphology, "dedi", "(1,\"de+Verb+Pos+Past+A3sg\")", -1);
@@ -0,0 +1,102 @@
+package experiments;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded cache of surface -> formatted analyses, in {@link GoldParse} form. Corpora are Zipfian, so a few thousand entries cover most of the
+ * tokens and {@code ".", ",", "bir", "ve"} etc. are analyzed and formatted once instead of thousands of times.
+ * <p>
+ * An empty list means the surface is not parseable. Eviction is least-recently-used, bounded either by the number of
+ * entries or by an estimate of the retained bytes. Thread safe.
+ **/
+public class FormattedAnalysisCache implements ParseSetEvaluator.CandidateSource {
+
+    private final TurkishMorphology morphology;
+    private final AnalysisFormatter formatter;
+    private final Cache<String, ImmutableList<GoldParse>> cache;
+    private final GoldParse.TagTable tags = new GoldParse.TagTable();
+
+    private FormattedAnalysisCache(TurkishMorphology morphology, AnalysisFormatter formatter, Cache<String, ImmutableList<GoldParse>> cache) {
+        this.morphology = morphology;
+        this.formatter = formatter;
+        this.cache = cache;
+    }
+
+    public static FormattedAnalysisCache withMaxEntries(TurkishMorphology morphology, AnalysisFormatter formatter, long maxEntries) {
+        return new FormattedAnalysisCache(morphology, formatter, CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build());
+    }
+
+    public static FormattedAnalysisCache withMaxBytes(TurkishMorphology morphology, AnalysisFormatter formatter, long maxBytes) {
+        return new FormattedAnalysisCache(morphology, formatter, CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, ImmutableList<GoldParse>>weigher((surface, formatted) -> estimateBytes(surface, formatted))
+                .recordStats()
+                .build());
+    }
+
+    @Override
+    public ImmutableList<GoldParse> formattedAnalyses(String surface) {
+        try {
+            return cache.get(surface, () -> {
+                final long start = Metrics.start();
+                final WordAnalysis analysis = morphology.analyze(surface);
+                Metrics.record(Metrics.Stage.ANALYZE, start);
+                return format(analysis);
+            });
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    ImmutableList<GoldParse> format(WordAnalysis analysis) {
+        return FluentIterable.from(analysis).transform(input -> GoldParse.of(input, formatter, tags)).toList();
+    }
+
+    @Override
+    public GoldParse expectedParse(String expected) {
+        return GoldParse.parse(expected, tags, false);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void printStats(PrintStream out) {
+        final CacheStats stats = cache.stats();
+        out.println("=====Analysis cache");
+        out.println("Entries                   :\t\t" + cache.size());
+        out.println("Hits                      :\t\t" + stats.hitCount());
+        out.println("Misses                    :\t\t" + stats.missCount());
+        out.println("Evictions                 :\t\t" + stats.evictionCount());
+        out.println("Hit %                     :\t\t" + stats.hitRate() * 100);
+    }
+
+    /**
+     * Rough retained size: the key string, the list and per parse its object and tag array, or its string if it is
+     * raw. Lemmas and tags are shared by all parses and not counted.
+     */
+    private static int estimateBytes(String surface, ImmutableList<GoldParse> formatted) {
+        int bytes = 64 + 2 * surface.length() + 16 + 8 * formatted.size();
+        for (GoldParse parse : formatted) {
+            bytes += 40 + (parse.groupCount() == 0 ? 40 + 2 * parse.toString().length() : 16 + 4 * parse.tagCount());
+        }
+        return bytes;
+    }
+}
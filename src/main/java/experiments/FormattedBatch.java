@@ -0,0 +1,130 @@
+package experiments;
+
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.SingleAnalysis;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Formatted analyses written one after another into a single {@link StringBuilder}, each one an offset slice of it.
+ * Filled by {@link BatchAnalysisFormatter#formatAll}; candidates can be matched with {@link #indexOf} without creating
+ * a {@code String} per candidate.
+ * <p>
+ * Meant to be reused: {@link #clear()} keeps the buffers. Not thread safe.
+ **/
+public final class FormattedBatch {
+
+    final StringBuilder text = new StringBuilder(1024);
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int size;
+    private int openStart = -1;
+
+    public void clear() {
+        text.setLength(0);
+        size = 0;
+        openStart = -1;
+    }
+
+    /**
+     * Starts a new slice at the end of {@link #text}; the formatter appends to {@link #text} and calls {@link #end()}
+     */
+    int begin() {
+        openStart = text.length();
+        return openStart;
+    }
+
+    void end() {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = openStart;
+        ends[size] = text.length();
+        size++;
+        openStart = -1;
+    }
+
+    /**
+     * Appends the analyses formatted with the given formatter, in one go if it is a {@link BatchAnalysisFormatter}
+     */
+    public void addAll(AnalysisFormatter formatter, Iterable<SingleAnalysis> analyses) {
+        if (formatter instanceof BatchAnalysisFormatter) {
+            ((BatchAnalysisFormatter) formatter).formatAll(analyses, this);
+        } else {
+            for (SingleAnalysis analysis : analyses) {
+                add(formatter.format(analysis));
+            }
+        }
+    }
+
+    public void add(CharSequence formatted) {
+        begin();
+        text.append(formatted);
+        end();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return index of the first slice that equals the given text, -1 if none
+     */
+    public int indexOf(CharSequence formatted) {
+        final int length = formatted.length();
+        for (int i = 0; i < size; i++) {
+            if (ends[i] - starts[i] == length && regionEquals(starts[i], formatted, length))
+                return i;
+        }
+        return -1;
+    }
+
+    public boolean contains(CharSequence formatted) {
+        return indexOf(formatted) >= 0;
+    }
+
+    private boolean regionEquals(int start, CharSequence formatted, int length) {
+        // most candidates of a surface share the lexeme, they differ towards the end
+        for (int j = length - 1; j >= 0; j--) {
+            if (text.charAt(start + j) != formatted.charAt(j))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return read-only view of the slice, valid until the batch is cleared
+     */
+    public CharSequence slice(int index) {
+        return CharBuffer.wrap(text, starts[index], ends[index]);
+    }
+
+    public String string(int index) {
+        return text.substring(starts[index], ends[index]);
+    }
+
+    public List<String> strings() {
+        final List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(string(i));
+        }
+        return strings;
+    }
+}
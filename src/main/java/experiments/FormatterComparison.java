@@ -0,0 +1,288 @@
+package experiments;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.AnalysisFormatters;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Evaluates a simple parse set with several formatters in one pass: every surface is analyzed once and its analyses
+ * are formatted by all formatters, so comparing N formatters costs about one evaluation plus N times the formatting
+ * instead of N evaluations.
+ * <p>
+ * Gives the {@link EvaluationResult} of every formatter, the same as the one of evaluating with that formatter alone,
+ * and the (surface, expected parse) pairs on which the formatters disagree, i.e. some of them find the expected parse
+ * and some don't.
+ * <p>
+ * Chunks are evaluated on the executor and merged in order, like {@link ParseSetEvaluator} does.
+ **/
+public class FormatterComparison {
+
+    private static final char[] VERDICT_MARKS = {'?', '-', '+'};
+
+    private final TurkishMorphology morphology;
+    private final List<String> names;
+    private final List<AnalysisFormatter> formatters;
+    private final List<ParseSetEvaluator> evaluators;
+    private final ExecutorService executor;
+    private final int chunkSize;
+
+    public FormatterComparison(TurkishMorphology morphology, Map<String, AnalysisFormatter> formatters,
+                               ExecutorService executor, int chunkSize) {
+        Validate.isTrue(!formatters.isEmpty(), "No formatters to compare");
+        this.morphology = morphology;
+        this.names = ImmutableList.copyOf(formatters.keySet());
+        this.formatters = ImmutableList.copyOf(formatters.values());
+        this.evaluators = new ArrayList<>(formatters.size());
+        for (AnalysisFormatter formatter : this.formatters) {
+            evaluators.add(new ParseSetEvaluator(morphology, formatter, false));
+        }
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Usage: {@code FormatterComparison [threads]}; compares the Sabanci-METU formatters and the Oflazer style on
+     * {@code simpleparseset999.txt}
+     */
+    public static void main(String[] args) throws IOException {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        final TurkishMorphology morphology = MorphologySnapshot.shared();
+        final Map<String, AnalysisFormatter> formatters = ImmutableMap.of(
+                "sabanci1", new SabanciMetuTreeBankAnalysisFormatter(true),
+                "sabanci2", new SabanciMetuTreeBankAnalysisFormatter2(true),
+                "sabanci3", new SabanciMetuTreeBankAnalysisFormatter3(true),
+                "oflazer", AnalysisFormatters.OFLAZER_STYLE);
+
+        final List<Pair<String, String>> lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                StandardCharsets.UTF_8).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+
+        Metrics.reset();
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        final Result result;
+        try {
+            result = new FormatterComparison(morphology, formatters, executor, ParseSetEvaluator.DEFAULT_CHUNK_SIZE).compare(lines);
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
+        stopwatch.stop();
+
+        result.printSummary(System.out);
+        result.printDisagreements(System.out, EvaluationResult.PRINTED_ERRORS);
+        System.out.println("Elapsed " + stopwatch);
+        Metrics.dump(System.out);
+    }
+
+    public Result compare(List<Pair<String, String>> lines) {
+        if (executor == null)
+            return compare(lines, 0, lines.size());
+
+        final List<Future<Result>> futures = new ArrayList<>();
+        for (int from = 0; from < lines.size(); from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(lines.size(), from + chunkSize);
+            futures.add(executor.submit(() -> compare(lines, chunkFrom, chunkTo)));
+        }
+
+        final Result result = new Result();
+        for (Future<Result> future : futures) {
+            result.merge(ParseSetEvaluator.get(future));
+        }
+        return result;
+    }
+
+    Result compare(List<Pair<String, String>> lines, int from, int to) {
+        final Result result = new Result();
+        final SharedAnalysis analysis = new SharedAnalysis();
+        final int[] verdicts = new int[evaluators.size()];
+        for (int i = from; i < to; i++) {
+            final Pair<String, String> line = lines.get(i);
+            analysis.reset();
+            for (int j = 0; j < evaluators.size(); j++) {
+                verdicts[j] = evaluators.get(j).evaluate(line, 1, result.results.get(j), analysis);
+            }
+            if (disagree(verdicts))
+                result.disagreements.computeIfAbsent(line, l -> new Disagreement(verdicts.clone())).count++;
+        }
+        return result;
+    }
+
+    private static boolean disagree(int[] verdicts) {
+        for (int verdict : verdicts) {
+            if ((verdict == ParseSetEvaluator.FOUND) != (verdicts[0] == ParseSetEvaluator.FOUND))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Analysis of the current surface, computed by the first formatter's evaluator that needs it
+     */
+    private final class SharedAnalysis implements Function<String, WordAnalysis> {
+        private WordAnalysis analysis;
+
+        void reset() {
+            analysis = null;
+        }
+
+        @Override
+        public WordAnalysis apply(String surface) {
+            if (analysis == null)
+                analysis = morphology.analyze(surface);
+            return analysis;
+        }
+    }
+
+    static final class Disagreement {
+        final int[] verdicts;
+        int count;
+
+        Disagreement(int[] verdicts) {
+            this.verdicts = verdicts;
+        }
+    }
+
+    public final class Result {
+        final List<EvaluationResult> results = new ArrayList<>(evaluators.size());
+        /**
+         * In order of first occurrence
+         */
+        final Map<Pair<String, String>, Disagreement> disagreements = new LinkedHashMap<>();
+
+        Result() {
+            for (ParseSetEvaluator evaluator : evaluators) {
+                results.add(evaluator.newResult());
+            }
+        }
+
+        void merge(Result other) {
+            for (int i = 0; i < results.size(); i++) {
+                results.get(i).merge(other.results.get(i));
+            }
+            other.disagreements.forEach((line, disagreement) -> {
+                final Disagreement existing = disagreements.get(line);
+                if (existing == null)
+                    disagreements.put(line, disagreement);
+                else
+                    existing.count += disagreement.count;
+            });
+        }
+
+        /**
+         * @return result of the formatter with the given name
+         */
+        public EvaluationResult result(String name) {
+            final int index = names.indexOf(name);
+            Validate.isTrue(index >= 0, "Unknown formatter %s", name);
+            return results.get(index);
+        }
+
+        /**
+         * @return number of surfaces on which the formatters disagree, counting repeats
+         */
+        public int disagreementCount() {
+            int count = 0;
+            for (Disagreement disagreement : disagreements.values()) {
+                count += disagreement.count;
+            }
+            return count;
+        }
+
+        public void printSummary(PrintStream out) {
+            out.println("========COMPARISON========");
+            out.println(String.format(Locale.ROOT, "%-26s" + repeat(" %12s"), row("")));
+            printRow(out, "Surface count", r -> r.numberOfSurfaces);
+            printRow(out, "Unparsable", r -> r.unparsable);
+            printRow(out, "Incorrect parses", r -> r.incorrectParses);
+            printRow(out, "Skipped surfaces", r -> r.skippedSurfaces);
+            printRow(out, "Skipped parse results", r -> r.skippedExpectedParseResults);
+            printRow(out, "Correct parses", EvaluationResult::getCorrectParses);
+            final Object[] percentages = row("Correct parse %");
+            for (int i = 0; i < results.size(); i++) {
+                final EvaluationResult result = results.get(i);
+                percentages[i + 1] = result.numberOfSurfaces == 0 ? 0.0 : result.getCorrectParses() * 100.0 / result.numberOfSurfaces;
+            }
+            out.println(String.format(Locale.ROOT, "%-26s" + repeat(" %12.2f"), percentages));
+            out.println("Disagreements             :\t\t" + disagreementCount() + " (" + disagreements.size() + " distinct)");
+        }
+
+        /**
+         * Prints the disagreements with the most occurrences first, and the candidates of the formatters that don't
+         * find the expected parse. {@code +} found, {@code -} not found, {@code ?} unparsable.
+         */
+        public void printDisagreements(PrintStream out, int limit) {
+            out.println("=====Disagreements\t" + String.join(" ", names));
+            final List<Map.Entry<Pair<String, String>, Disagreement>> entries = new ArrayList<>(disagreements.entrySet());
+            entries.sort(Comparator.comparingInt((Map.Entry<Pair<String, String>, Disagreement> e) -> e.getValue().count).reversed());
+            for (Map.Entry<Pair<String, String>, Disagreement> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+                final Disagreement disagreement = entry.getValue();
+                final StringBuilder marks = new StringBuilder();
+                for (int verdict : disagreement.verdicts) {
+                    marks.append(VERDICT_MARKS[verdict]);
+                }
+                out.println(marks + "\t" + entry.getKey().getLeft() + " ----> " + entry.getKey().getRight() + "\t\t\t" + disagreement.count);
+
+                final WordAnalysis analysis = morphology.analyze(entry.getKey().getLeft());
+                for (int i = 0; i < formatters.size(); i++) {
+                    if (disagreement.verdicts[i] != ParseSetEvaluator.NOT_FOUND)
+                        continue;
+                    final List<String> candidates = new ArrayList<>();
+                    for (SingleAnalysis singleAnalysis : analysis) {
+                        candidates.add(formatters.get(i).format(singleAnalysis));
+                    }
+                    out.println("\t" + names.get(i) + "\t" + candidates);
+                }
+            }
+        }
+
+        private void printRow(PrintStream out, String title, Function<EvaluationResult, Integer> value) {
+            final Object[] row = row(title);
+            for (int i = 0; i < results.size(); i++) {
+                row[i + 1] = value.apply(results.get(i));
+            }
+            out.println(String.format(Locale.ROOT, "%-26s" + repeat(" %12d"), row));
+        }
+
+        /**
+         * @return row with the title, filled with the formatter names
+         */
+        private Object[] row(String title) {
+            final Object[] row = new Object[names.size() + 1];
+            row[0] = title;
+            for (int i = 0; i < names.size(); i++) {
+                row[i + 1] = names.get(i);
+            }
+            return row;
+        }
+
+        private String repeat(String column) {
+            final String[] columns = new String[names.size()];
+            Arrays.fill(columns, column);
+            return String.join("", columns);
+        }
+    }
+}
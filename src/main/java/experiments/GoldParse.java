@@ -0,0 +1,331 @@
+package experiments;
+
+import com.google.common.base.Splitter;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.SingleAnalysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Structural form of a parse in the treebank format: {@code (1,"şark+Noun+A3sg+Pnon+Nom")(2,"Adj+With")} is the
+ * lemma id of "şark" and the tag ids {@code Noun A3sg Pnon Nom | Adj With}, with {@link #GROUP_SEPARATOR} between
+ * the derivation groups. Lemmas and tags are interned into a {@link TagTable} that belongs to whoever produces the
+ * candidates, e.g. a {@link FormattedAnalysisCache}; equal parses of the same table have equal arrays and equality is
+ * an int array comparison after a precomputed hash.
+ * <p>
+ * Two parses of the same table are equal exactly when their strings are equal. A string that doesn't have the
+ * {@code (1,"..")(2,"..")..} shape is kept as it is, with a {@link #RAW} marker, and is not interned; {@link #toString()}
+ * always gives the original string back.
+ * <p>
+ * Candidates are converted with {@link #of(SingleAnalysis, AnalysisFormatter, TagTable)}: straight from the tokens for
+ * {@link SabanciMetuTreeBankAnalysisFormatter3}, from the formatted text for the formatters whose treebank rules work on
+ * text. Expected parses are converted with {@link #parse(String, TagTable, boolean)} without interning, so only the
+ * tags of candidates end up in a table. An expected parse with a tag that is not in the table yet is kept raw and
+ * {@link #hasUnknownTags() marked}: it can't match the candidates formatted so far, but it may match later ones, so
+ * it must not be reused once the table has grown.
+ **/
+public final class GoldParse {
+
+    static final int GROUP_SEPARATOR = -1;
+    private static final int[] RAW = {-2};
+    private static final int[] UNKNOWN_TAGS = {-3};
+
+    private static final Splitter TAG_SPLITTER = Splitter.on('+');
+    private static final ThreadLocal<Builder> BUILDERS = ThreadLocal.withInitial(Builder::new);
+
+    /**
+     * Null for a raw parse of a string that doesn't have the parse shape
+     */
+    private final TagTable table;
+    private final int lemma;
+    private final int[] tags;
+    private final String raw;
+    private final int hash;
+
+    private GoldParse(TagTable table, int lemma, int[] tags) {
+        this.table = table;
+        this.lemma = lemma;
+        this.tags = tags;
+        this.raw = null;
+        this.hash = 31 * lemma + Arrays.hashCode(tags);
+    }
+
+    private GoldParse(String raw) {
+        this(raw, null, RAW);
+    }
+
+    private GoldParse(String raw, TagTable table, int[] marker) {
+        this.table = table;
+        this.lemma = -1;
+        this.tags = marker;
+        this.raw = raw;
+        this.hash = raw.hashCode();
+    }
+
+    static GoldParse of(SingleAnalysis analysis, AnalysisFormatter formatter, TagTable table) {
+        final long start = Metrics.start();
+        final GoldParse parse;
+        if (formatter instanceof SabanciMetuTreeBankAnalysisFormatter3 && ((SabanciMetuTreeBankAnalysisFormatter3) formatter).addsIndices()
+                && isPlainToken(analysis.getDictionaryItem().root)) {
+            final Builder builder = BUILDERS.get();
+            builder.start(table, true);
+            ((SabanciMetuTreeBankAnalysisFormatter3) formatter).writeTokens(analysis, builder);
+            parse = builder.build();
+        } else {
+            parse = parse(formatter.format(analysis), table, true);
+        }
+        Metrics.record(Metrics.Stage.FORMAT, start);
+        return parse;
+    }
+
+    /**
+     * @param intern whether tags that are not in the table yet are added; if not, a parse with such a tag can't be
+     *               equal to any parse of the table and is kept raw
+     */
+    static GoldParse parse(String parse, TagTable table, boolean intern) {
+        final Builder builder = BUILDERS.get();
+        builder.start(table, intern);
+        int position = 0;
+        int groupIndex = 1;
+        while (position < parse.length()) {
+            final String prefix = "(" + groupIndex + ",\"";
+            if (!parse.startsWith(prefix, position))
+                return new GoldParse(parse);
+            final int start = position + prefix.length();
+            final int end = parse.indexOf("\")", start);
+            if (end < 0)
+                return new GoldParse(parse);
+
+            builder.startGroup(groupIndex);
+            int from = start;
+            int plus;
+            while ((plus = parse.indexOf('+', from)) >= 0 && plus < end) {
+                builder.token(parse.substring(from, plus));
+                from = plus + 1;
+            }
+            builder.token(parse.substring(from, end));
+            position = end + 2;
+            groupIndex++;
+        }
+
+        if (groupIndex == 1)
+            return new GoldParse(parse);
+        final GoldParse built = builder.build();
+        return built != null ? built : new GoldParse(parse, table, UNKNOWN_TAGS);
+    }
+
+    /**
+     * @return whether this is a parse that was kept raw only because the table didn't have one of its tags yet; it is
+     * not equal to any parse of the table, and parsing the string again after more candidates were added may give a
+     * parse that is
+     */
+    boolean hasUnknownTags() {
+        return tags == UNKNOWN_TAGS;
+    }
+
+    /**
+     * A token that is split off the text the same way it was written, so the token path of
+     * {@link #of(SingleAnalysis, AnalysisFormatter, TagTable)} gives the same parse as the text
+     */
+    private static boolean isPlainToken(String token) {
+        return token.indexOf('+') < 0 && token.indexOf('"') < 0;
+    }
+
+    /**
+     * @return tags of the derivation groups, the lemma first; null if the parse is not exactly {@code (1,"..")(2,"..")..}
+     */
+    static List<List<String>> groups(String parse) {
+        final List<List<String>> groups = new ArrayList<>();
+        int position = 0;
+        while (position < parse.length()) {
+            final String prefix = "(" + (groups.size() + 1) + ",\"";
+            if (!parse.startsWith(prefix, position))
+                return null;
+            final int start = position + prefix.length();
+            final int end = parse.indexOf("\")", start);
+            if (end < 0)
+                return null;
+            groups.add(TAG_SPLITTER.splitToList(parse.substring(start, end)));
+            position = end + 2;
+        }
+        return groups.isEmpty() ? null : groups;
+    }
+
+    public int lemma() {
+        return lemma;
+    }
+
+    /**
+     * @return length of the tag array, separators included
+     */
+    int tagCount() {
+        return tags.length;
+    }
+
+    /**
+     * @return number of derivation groups; 0 for a parse that is kept as a whole string
+     */
+    public int groupCount() {
+        if (raw != null)
+            return 0;
+        int count = 1;
+        for (int tag : tags) {
+            if (tag == GROUP_SEPARATOR)
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof GoldParse))
+            return false;
+        final GoldParse other = (GoldParse) o;
+        return hash == other.hash && lemma == other.lemma && table == other.table && Arrays.equals(tags, other.tags)
+                && Objects.equals(raw, other.raw);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @return the parse string this was created from
+     */
+    @Override
+    public String toString() {
+        if (raw != null)
+            return raw;
+
+        final StringBuilder builder = new StringBuilder();
+        int group = 1;
+        boolean groupStart = false;
+        builder.append("(1,\"").append(table.tag(lemma));
+        for (int tag : tags) {
+            if (tag == GROUP_SEPARATOR) {
+                builder.append("\")(").append(++group).append(",\"");
+                groupStart = true;
+            } else {
+                if (!groupStart)
+                    builder.append('+');
+                builder.append(table.tag(tag));
+                groupStart = false;
+            }
+        }
+        return builder.append("\")").toString();
+    }
+
+    /**
+     * Append only string <-> id table of lemmas and tags, lock free for lookups of existing strings. Only structured
+     * candidates add to it, so it is bounded by the lemmas and tags that the morphology can produce.
+     */
+    static final class TagTable {
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] tags = new String[1024];
+        private int size;
+
+        int id(String tag) {
+            final Integer id = ids.get(tag);
+            if (id != null)
+                return id;
+
+            synchronized (this) {
+                final Integer existing = ids.get(tag);
+                if (existing != null)
+                    return existing;
+
+                String[] current = tags;
+                if (size == current.length) {
+                    current = Arrays.copyOf(current, size * 2);
+                    tags = current;
+                }
+                current[size] = tag;
+                ids.put(tag, size);
+                return size++;
+            }
+        }
+
+        /**
+         * @return id of the tag, -1 if it is not in the table
+         */
+        int existingId(String tag) {
+            final Integer id = ids.get(tag);
+            return id != null ? id : -1;
+        }
+
+        String tag(int id) {
+            return tags[id];
+        }
+
+        int size() {
+            return ids.size();
+        }
+    }
+
+    /**
+     * Collects the ids of the tokens of one parse into a reused array
+     */
+    private static final class Builder implements SabanciMetuTreeBankAnalysisFormatter3.TokenWriter {
+        private TagTable table;
+        private boolean intern;
+        private int[] tags = new int[32];
+        private int size;
+        private int lemma;
+        private boolean lemmaPending;
+        private boolean unknownTag;
+
+        void start(TagTable table, boolean intern) {
+            this.table = table;
+            this.intern = intern;
+            size = 0;
+            lemma = -1;
+            unknownTag = false;
+        }
+
+        @Override
+        public void startGroup(int groupIndex) {
+            if (groupIndex == 1)
+                lemmaPending = true;
+            else
+                add(GROUP_SEPARATOR);
+        }
+
+        @Override
+        public void token(String token) {
+            final int id = intern ? table.id(token) : table.existingId(token);
+            unknownTag |= id < 0;
+            if (lemmaPending) {
+                lemma = id;
+                lemmaPending = false;
+            } else {
+                add(id);
+            }
+        }
+
+        @Override
+        public void endGroup() {
+        }
+
+        /**
+         * @return the parse, null if a tag is not in the table
+         */
+        GoldParse build() {
+            final GoldParse parse = unknownTag ? null : new GoldParse(table, lemma, Arrays.copyOf(tags, size));
+            table = null;
+            return parse;
+        }
+
+        private void add(int id) {
+            if (size == tags.length)
+                tags = Arrays.copyOf(tags, size * 2);
+            tags[size++] = id;
+        }
+    }
+}
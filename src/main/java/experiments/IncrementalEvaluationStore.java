@@ -0,0 +1,382 @@
+package experiments;
+
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedHashMultiset;
+import com.google.common.collect.Multiset;
+import org.apache.commons.lang3.tuple.Pair;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk store of an evaluation with {@link SabanciMetuTreeBankAnalysisFormatter2}, for iterating on its rules and
+ * on the skip sets of {@link DisambiguateSentences} without analyzing the corpus again.
+ * <p>
+ * For every distinct surface it keeps the analyses as they are before the rules
+ * ({@link SabanciMetuTreeBankAnalysisFormatter2#formatWithoutRules}) together with the {@link RuleChain} of each, and
+ * the verdict of every (surface, expected parse) pair. The rule table and a fingerprint of the skip sets are saved
+ * along. On the next run:
+ * <ul>
+ * <li>the old and the current rule tables are compared; only candidates that the differing rules could affect are
+ * formatted again, see {@link RuleChain#affectedBy}</li>
+ * <li>surfaces that are not in the store are analyzed and added</li>
+ * <li>only the pairs without a stored verdict, the ones of surfaces with changed candidates, or all pairs if the
+ * skip sets changed, are evaluated again; the stored verdicts of the others are counted as they are, see
+ * {@link #evaluate}</li>
+ * <li>the pairs whose verdict changed are reported</li>
+ * </ul>
+ * The store is discarded when the zemberek version or the {@code addIndices} setting differs.
+ **/
+public class IncrementalEvaluationStore implements ParseSetEvaluator.CandidateSource {
+
+    private static final int MAGIC = 0x49455331;    // "IES1"
+    private static final int VERSION = 1;
+
+    enum Verdict {
+        SKIPPED_SURFACE, SKIPPED_PARSE_RESULT, UNPARSABLE, INCORRECT, CORRECT
+    }
+
+    private final TurkishMorphology morphology;
+    private final SabanciMetuTreeBankAnalysisFormatter2 formatter;
+    private final boolean addIndices;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final GoldParse.TagTable tags = new GoldParse.TagTable();
+
+    private SequentialReplacer storedRules;
+    private int storedSkipSetsFingerprint;
+    private boolean loaded;
+
+    private final AtomicInteger analyzedSurfaces = new AtomicInteger();
+    private int reformattedCandidates;
+    private int keptCandidates;
+    private int evaluatedLines;
+    private int reusedVerdicts;
+    private final Map<Pair<String, String>, Pair<Verdict, Verdict>> changedVerdicts = new LinkedHashMap<>();
+
+    public IncrementalEvaluationStore(TurkishMorphology morphology, boolean addIndices) {
+        this.morphology = morphology;
+        this.formatter = new SabanciMetuTreeBankAnalysisFormatter2(addIndices);
+        this.addIndices = addIndices;
+    }
+
+    public SabanciMetuTreeBankAnalysisFormatter2 formatter() {
+        return formatter;
+    }
+
+    /**
+     * Loads the store if the file exists and was written with the same zemberek version and {@code addIndices},
+     * then brings the stored candidates up to date with the current rules.
+     */
+    public void load(Path path) throws IOException {
+        if (Files.isRegularFile(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path)), 1 << 16))) {
+                loaded = read(in);
+            }
+        }
+        if (loaded)
+            applyRuleChanges(SabanciMetuTreeBankAnalysisFormatter2.rules());
+    }
+
+    private boolean read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(MorphologySnapshot.zemberekVersion()) || in.readBoolean() != addIndices)
+            return false;
+
+        final int ruleCount = in.readInt();
+        final SequentialReplacer.Builder table = SequentialReplacer.builder();
+        for (int i = 0; i < ruleCount; i++) {
+            table.add(in.readUTF(), in.readUTF());
+        }
+        storedRules = table.build();
+        storedSkipSetsFingerprint = in.readInt();
+
+        final int surfaceCount = in.readInt();
+        for (int s = 0; s < surfaceCount; s++) {
+            final String surface = in.readUTF();
+
+            final int candidateCount = in.readInt();
+            final List<RuleChain> candidates = new ArrayList<>(candidateCount);
+            for (int c = 0; c < candidateCount; c++) {
+                final String base = in.readUTF();
+                final int[] rules = new int[in.readInt()];
+                final String[] texts = new String[rules.length];
+                for (int r = 0; r < rules.length; r++) {
+                    rules[r] = in.readInt();
+                    texts[r] = in.readUTF();
+                }
+                candidates.add(new RuleChain(base, rules, texts));
+            }
+
+            final Entry entry = new Entry(candidates);
+            final int verdictCount = in.readInt();
+            for (int v = 0; v < verdictCount; v++) {
+                entry.verdicts.put(in.readUTF(), Verdict.values()[in.readByte()]);
+            }
+            entries.put(surface, entry);
+        }
+        return true;
+    }
+
+    public void save(Path path) throws IOException {
+        final SequentialReplacer rules = SabanciMetuTreeBankAnalysisFormatter2.rules();
+        final Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp)), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(MorphologySnapshot.zemberekVersion());
+                out.writeBoolean(addIndices);
+
+                out.writeInt(rules.ruleCount());
+                for (int i = 0; i < rules.ruleCount(); i++) {
+                    out.writeUTF(rules.target(i));
+                    out.writeUTF(rules.replacement(i));
+                }
+                out.writeInt(DisambiguateSentences.skipSetsFingerprint());
+
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    final Entry entry = e.getValue();
+
+                    out.writeInt(entry.candidates.size());
+                    for (RuleChain candidate : entry.candidates) {
+                        out.writeUTF(candidate.base);
+                        out.writeInt(candidate.rules.length);
+                        for (int r = 0; r < candidate.rules.length; r++) {
+                            out.writeInt(candidate.rules[r]);
+                            out.writeUTF(candidate.texts[r]);
+                        }
+                    }
+
+                    out.writeInt(entry.verdicts.size());
+                    for (Map.Entry<String, Verdict> verdict : entry.verdicts.entrySet()) {
+                        out.writeUTF(verdict.getKey());
+                        out.writeByte(verdict.getValue().ordinal());
+                    }
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Re-applies the rules to the candidates that the differences between the stored and the given table can affect.
+     */
+    void applyRuleChanges(SequentialReplacer rules) {
+        final int oldCount = storedRules.ruleCount();
+        final int newCount = rules.ruleCount();
+
+        final int prefix = RuleChain.commonPrefix(storedRules, rules);
+        if (prefix == oldCount && prefix == newCount)
+            return;
+        final int suffix = RuleChain.commonSuffix(storedRules, rules, prefix);
+
+        for (Entry entry : entries.values()) {
+            boolean changed = false;
+            for (int i = 0; i < entry.candidates.size(); i++) {
+                final RuleChain candidate = entry.candidates.get(i);
+                if (candidate.affectedBy(rules, prefix, oldCount - suffix, newCount - suffix)) {
+                    final RuleChain reformatted = RuleChain.apply(rules, candidate.base);
+                    entry.candidates.set(i, reformatted);
+                    changed |= !reformatted.result().equals(candidate.result());
+                    reformattedCandidates++;
+                } else {
+                    keptCandidates++;
+                }
+            }
+            if (changed)
+                entry.invalidateParses();
+        }
+    }
+
+    @Override
+    public List<GoldParse> formattedAnalyses(String surface) {
+        return entry(surface).parses(tags);
+    }
+
+    @Override
+    public GoldParse expectedParse(String expected) {
+        return GoldParse.parse(expected, tags, false);
+    }
+
+    /**
+     * Analyzes and formats a new surface outside of the map, so other surfaces that hash to the same bin are not
+     * blocked meanwhile. Two threads may analyze the same new surface; the first one to store it wins.
+     */
+    private Entry entry(String surface) {
+        final Entry entry = entries.get(surface);
+        if (entry != null)
+            return entry;
+
+        final SequentialReplacer rules = SabanciMetuTreeBankAnalysisFormatter2.rules();
+        final List<RuleChain> candidates = new ArrayList<>();
+        final long start = Metrics.start();
+        final WordAnalysis analyses = morphology.analyze(surface);
+        Metrics.record(Metrics.Stage.ANALYZE, start);
+        for (SingleAnalysis analysis : analyses) {
+            candidates.add(RuleChain.apply(rules, formatter.formatWithoutRules(analysis)));
+        }
+
+        final Entry created = new Entry(candidates);
+        final Entry existing = entries.putIfAbsent(surface, created);
+        if (existing != null)
+            return existing;
+        analyzedSurfaces.incrementAndGet();
+        return created;
+    }
+
+    /**
+     * Evaluates the distinct lines whose stored verdict can't be reused with the given evaluator, which must take its
+     * candidates from this store, and counts the stored verdicts of the other lines into the result. The stored
+     * verdicts are updated afterwards. Not thread safe.
+     */
+    public EvaluationResult evaluate(Multiset<Pair<String, String>> lines, ParseSetEvaluator evaluator) {
+        final boolean skipSetsChanged = skipSetsChanged();
+        final LinkedHashMultiset<Pair<String, String>> stale = LinkedHashMultiset.create();
+        final List<Multiset.Entry<Pair<String, String>>> reused = new ArrayList<>();
+        for (Multiset.Entry<Pair<String, String>> line : lines.entrySet()) {
+            final Entry entry = entries.get(line.getElement().getLeft());
+            if (skipSetsChanged || entry == null || entry.parsesChanged || !entry.verdicts.containsKey(line.getElement().getRight()))
+                stale.add(line.getElement(), line.getCount());
+            else
+                reused.add(line);
+        }
+
+        final EvaluationResult result = evaluator.evaluate(stale);
+        for (Multiset.Entry<Pair<String, String>> line : reused) {
+            final Pair<String, String> pair = line.getElement();
+            count(pair.getLeft(), pair.getRight(), entries.get(pair.getLeft()).verdicts.get(pair.getRight()), line.getCount(), result);
+        }
+        updateVerdicts(stale.elementSet());
+
+        evaluatedLines += stale.elementSet().size();
+        reusedVerdicts += reused.size();
+        return result;
+    }
+
+    /**
+     * Counts a line with a known verdict the way {@link ParseSetEvaluator} counts an evaluated one
+     */
+    private static void count(String surface, String expected, Verdict verdict, int count, EvaluationResult result) {
+        result.numberOfSurfaces += count;
+        switch (verdict) {
+            case SKIPPED_SURFACE:
+                result.skippedSurfaceHits.add(surface, count);
+                result.skippedSurfaces += count;
+                break;
+            case SKIPPED_PARSE_RESULT:
+                result.skippedExpectedParseResultHits.add(DisambiguateSentences.skippedExpectedParseResultRule(expected), count);
+                result.skippedExpectedParseResults += count;
+                break;
+            case UNPARSABLE:
+                result.unparsableSurfaces.add(surface, expected, count);
+                result.unparsable += count;
+                break;
+            case INCORRECT:
+                result.incorrectParsedSurfaces.add(surface, expected, count);
+                result.incorrectParses += count;
+                break;
+            case CORRECT:
+                break;
+            default:
+                throw new IllegalStateException(verdict.toString());
+        }
+    }
+
+    private boolean skipSetsChanged() {
+        return !loaded || storedSkipSetsFingerprint != DisambiguateSentences.skipSetsFingerprint();
+    }
+
+    /**
+     * Updates the stored verdicts of the given lines and records the ones that changed since the last run.
+     * Not thread safe, call after the evaluation.
+     */
+    public void updateVerdicts(Iterable<Pair<String, String>> lines) {
+        final boolean skipSetsChanged = skipSetsChanged();
+        for (Pair<String, String> line : lines) {
+            final Entry entry = entry(line.getLeft());
+            final String expected = line.getRight();
+            final Verdict previous = entry.verdicts.get(expected);
+            if (previous != null && !skipSetsChanged && !entry.parsesChanged)
+                continue;
+
+            final Verdict verdict = verdict(line.getLeft(), expected, entry);
+            entry.verdicts.put(expected, verdict);
+            if (previous != null && previous != verdict)
+                changedVerdicts.put(line, Pair.of(previous, verdict));
+        }
+    }
+
+    private Verdict verdict(String surface, String expected, Entry entry) {
+        if (DisambiguateSentences.isSkippedSurface(surface))
+            return Verdict.SKIPPED_SURFACE;
+        if (DisambiguateSentences.skippedExpectedParseResultRule(expected) != null)
+            return Verdict.SKIPPED_PARSE_RESULT;
+        final List<GoldParse> parses = entry.parses(tags);
+        if (parses.isEmpty())
+            return Verdict.UNPARSABLE;
+        return parses.contains(expectedParse(expected)) ? Verdict.CORRECT : Verdict.INCORRECT;
+    }
+
+    public void printStats(PrintStream out) {
+        out.println("=====Incremental evaluation store");
+        out.println("Loaded                    :\t\t" + loaded);
+        out.println("Surfaces                  :\t\t" + entries.size());
+        out.println("Analyzed surfaces         :\t\t" + analyzedSurfaces.get());
+        out.println("Reformatted candidates    :\t\t" + reformattedCandidates);
+        out.println("Kept candidates           :\t\t" + keptCandidates);
+        out.println("Evaluated distinct lines  :\t\t" + evaluatedLines);
+        out.println("Reused verdicts           :\t\t" + reusedVerdicts);
+        out.println("Changed verdicts          :\t\t" + changedVerdicts.size());
+        for (Map.Entry<Pair<String, String>, Pair<Verdict, Verdict>> e : changedVerdicts.entrySet()) {
+            out.println(e.getKey().getLeft() + "\t" + e.getKey().getRight() + "\t\t\t" + e.getValue().getLeft() + " -> " + e.getValue().getRight());
+        }
+    }
+
+    private static final class Entry {
+        final List<RuleChain> candidates;
+        final Map<String, Verdict> verdicts = new LinkedHashMap<>();
+        volatile ImmutableList<GoldParse> parses;
+        boolean parsesChanged;
+
+        Entry(List<RuleChain> candidates) {
+            this.candidates = candidates;
+        }
+
+        ImmutableList<GoldParse> parses(GoldParse.TagTable tags) {
+            ImmutableList<GoldParse> result = parses;
+            if (result == null) {
+                result = FluentIterable.from(candidates).transform(candidate -> GoldParse.parse(candidate.result(), tags, true)).toList();
+                parses = result;
+            }
+            return result;
+        }
+
+        void invalidateParses() {
+            parses = null;
+            parsesChanged = true;
+        }
+    }
+}
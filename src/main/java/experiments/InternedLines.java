@@ -0,0 +1,113 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * (surface, expected parse) lines of a parse set as ids of a {@link StringDictionary}: 8 bytes of heap per line
+ * instead of a {@link Pair} and two strings. Lines are decoded on {@link #get}, so a caller that holds on to a line
+ * holds a copy of it; the strings of the lines being evaluated are garbage as soon as the line is done with.
+ * <p>
+ * {@link ParseSetEvaluator} evaluates the lines by their ids, without decoding them; the errors are counted by id in
+ * the {@link #dictionary()} of the lines.
+ * <p>
+ * Lines are {@link #append}ed by one thread; after that the list can be read by any number of threads.
+ **/
+public final class InternedLines extends AbstractList<Pair<String, String>> implements RandomAccess {
+
+    private final StringDictionary dictionary;
+    /**
+     * Surface id, expected parse id, surface id, ...
+     */
+    private int[] ids = new int[1024];
+    private int size;
+
+    public InternedLines() {
+        this(new StringDictionary());
+    }
+
+    public InternedLines(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public void append(String surface, String expected) {
+        if (2 * size == ids.length)
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        ids[2 * size] = dictionary.id(surface);
+        ids[2 * size + 1] = dictionary.id(expected);
+        size++;
+    }
+
+    @Override
+    public Pair<String, String> get(int index) {
+        Validate.validIndex(this, index);
+        return Pair.of(dictionary.string(ids[2 * index]), dictionary.string(ids[2 * index + 1]));
+    }
+
+    public int surfaceId(int index) {
+        Validate.validIndex(this, index);
+        return ids[2 * index];
+    }
+
+    public int expectedId(int index) {
+        Validate.validIndex(this, index);
+        return ids[2 * index + 1];
+    }
+
+    public StringDictionary dictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Loads simpleparseset999.txt {@code copies} times as interned lines or as a list of string pairs and prints the
+     * heap that is left after a full GC, {@code <copies> <interned|strings>}. The default of 185 copies is about 10M
+     * tokens; run with {@code -Xlog:gc} to see the collections while loading.
+     */
+    public static void main(String[] args) throws IOException {
+        final int copies = args.length > 0 ? Integer.parseInt(args[0]) : 185;
+        final boolean interned = args.length <= 1 || "interned".equals(args[1]);
+
+        final List<String> parseSet = Resources.readLines(Resources.getResource("simpleparseset999.txt"), StandardCharsets.UTF_8);
+        final InternedLines internedLines = new InternedLines();
+        final List<Pair<String, String>> pairs = new ArrayList<>();
+        for (int i = 0; i < copies; i++) {
+            for (String line : parseSet) {
+                if (SimpleParseSetReader.END_OF_SENTENCE.equals(line))
+                    continue;
+                // split again every time, as reading a corpus of distinct files would
+                final Pair<String, String> pair = DisambiguateSentences.parseLine(new String(line.toCharArray()));
+                if (interned)
+                    internedLines.append(pair.getLeft(), pair.getRight());
+                else
+                    pairs.add(pair);
+            }
+        }
+
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        System.gc();
+        final List<Pair<String, String>> lines = interned ? internedLines : pairs;
+        System.out.println("Lines                :\t\t" + lines.size());
+        System.out.println("Heap used MB         :\t\t" + memory.getHeapMemoryUsage().getUsed() / (1 << 20));
+        System.out.println("Distinct strings     :\t\t" + internedLines.dictionary().size());
+        System.out.println("Off-heap MB          :\t\t" + internedLines.dictionary().offHeapBytes() / (1 << 20));
+        // keeps the lines reachable until the heap is measured
+        System.out.println("Last line            :\t\t" + lines.get(lines.size() - 1));
+    }
+}
@@ -0,0 +1,106 @@
+package experiments;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of nanosecond values in the style of HdrHistogram: values below 32 have a bucket each, above
+ * that every power of two is split into 32 linear sub-buckets, so any recorded value is known within ~3%. The whole
+ * range of {@code long} fits into 1920 buckets.
+ * <p>
+ * Recording is a few shifts and {@link LongAdder} increments, without locks. Threads that record at the same time,
+ * which is the common case for the one histogram of a stage, are spread over cells of their own instead of contending
+ * for the cache lines of shared counters; a cell is allocated the first time threads collide on a counter, and the
+ * cells are only summed when the histogram is read. Thread safe; a snapshot taken while other threads record may be
+ * off by the in-flight values.
+ **/
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts[bucket(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    static long width(int bucket) {
+        return bucket < SUB_BUCKETS ? 1 : 1L << (bucket / SUB_BUCKETS - 1);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : sum.sum() * 1.0 / n;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return middle of the bucket that holds the value at the quantile, 0 if nothing was recorded
+     */
+    public long valueAt(double quantile) {
+        final long n = count.sum();
+        if (n == 0)
+            return 0;
+
+        final long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket].sum();
+            if (seen >= rank)
+                return Math.min(max.get(), lowerBound(bucket) + width(bucket) / 2);
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket].reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,81 @@
+package experiments;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import org.apache.commons.lang3.tuple.Pair;
+import zemberek.core.turkish.PrimaryPos;
+import zemberek.core.turkish.SecondaryPos;
+import zemberek.morphology.lexicon.DictionaryItem;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The {@code root+Pos+SecPos} prefix that the Sabanci-METU formatters start every analysis with, formatted once per
+ * {@link DictionaryItem}. The secondary pos is left out for the (primary, secondary) pairs given at construction.
+ * <p>
+ * Dictionary items are compared by identity and held weakly, so a morphology that is thrown away takes its entries
+ * with it. Thread safe.
+ **/
+final class LexemePrefixes {
+
+    /**
+     * Secondary pos values to leave out, per primary pos; every primary pos has a set
+     */
+    private final EnumMap<PrimaryPos, EnumSet<SecondaryPos>> secondaryPosToSkip = new EnumMap<>(PrimaryPos.class);
+
+    private final LoadingCache<DictionaryItem, String> prefixes = CacheBuilder.newBuilder()
+            .weakKeys()
+            .recordStats()
+            .build(new CacheLoader<DictionaryItem, String>() {
+                @Override
+                public String load(DictionaryItem dictionaryItem) {
+                    return format(dictionaryItem);
+                }
+            });
+
+    LexemePrefixes(Set<Pair<PrimaryPos, SecondaryPos>> secondaryPosToSkip) {
+        for (PrimaryPos primaryPos : PrimaryPos.values()) {
+            this.secondaryPosToSkip.put(primaryPos, EnumSet.noneOf(SecondaryPos.class));
+        }
+        for (Pair<PrimaryPos, SecondaryPos> pair : secondaryPosToSkip) {
+            this.secondaryPosToSkip.get(pair.getLeft()).add(pair.getRight());
+        }
+    }
+
+    String of(DictionaryItem dictionaryItem) {
+        return prefixes.getUnchecked(dictionaryItem);
+    }
+
+    String format(DictionaryItem dictionaryItem) {
+        final PrimaryPos primaryPos = dictionaryItem.primaryPos;
+        final SecondaryPos secondaryPos = dictionaryItem.secondaryPos;
+
+        final StringBuilder prefix = new StringBuilder(dictionaryItem.root.length() + 16);
+        prefix.append(dictionaryItem.root).append('+').append(primaryPos.getStringForm());
+        if (secondaryPos != null && secondaryPos != SecondaryPos.None && !secondaryPosToSkip.get(primaryPos).contains(secondaryPos))
+            prefix.append('+').append(secondaryPos.getStringForm());
+        return prefix.toString();
+    }
+
+    long size() {
+        return prefixes.size();
+    }
+
+    CacheStats stats() {
+        return prefixes.stats();
+    }
+
+    void printStats(PrintStream out) {
+        final CacheStats stats = prefixes.stats();
+        out.println("=====Lexeme prefix cache");
+        out.println("Entries                   :\t\t" + prefixes.size());
+        out.println("Hits                      :\t\t" + stats.hitCount());
+        out.println("Misses                    :\t\t" + stats.missCount());
+        out.println("Hit %                     :\t\t" + stats.hitRate() * 100);
+    }
+}
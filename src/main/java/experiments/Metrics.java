@@ -0,0 +1,163 @@
+package experiments;
+
+import com.google.common.base.Stopwatch;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage latency histograms and throughput of the evaluation pipeline. Usage on a hot path:
+ * <pre>
+ *     final long start = Metrics.start();
+ *     ...
+ *     Metrics.record(Metrics.Stage.ANALYZE, start);
+ * </pre>
+ * Enabled with {@code -Dmetrics=true}, or by giving an output file with {@code -Dmetrics.json=<file>} and/or
+ * {@code -Dmetrics.prometheus=<file>}. {@link #ENABLED} is a constant, so when disabled the JIT removes the calls
+ * entirely. When enabled, recording is two {@link System#nanoTime()} calls and a few striped counter increments (see
+ * {@link LatencyHistogram}), without locks.
+ * <p>
+ * Stages nest: {@link Stage#FORMAT} includes {@link Stage#APPLY_RULES} for the formatters that have rules, and
+ * {@link Stage#MATCH} includes converting the expected parse.
+ **/
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("metrics")
+            || System.getProperty("metrics.json") != null || System.getProperty("metrics.prometheus") != null;
+
+    public enum Stage {
+        PARSE_LINE("parse_line"),
+        SKIP_FILTER("skip_filter"),
+        ANALYZE("analyze"),
+        FORMAT("format"),
+        APPLY_RULES("apply_rules"),
+        MATCH("match");
+
+        final String metricName;
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Stage(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final Stopwatch SINCE_RESET = Stopwatch.createStarted();
+
+    private Metrics() {
+    }
+
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    public static void record(Stage stage, long start) {
+        if (ENABLED)
+            stage.histogram.record(System.nanoTime() - start);
+    }
+
+    public static LatencyHistogram histogram(Stage stage) {
+        return stage.histogram;
+    }
+
+    public static synchronized void reset() {
+        for (Stage stage : Stage.values()) {
+            stage.histogram.reset();
+        }
+        SINCE_RESET.reset().start();
+    }
+
+    /**
+     * Writes the files given with the system properties and prints a table; does nothing when disabled
+     */
+    public static void dump(PrintStream out) throws IOException {
+        if (!ENABLED)
+            return;
+
+        final double seconds = SINCE_RESET.elapsed(TimeUnit.NANOSECONDS) / 1e9;
+        printTable(out, seconds);
+
+        final String json = System.getProperty("metrics.json");
+        if (json != null)
+            write(Paths.get(json), toJson(seconds));
+        final String prometheus = System.getProperty("metrics.prometheus");
+        if (prometheus != null)
+            write(Paths.get(prometheus), toPrometheus());
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        final Path parent = path.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void printTable(PrintStream out, double seconds) {
+        out.println("=====Stage metrics (ns)");
+        out.println(String.format(Locale.ROOT, "%-12s %10s %12s %10s %10s %10s %10s %12s", "stage", "count", "ops/s", "mean", "p50", "p99", "p99.9", "max"));
+        for (Stage stage : Stage.values()) {
+            final LatencyHistogram h = stage.histogram;
+            out.println(String.format(Locale.ROOT, "%-12s %10d %12.0f %10.0f %10d %10d %10d %12d", stage.metricName, h.count(),
+                    h.count() / seconds, h.mean(), h.valueAt(0.5), h.valueAt(0.99), h.valueAt(0.999), h.max()));
+        }
+    }
+
+    /**
+     * @param seconds wall time that the throughput is computed over
+     */
+    static String toJson(double seconds) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n  \"elapsedSeconds\": ").append(format(seconds)).append(",\n  \"stages\": {");
+        final Stage[] stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            final LatencyHistogram h = stages[i].histogram;
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    \"").append(stages[i].metricName).append("\": {")
+                    .append("\"count\": ").append(h.count())
+                    .append(", \"opsPerSecond\": ").append(format(h.count() / seconds))
+                    .append(", \"sumNanos\": ").append(h.sum())
+                    .append(", \"meanNanos\": ").append(format(h.mean()))
+                    .append(", \"maxNanos\": ").append(h.max());
+            for (double quantile : QUANTILES) {
+                json.append(", \"p").append(quantileLabel(quantile)).append("Nanos\": ").append(h.valueAt(quantile));
+            }
+            json.append('}');
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    /**
+     * Prometheus text exposition format, one summary per stage in seconds
+     */
+    static String toPrometheus() {
+        final StringBuilder text = new StringBuilder();
+        text.append("# HELP evaluation_stage_seconds Latency of the evaluation pipeline stages\n");
+        text.append("# TYPE evaluation_stage_seconds summary\n");
+        for (Stage stage : Stage.values()) {
+            final LatencyHistogram h = stage.histogram;
+            for (double quantile : QUANTILES) {
+                text.append("evaluation_stage_seconds{stage=\"").append(stage.metricName).append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(format(h.valueAt(quantile) / 1e9)).append('\n');
+            }
+            text.append("evaluation_stage_seconds_sum{stage=\"").append(stage.metricName).append("\"} ").append(format(h.sum() / 1e9)).append('\n');
+            text.append("evaluation_stage_seconds_count{stage=\"").append(stage.metricName).append("\"} ").append(h.count()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String quantileLabel(double quantile) {
+        final String label = String.format(Locale.ROOT, "%.1f", quantile * 100);
+        return label.endsWith(".0") ? label.substring(0, label.length() - 2) : label.replace('.', '_');
+    }
+
+    private static String format(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "0";
+    }
+}
@@ -0,0 +1,61 @@
+package experiments;
+
+import zemberek.core.turkish.PrimaryPos;
+import zemberek.morphology.morphotactics.Morpheme;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the Sabanci-METU formatters need to know about a {@link Morpheme}, computed once per morpheme so that the
+ * group emission loops only read fields: the id as chars, the pos form that starts a derivation group, whether it
+ * is a negation, and the id renamed to the treebank's (e.g. {@code AfterDoing -> AfterDoingSo}).
+ * <p>
+ * There are only a few hundred morphemes; the table is filled lazily and never evicted. It is keyed by
+ * {@link Morpheme#equals}, which compares the ids, so equal morphemes of different morphology instances share a
+ * descriptor. Thread safe.
+ **/
+final class MorphemeDescriptor {
+
+    private static final ConcurrentHashMap<Morpheme, MorphemeDescriptor> TABLE = new ConcurrentHashMap<>();
+
+    final char[] idChars;
+    final boolean derivational;
+    final PrimaryPos pos;
+    /**
+     * {@code pos.getStringForm()}, null if the morpheme has no pos
+     */
+    final String posForm;
+    final boolean negation;
+    /**
+     * Id as it is in the treebank
+     */
+    final String sabanciId;
+
+    private MorphemeDescriptor(Morpheme morpheme) {
+        this.idChars = morpheme.id.toCharArray();
+        this.derivational = morpheme.derivational;
+        this.pos = morpheme.pos;
+        this.posForm = morpheme.pos == null ? null : morpheme.pos.getStringForm();
+        this.negation = morpheme.id.startsWith("Neg");
+        this.sabanciId = sabanciId(morpheme.id);
+    }
+
+    static MorphemeDescriptor of(Morpheme morpheme) {
+        final MorphemeDescriptor descriptor = TABLE.get(morpheme);
+        return descriptor != null ? descriptor : TABLE.computeIfAbsent(morpheme, MorphemeDescriptor::new);
+    }
+
+    static int size() {
+        return TABLE.size();
+    }
+
+    /**
+     * Renames of {@link SabanciMetuTreeBankAnalysisFormatter2}'s rules that only depend on the morpheme itself
+     */
+    static String sabanciId(String id) {
+        // +AfterDoing -> +AfterDoingSo
+        if (id.startsWith("AfterDoing"))
+            return "AfterDoingSo" + id.substring("AfterDoing".length());
+        return id;
+    }
+}
@@ -0,0 +1,108 @@
+package experiments;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.io.Resources;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.lexicon.DictionarySerializer;
+import zemberek.morphology.lexicon.RootLexicon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Builds {@link TurkishMorphology} from a lexicon snapshot in a local cache directory instead of loading the default
+ * dictionaries on every start. The snapshot file name contains the zemberek version from the pom, so a version bump
+ * writes a new snapshot instead of using a stale one.
+ * <p>
+ * Only the lexicon can be saved; morphotactics and the analyzer graph are not serializable in zemberek and are still
+ * built on every start. Within a JVM, {@link #shared()} gives the same instance to all callers, so test classes and
+ * experiments in the same run build it only once.
+ * <p>
+ * The snapshot is in {@code morphology.snapshot.dir} if that system property is set, otherwise in
+ * {@link #cacheDirectory()}. The test and benchmark runs of the pom set it to a directory under {@code target}, so
+ * they don't write into the home directory. A snapshot that can't be read is rebuilt.
+ **/
+public class MorphologySnapshot {
+
+    private static final String VERSION_RESOURCE = "zemberek.properties";
+
+    private static final Supplier<TurkishMorphology> SHARED = Suppliers.memoize(() -> {
+        try {
+            return load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    });
+
+    public static TurkishMorphology shared() {
+        return SHARED.get();
+    }
+
+    /**
+     * @return a new morphology, from the snapshot if there is one; otherwise built with the defaults and snapshotted
+     */
+    public static TurkishMorphology load() throws IOException {
+        final Path snapshot = snapshotFile();
+
+        if (Files.isRegularFile(snapshot)) {
+            try {
+                final RootLexicon lexicon = DictionarySerializer.load(snapshot.toFile());
+                return TurkishMorphology.builder().setLexicon(lexicon).build();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring unreadable morphology snapshot " + snapshot + ": " + e);
+            }
+        }
+
+        final TurkishMorphology morphology = TurkishMorphology.createWithDefaults();
+        save(morphology.getLexicon(), snapshot);
+        return morphology;
+    }
+
+    static Path snapshotFile() {
+        final String dir = System.getProperty("morphology.snapshot.dir");
+        return (dir != null ? Paths.get(dir) : cacheDirectory()).resolve("lexicon-zemberek-" + zemberekVersion() + ".bin");
+    }
+
+    /**
+     * Local directory for files that can be rebuilt any time: {@code experiments.cache.dir} if that system property is
+     * set, otherwise {@code ~/.cache/nlp-experiments}
+     */
+    static Path cacheDirectory() {
+        final String dir = System.getProperty("experiments.cache.dir");
+        return dir != null ? Paths.get(dir) : Paths.get(System.getProperty("user.home"), ".cache", "nlp-experiments");
+    }
+
+    static String zemberekVersion() {
+        final Properties properties = new Properties();
+        try (InputStream in = Resources.getResource(VERSION_RESOURCE).openStream()) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return properties.getProperty("zemberek.version");
+    }
+
+    /**
+     * Writes to a temporary file first, so a concurrent or interrupted run never leaves a half written snapshot
+     */
+    private static void save(RootLexicon lexicon, Path snapshot) throws IOException {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        Files.createDirectories(snapshot.getParent());
+        final Path temp = Files.createTempFile(snapshot.getParent(), snapshot.getFileName().toString(), ".tmp");
+        try {
+            DictionarySerializer.save(lexicon, temp);
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        System.err.println("Saved morphology snapshot " + snapshot + " in " + stopwatch);
+    }
+}
@@ -0,0 +1,542 @@
+package experiments;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.LinkedHashMultiset;
+import com.google.common.collect.Multiset;
+import org.apache.commons.lang3.tuple.Pair;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Checks whether the expected parse of every surface of a simple parse set is among the formatted analyses.
+ * <p>
+ * Without an executor everything runs on the calling thread. With one, the lines are split into chunks, every chunk
+ * is evaluated into its own {@link EvaluationResult} and the results are merged in chunk order, so the summary is the
+ * same as the one of the sequential run.
+ * <p>
+ * The workers share the {@link TurkishMorphology} instance: {@link TurkishMorphology#analyze(String)} keeps no
+ * per-call state outside its concurrent analysis cache. Formatters must be thread safe as well, the Sabanci-METU
+ * ones are.
+ * <p>
+ * With a cache, every distinct expected parse is converted to a {@link GoldParse} once per evaluator and looked up
+ * afterwards, so an evaluator is meant for one run. The error tables of a run intern into a {@link StringDictionary}
+ * of the evaluator. {@link InternedLines} are evaluated by their ids instead, see {@link #evaluateByIds}.
+ **/
+public class ParseSetEvaluator {
+
+    static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    static final int SKIPPED = -1;
+    static final int UNPARSABLE = 0;
+    static final int NOT_FOUND = 1;
+    static final int FOUND = 2;
+
+    /**
+     * Marks a looked up id that has no skipped surface or skip rule; compared by identity
+     */
+    @SuppressWarnings("StringOperationCanBeSimplified")
+    private static final String NONE = new String("none");
+
+    private static final ThreadLocal<FormattedBatch> BATCHES = ThreadLocal.withInitial(FormattedBatch::new);
+
+    private final TurkishMorphology morphology;
+    private final Function<String, WordAnalysis> analyzer;
+    private final AnalysisFormatter formatter;
+    private final boolean printSurfaces;
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final Map<String, GoldParse> expectedParses = new ConcurrentHashMap<>();
+    /**
+     * Strings of the exact error tables of runs over string lines; bounded tables don't intern, see {@link ErrorTable}
+     */
+    private final StringDictionary dictionary = new StringDictionary();
+    /**
+     * Lemmas and tags of the candidates of the error messages when there is no cache
+     */
+    private final GoldParse.TagTable tags = new GoldParse.TagTable();
+
+    private CandidateSource cache;
+    private boolean skipSurfaces = true;
+    private boolean skipExpectedParseResults = true;
+
+    public ParseSetEvaluator(TurkishMorphology morphology, AnalysisFormatter formatter, boolean printSurfaces) {
+        this(morphology, formatter, printSurfaces, null, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParseSetEvaluator(TurkishMorphology morphology, AnalysisFormatter formatter, boolean printSurfaces,
+                             ExecutorService executor, int chunkSize) {
+        this.morphology = morphology;
+        this.analyzer = surface -> this.morphology.analyze(surface);
+        this.formatter = formatter;
+        this.printSurfaces = printSurfaces;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Takes analyses from the given cache instead of analyzing and formatting every occurrence of a surface. The cache
+     * must be built with the same morphology and formatter.
+     */
+    public ParseSetEvaluator withCache(CandidateSource cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Turns the skip sets of {@link DisambiguateSentences} on or off; both are on by default
+     */
+    public ParseSetEvaluator withSkipSets(boolean skipSurfaces, boolean skipExpectedParseResults) {
+        this.skipSurfaces = skipSurfaces;
+        this.skipExpectedParseResults = skipExpectedParseResults;
+        return this;
+    }
+
+    public EvaluationResult evaluate(List<Pair<String, String>> lines) {
+        if (lines instanceof InternedLines && cache != null)
+            return evaluateByIds((InternedLines) lines);
+        if (executor == null)
+            return evaluate(lines, 0, lines.size());
+
+        final List<Future<EvaluationResult>> futures = new ArrayList<>();
+        for (int from = 0; from < lines.size(); from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(lines.size(), from + chunkSize);
+            futures.add(executor.submit(() -> evaluate(lines, chunkFrom, chunkTo)));
+        }
+
+        final EvaluationResult result = newResult();
+        for (Future<EvaluationResult> future : futures) {
+            result.merge(get(future));
+        }
+        return result;
+    }
+
+    /**
+     * Streams the lines from the reader. In parallel mode at most {@link #maxPendingChunks()} chunks are read ahead of
+     * the oldest unfinished one, so memory use doesn't grow with the size of the input.
+     */
+    public EvaluationResult evaluate(SimpleParseSetReader reader) throws IOException {
+        final EvaluationResult result = newResult();
+
+        if (executor == null) {
+            Pair<String, String> line;
+            while ((line = reader.nextLine()) != null) {
+                evaluate(line, result);
+            }
+            result.replaceHackHits.addAll(reader.replaceHackHits());
+            return result;
+        }
+
+        final Deque<Future<EvaluationResult>> pending = new ArrayDeque<>();
+        List<Pair<String, String>> chunk;
+        while (!(chunk = reader.nextLines(chunkSize)).isEmpty()) {
+            if (pending.size() >= maxPendingChunks())
+                result.merge(get(pending.poll()));
+
+            final List<Pair<String, String>> lines = chunk;
+            pending.add(executor.submit(() -> evaluate(lines, 0, lines.size())));
+        }
+
+        while (!pending.isEmpty()) {
+            result.merge(get(pending.poll()));
+        }
+        result.replaceHackHits.addAll(reader.replaceHackHits());
+        return result;
+    }
+
+    /**
+     * Evaluates the lines by their ids, with the cache. The skip filters, the candidates and the expected parse are
+     * looked up once per distinct id of the run and kept in {@link IdLookups}, and the errors are counted by id in the
+     * dictionary of the lines; a string is decoded for the first occurrence of its id and for the log only. Without
+     * a cache every surface is analyzed anyway and the lines are evaluated as strings.
+     */
+    private EvaluationResult evaluateByIds(InternedLines lines) {
+        final IdLookups lookups = new IdLookups(lines.dictionary());
+        if (executor == null)
+            return evaluate(lines, lookups, 0, lines.size());
+
+        final List<Future<EvaluationResult>> futures = new ArrayList<>();
+        for (int from = 0; from < lines.size(); from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(lines.size(), from + chunkSize);
+            futures.add(executor.submit(() -> evaluate(lines, lookups, chunkFrom, chunkTo)));
+        }
+
+        final EvaluationResult result = newResult(lines.dictionary());
+        for (Future<EvaluationResult> future : futures) {
+            result.merge(get(future));
+        }
+        return result;
+    }
+
+    EvaluationResult newResult() {
+        return newResult(dictionary);
+    }
+
+    private EvaluationResult newResult(StringDictionary dictionary) {
+        final EvaluationResult result = new EvaluationResult(printSurfaces, dictionary);
+        result.candidates = this::formattedAnalyses;
+        return result;
+    }
+
+    private int maxPendingChunks() {
+        return 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Reads the whole input into a table of distinct lines and their counts, in order of first occurrence
+     */
+    public static LinkedHashMultiset<Pair<String, String>> countLines(SimpleParseSetReader reader) throws IOException {
+        final LinkedHashMultiset<Pair<String, String>> lines = LinkedHashMultiset.create();
+        Pair<String, String> line;
+        while ((line = reader.nextLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Evaluates every distinct line once and weights it by its count. The summary is the same as the one of evaluating
+     * line by line; the log has one message per distinct line.
+     */
+    public EvaluationResult evaluate(Multiset<Pair<String, String>> lines) {
+        final List<Multiset.Entry<Pair<String, String>>> entries = new ArrayList<>(lines.entrySet());
+        if (executor == null)
+            return evaluateEntries(entries, 0, entries.size());
+
+        final List<Future<EvaluationResult>> futures = new ArrayList<>();
+        for (int from = 0; from < entries.size(); from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(entries.size(), from + chunkSize);
+            futures.add(executor.submit(() -> evaluateEntries(entries, chunkFrom, chunkTo)));
+        }
+
+        final EvaluationResult result = newResult();
+        for (Future<EvaluationResult> future : futures) {
+            result.merge(get(future));
+        }
+        return result;
+    }
+
+    private EvaluationResult evaluateEntries(List<Multiset.Entry<Pair<String, String>>> entries, int from, int to) {
+        final EvaluationResult result = newResult();
+        for (int i = from; i < to; i++) {
+            evaluate(entries.get(i).getElement(), entries.get(i).getCount(), result);
+        }
+        return result;
+    }
+
+    EvaluationResult evaluate(List<Pair<String, String>> lines, int from, int to) {
+        final EvaluationResult result = newResult();
+        for (int i = from; i < to; i++) {
+            evaluate(lines.get(i), result);
+        }
+        return result;
+    }
+
+    private EvaluationResult evaluate(InternedLines lines, IdLookups lookups, int from, int to) {
+        final EvaluationResult result = newResult(lines.dictionary());
+        for (int i = from; i < to; i++) {
+            evaluate(lines.surfaceId(i), lines.expectedId(i), lookups, result);
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #evaluate(Pair, int, EvaluationResult)} with a count of 1, for a line of ids
+     */
+    private void evaluate(int surfaceId, int expectedId, IdLookups lookups, EvaluationResult result) {
+        result.numberOfSurfaces++;
+
+        final long skipFilterStart = Metrics.start();
+        final String skippedSurface = skipSurfaces ? lookups.skippedSurface(surfaceId) : null;
+        final String skipRule = skippedSurface != null || !skipExpectedParseResults ? null : lookups.skipRule(expectedId);
+        Metrics.record(Metrics.Stage.SKIP_FILTER, skipFilterStart);
+
+        if (skippedSurface != null) {
+            if (printSurfaces)
+                result.log.append("Surface '").append(skippedSurface).append("' is a skippedSurface\n");
+            result.skippedSurfaceHits.add(skippedSurface);
+            result.skippedSurfaces++;
+            return;
+        }
+
+        if (skipRule != null) {
+            if (printSurfaces)
+                result.log.append("Surface with expected parse result '").append(lookups.dictionary.string(expectedId)).append("' is a skippedExpectedParseResult\n");
+            result.skippedExpectedParseResultHits.add(skipRule);
+            result.skippedExpectedParseResults++;
+            return;
+        }
+
+        final List<GoldParse> formatted = lookups.candidates(surfaceId);
+        if (formatted.isEmpty()) {
+            if (printSurfaces)
+                result.log.append("Surface '").append(lookups.dictionary.string(surfaceId)).append("' is not parseable\n");
+            result.unparsableSurfaces.add(surfaceId, expectedId, 1);
+            result.unparsable++;
+            return;
+        }
+
+        final long matchStart = Metrics.start();
+        final boolean found = formatted.contains(lookups.expectedParse(expectedId));
+        Metrics.record(Metrics.Stage.MATCH, matchStart);
+        if (!found) {
+            if (printSurfaces) {
+                result.log.append("Surface '").append(lookups.dictionary.string(surfaceId)).append("' is parseable, but expected result '")
+                        .append(lookups.dictionary.string(expectedId)).append("' is not found!\n");
+                result.log.append("\t").append(Joiner.on("\n\t").join(formatted)).append('\n');
+            }
+            result.incorrectParsedSurfaces.add(surfaceId, expectedId, 1);
+            result.incorrectParses++;
+        }
+    }
+
+    void evaluate(Pair<String, String> line, EvaluationResult result) {
+        evaluate(line, 1, result);
+    }
+
+    /**
+     * Evaluates the line once and counts it {@code count} times. The log gets one message.
+     */
+    void evaluate(Pair<String, String> line, int count, EvaluationResult result) {
+        evaluate(line, count, result, analyzer);
+    }
+
+    /**
+     * Same as {@link #evaluate(Pair, int, EvaluationResult)}, taking the analysis of the surface from {@code analyzer}
+     * when there is no cache; it is not called for skipped lines
+     *
+     * @return {@link #SKIPPED}, {@link #UNPARSABLE}, {@link #NOT_FOUND} or {@link #FOUND}
+     */
+    int evaluate(Pair<String, String> line, int count, EvaluationResult result, Function<String, WordAnalysis> analyzer) {
+        result.numberOfSurfaces += count;
+
+        final String surfaceToParse = line.getLeft();
+        final String expectedResult = line.getRight();
+
+        final long skipFilterStart = Metrics.start();
+        final boolean skippedSurface = skipSurfaces && DisambiguateSentences.isSkippedSurface(surfaceToParse);
+        final String skipRule = skippedSurface || !skipExpectedParseResults ? null : DisambiguateSentences.skippedExpectedParseResultRule(expectedResult);
+        Metrics.record(Metrics.Stage.SKIP_FILTER, skipFilterStart);
+
+        if (skippedSurface) {
+            if (printSurfaces)
+                result.log.append("Surface '").append(surfaceToParse).append("' is a skippedSurface\n");
+            result.skippedSurfaceHits.add(surfaceToParse, count);
+            result.skippedSurfaces += count;
+            return SKIPPED;
+        }
+
+        if (skipRule != null) {
+            if (printSurfaces)
+                result.log.append("Surface with expected parse result '").append(expectedResult).append("' is a skippedExpectedParseResult\n");
+            result.skippedExpectedParseResultHits.add(skipRule, count);
+            result.skippedExpectedParseResults += count;
+            return SKIPPED;
+        }
+
+        final List<Object> candidates = printSurfaces ? new ArrayList<>() : null;
+        final int match = match(surfaceToParse, expectedResult, candidates, analyzer);
+
+        if (match == UNPARSABLE) {
+            if (printSurfaces)
+                result.log.append("Surface '").append(surfaceToParse).append("' is not parseable\n");
+            result.unparsableSurfaces.add(surfaceToParse, expectedResult, count);
+            result.unparsable += count;
+        } else if (match == NOT_FOUND) {
+            if (printSurfaces) {
+                result.log.append("Surface '").append(surfaceToParse).append("' is parseable, but expected result '").append(expectedResult).append("' is not found!\n");
+                result.log.append("\t").append(Joiner.on("\n\t").join(candidates)).append('\n');
+            }
+            result.incorrectParsedSurfaces.add(surfaceToParse, expectedResult, count);
+            result.incorrectParses += count;
+        }
+        return match;
+    }
+
+    /**
+     * Without a cache the candidates are formatted into a reused {@link FormattedBatch} and the expected parse is
+     * compared with its slices, so no string is created per candidate.
+     *
+     * @param candidates receives the formatted candidates if the expected parse is not found; may be null
+     * @return {@link #UNPARSABLE}, {@link #NOT_FOUND} or {@link #FOUND}
+     */
+    private int match(String surface, String expected, List<Object> candidates, Function<String, WordAnalysis> analyzer) {
+        if (cache != null) {
+            final List<GoldParse> formatted = cache.formattedAnalyses(surface);
+            if (formatted.isEmpty())
+                return UNPARSABLE;
+
+            final long matchStart = Metrics.start();
+            final boolean found = formatted.contains(expectedParse(expected));
+            Metrics.record(Metrics.Stage.MATCH, matchStart);
+            if (!found && candidates != null)
+                candidates.addAll(formatted);
+            return found ? FOUND : NOT_FOUND;
+        }
+
+        final FormattedBatch batch = BATCHES.get();
+        batch.clear();
+        final long start = Metrics.start();
+        final WordAnalysis analysis = analyzer.apply(surface);
+        Metrics.record(Metrics.Stage.ANALYZE, start);
+        final long formatStart = Metrics.start();
+        batch.addAll(formatter, analysis);
+        Metrics.record(Metrics.Stage.FORMAT, formatStart);
+        if (batch.isEmpty())
+            return UNPARSABLE;
+
+        final long matchStart = Metrics.start();
+        final boolean found = batch.contains(expected);
+        Metrics.record(Metrics.Stage.MATCH, matchStart);
+        if (!found && candidates != null)
+            candidates.addAll(batch.strings());
+        return found ? FOUND : NOT_FOUND;
+    }
+
+    /**
+     * Called after the candidates of the line were formatted, so every tag that a matching candidate has is in the
+     * table. A parse with unknown tags is not kept: a later surface may have a candidate with these tags.
+     */
+    private GoldParse expectedParse(String expected) {
+        GoldParse parse = expectedParses.get(expected);
+        if (parse == null) {
+            parse = cache.expectedParse(expected);
+            if (parse.hasUnknownTags())
+                return parse;
+            final GoldParse existing = expectedParses.putIfAbsent(expected, parse);
+            if (existing != null)
+                parse = existing;
+        }
+        return parse;
+    }
+
+    /**
+     * Candidates for the error messages of an {@link EvaluationResult}, only called for the printed ones
+     */
+    private List<GoldParse> formattedAnalyses(String surface) {
+        if (cache != null)
+            return cache.formattedAnalyses(surface);
+
+        final long start = Metrics.start();
+        final WordAnalysis analysis = morphology.analyze(surface);
+        Metrics.record(Metrics.Stage.ANALYZE, start);
+        return FluentIterable.from(analysis).transform(input -> GoldParse.of(input, formatter, tags)).toList();
+    }
+
+    static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * What the evaluation of one run needs to know about the strings of a dictionary, filled in on first use of an id.
+     * Workers may race to fill in the same id; they compute the same immutable value, so whichever write wins is fine.
+     */
+    private final class IdLookups {
+        final StringDictionary dictionary;
+        /**
+         * The surface if it is skipped, {@link #NONE} if not
+         */
+        private final String[] skippedSurfaces;
+        /**
+         * The skip rule of the expected parse, {@link #NONE} if there is none
+         */
+        private final String[] skipRules;
+        private final Object[] candidates;
+        private final GoldParse[] expectedParses;
+
+        IdLookups(StringDictionary dictionary) {
+            this.dictionary = dictionary;
+            final int size = dictionary.size();
+            this.skippedSurfaces = new String[size];
+            this.skipRules = new String[size];
+            this.candidates = new Object[size];
+            this.expectedParses = new GoldParse[size];
+        }
+
+        /**
+         * @return the surface if it is skipped, null if not
+         */
+        String skippedSurface(int id) {
+            String skipped = skippedSurfaces[id];
+            if (skipped == null) {
+                final String surface = dictionary.string(id);
+                skipped = DisambiguateSentences.isSkippedSurface(surface) ? surface : NONE;
+                skippedSurfaces[id] = skipped;
+            }
+            return skipped == NONE ? null : skipped;
+        }
+
+        /**
+         * @return the skip rule that matches the expected parse, null if none does
+         */
+        String skipRule(int id) {
+            String rule = skipRules[id];
+            if (rule == null) {
+                rule = DisambiguateSentences.skippedExpectedParseResultRule(dictionary.string(id));
+                if (rule == null)
+                    rule = NONE;
+                skipRules[id] = rule;
+            }
+            return rule == NONE ? null : rule;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<GoldParse> candidates(int id) {
+            List<GoldParse> formatted = (List<GoldParse>) candidates[id];
+            if (formatted == null) {
+                formatted = cache.formattedAnalyses(dictionary.string(id));
+                candidates[id] = formatted;
+            }
+            return formatted;
+        }
+
+        GoldParse expectedParse(int id) {
+            GoldParse parse = expectedParses[id];
+            if (parse == null) {
+                parse = cache.expectedParse(dictionary.string(id));
+                // see ParseSetEvaluator.expectedParse(String)
+                if (!parse.hasUnknownTags())
+                    expectedParses[id] = parse;
+            }
+            return parse;
+        }
+    }
+
+    /**
+     * Formatted analyses of surfaces, computed once and reused, e.g. {@link FormattedAnalysisCache}
+     */
+    public interface CandidateSource {
+        /**
+         * @return formatted analyses of the surface; empty if it is not parseable
+         */
+        List<GoldParse> formattedAnalyses(String surface);
+
+        /**
+         * @return the expected parse in the form of the candidates, comparable with them
+         */
+        GoldParse expectedParse(String expected);
+    }
+}
@@ -0,0 +1,33 @@
+package experiments;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads for tasks that mostly wait: reading and decompressing corpus files, and waiting for room in the analyzer
+ * pool of a {@link CorpusPipeline}.
+ * <p>
+ * This is the Java 8 version, without virtual threads: a task gets a platform thread of a cached pool. The
+ * {@code java21} profile compiles the version in {@code src/main/java21} over it, which starts a virtual thread per
+ * task.
+ **/
+final class ReaderThreads {
+
+    private ReaderThreads() {
+    }
+
+    /**
+     * Whether {@link #newThreadPerTaskExecutor()} starts virtual threads in this build. A method and not a constant, so
+     * that callers compiled against the other version don't inline it.
+     */
+    static boolean virtualThreads() {
+        return false;
+    }
+
+    /**
+     * @return executor that runs every task on a thread of its own, reusing idle ones
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        return Executors.newCachedThreadPool();
+    }
+}
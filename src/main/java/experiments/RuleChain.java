@@ -0,0 +1,96 @@
+package experiments;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How a {@link SequentialReplacer} rewrote one text: the input, the rules that fired in order, and the text after
+ * each of them. Enough to tell, for another version of the rule table, whether the result can be different without
+ * applying the new table.
+ **/
+final class RuleChain {
+
+    private static final int[] NO_RULES = new int[0];
+    private static final String[] NO_TEXTS = new String[0];
+
+    final String base;
+    final int[] rules;
+    final String[] texts;
+
+    RuleChain(String base, int[] rules, String[] texts) {
+        this.base = base;
+        this.rules = rules;
+        this.texts = texts;
+    }
+
+    static RuleChain apply(SequentialReplacer replacer, String base) {
+        final List<Integer> rules = new ArrayList<>(2);
+        final List<String> texts = new ArrayList<>(2);
+        replacer.replace(base, (ruleIndex, text) -> {
+            rules.add(ruleIndex);
+            texts.add(text.toString());
+        });
+
+        if (rules.isEmpty())
+            return new RuleChain(base, NO_RULES, NO_TEXTS);
+
+        final int[] ruleArray = new int[rules.size()];
+        for (int i = 0; i < ruleArray.length; i++) {
+            ruleArray[i] = rules.get(i);
+        }
+        return new RuleChain(base, ruleArray, texts.toArray(new String[0]));
+    }
+
+    String result() {
+        return texts.length == 0 ? base : texts[texts.length - 1];
+    }
+
+    /**
+     * Whether applying {@code newRules} to the base can give another result than this chain, where the old and the
+     * new table are the same except for the rules from {@code prefix} (inclusive) to {@code oldSuffixStart} and
+     * {@code newSuffixStart} (exclusive).
+     * <p>
+     * The common prefix rewrites the base the same way. If no old middle rule fired and no new middle rule matches the
+     * text after the prefix, the text entering the common suffix is the same, so is the result.
+     */
+    boolean affectedBy(SequentialReplacer newRules, int prefix, int oldSuffixStart, int newSuffixStart) {
+        String afterPrefix = base;
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i] >= prefix && rules[i] < oldSuffixStart)
+                return true;
+            if (rules[i] < prefix)
+                afterPrefix = texts[i];
+        }
+
+        for (int rule = prefix; rule < newSuffixStart; rule++) {
+            if (afterPrefix.contains(newRules.target(rule)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return number of leading rules that are the same in both tables
+     */
+    static int commonPrefix(SequentialReplacer a, SequentialReplacer b) {
+        int prefix = 0;
+        while (prefix < a.ruleCount() && prefix < b.ruleCount() && sameRule(a, prefix, b, prefix))
+            prefix++;
+        return prefix;
+    }
+
+    /**
+     * @return number of trailing rules, not overlapping the common prefix, that are the same in both tables
+     */
+    static int commonSuffix(SequentialReplacer a, SequentialReplacer b, int prefix) {
+        int suffix = 0;
+        while (suffix < a.ruleCount() - prefix && suffix < b.ruleCount() - prefix
+                && sameRule(a, a.ruleCount() - 1 - suffix, b, b.ruleCount() - 1 - suffix))
+            suffix++;
+        return suffix;
+    }
+
+    private static boolean sameRule(SequentialReplacer a, int aIndex, SequentialReplacer b, int bIndex) {
+        return a.target(aIndex).equals(b.target(bIndex)) && a.replacement(aIndex).equals(b.replacement(bIndex));
+    }
+}
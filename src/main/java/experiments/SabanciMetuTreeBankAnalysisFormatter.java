@@ -1,19 +1,12 @@
 package experiments;
 
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
 import org.apache.commons.lang3.tuple.Pair;
 import zemberek.core.turkish.PrimaryPos;
 import zemberek.core.turkish.SecondaryPos;
-import zemberek.morphology.analysis.AnalysisFormatter;
 import zemberek.morphology.analysis.SingleAnalysis;
 import zemberek.morphology.lexicon.DictionaryItem;
-import zemberek.morphology.morphotactics.Morpheme;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -22,7 +15,7 @@ import java.util.List;
  * <p>
  * (1, " kitap + Noun + A3sg + Pnon + Dat ") or ("kitap+Noun+A3sg+Pnon+Dat")
  **/
-public class SabanciMetuTreeBankAnalysisFormatter implements AnalysisFormatter {
+public class SabanciMetuTreeBankAnalysisFormatter implements BatchAnalysisFormatter {
 
     private boolean addIndices;
 
@@ -32,82 +25,57 @@ public class SabanciMetuTreeBankAnalysisFormatter implements AnalysisFormatter {
 
     @Override
     public String format(SingleAnalysis analysis) {
-        final List<List<String>> groups = new ArrayList<List<String>>();
-
         final DictionaryItem dictionaryItem = analysis.getDictionaryItem();
-        final String lemmaRoot = dictionaryItem.root;
-        final PrimaryPos primaryPos = dictionaryItem.primaryPos;
-        final SecondaryPos secondaryPos = dictionaryItem.secondaryPos;
-
-        final String secondaryPosStr;
-        if (secondaryPos != null && secondaryPos != SecondaryPos.None) {
-            if (DERIVATION_GROUPING_FORMAT_SECONDARY_POS_TO_SKIP.contains(Pair.of(primaryPos, secondaryPos)))
-                secondaryPosStr = null;
-            else
-                secondaryPosStr = secondaryPos.getStringForm();
-        } else {
-            secondaryPosStr = null;
-        }
 
-        final String formattedLexeme = Joiner.on("+").skipNulls().join(Arrays.asList(lemmaRoot, primaryPos.getStringForm(), secondaryPosStr));
+        final StringBuilder builder = new StringBuilder(64);
+        int groupIndex = 1;
+        openGroup(builder, groupIndex);
+        builder.append(LEXEME_PREFIXES.of(dictionaryItem));
 
-        List<String> currentGroup = new ArrayList<String>(Arrays.asList(formattedLexeme));
-        PrimaryPos currentPos = primaryPos;
+        PrimaryPos currentPos = dictionaryItem.primaryPos;
         int currentMorphemeCountInDerivationalGroup = 0;
 
         List<SingleAnalysis.MorphemeData> surfaces = analysis.getMorphemeDataList();
         for (int i = 1; i < surfaces.size(); i++) {
-            SingleAnalysis.MorphemeData s = surfaces.get(i);
-            Morpheme morpheme = s.morpheme;
+            final MorphemeDescriptor morpheme = MorphemeDescriptor.of(surfaces.get(i).morpheme);
 
             if (morpheme.derivational) {
-                groups.add(currentGroup);
-                String nextGroupPos = "";
-                if (surfaces.size() >= i + 1) {
-                    final PrimaryPos nextPos = surfaces.get(i + 1).morpheme.pos;
-                    nextGroupPos = nextPos.getStringForm();
-                    currentPos = nextPos;
-                }
-                currentGroup = new ArrayList<>(Arrays.asList(nextGroupPos));
+                final MorphemeDescriptor next = MorphemeDescriptor.of(surfaces.get(i + 1).morpheme);
+                builder.append("\")");
+                openGroup(builder, ++groupIndex);
+                builder.append(next.posForm);
+                currentPos = next.pos;
                 currentMorphemeCountInDerivationalGroup = 0;
-            }
-
-            if (!morpheme.derivational) {
-                if (currentPos == PrimaryPos.Verb && !morpheme.id.startsWith("Neg") && currentMorphemeCountInDerivationalGroup == 0) {
-                    currentGroup.add("Pos");
-                }
+            } else if (currentPos == PrimaryPos.Verb && !morpheme.negation && currentMorphemeCountInDerivationalGroup == 0) {
+                builder.append("+Pos");
             }
 
             currentMorphemeCountInDerivationalGroup++;
 
-            currentGroup.add(s.morpheme.id);
-        }
-
-        groups.add(currentGroup);
-
-        final List<String> formattedGroups = Lists.transform(groups, new Function<List<String>, String>() {
-            @Override
-            public String apply(List<String> input) {
-                return Joiner.on("+").join(input);
-            }
-        });
-
-        final StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < formattedGroups.size(); i++) {
-            final String formattedGroup = formattedGroups.get(i);
-            builder.append("(");
-            if (addIndices)
-                builder.append(i + 1).append(",");
-            builder.append("\"").append(formattedGroup).append("\")");
+            builder.append('+').append(morpheme.idChars);
         }
 
+        builder.append("\")");
         return builder.toString();
     }
 
+    private void openGroup(StringBuilder out, int groupIndex) {
+        out.append('(');
+        if (addIndices)
+            out.append(groupIndex).append(',');
+        out.append('"');
+    }
+
     private static final ImmutableSet<Pair<PrimaryPos, SecondaryPos>> DERIVATION_GROUPING_FORMAT_SECONDARY_POS_TO_SKIP
             = new ImmutableSet.Builder<Pair<PrimaryPos, SecondaryPos>>()
             //.add(Pair.of(PrimaryPos.Adverb, SecondaryPos.Question))
             .add(Pair.of(PrimaryPos.Adverb, SecondaryPos.Time))
             //.add(Pair.of(PrimaryPos.Adjective, SecondaryPos.Question))
             .build();
+
+    private static final LexemePrefixes LEXEME_PREFIXES = new LexemePrefixes(DERIVATION_GROUPING_FORMAT_SECONDARY_POS_TO_SKIP);
+
+    static LexemePrefixes lexemePrefixes() {
+        return LEXEME_PREFIXES;
+    }
 }
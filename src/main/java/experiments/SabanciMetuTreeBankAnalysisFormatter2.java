@@ -1,19 +1,12 @@
 package experiments;
 
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
 import org.apache.commons.lang3.tuple.Pair;
 import zemberek.core.turkish.PrimaryPos;
 import zemberek.core.turkish.SecondaryPos;
-import zemberek.morphology.analysis.AnalysisFormatter;
 import zemberek.morphology.analysis.SingleAnalysis;
 import zemberek.morphology.lexicon.DictionaryItem;
-import zemberek.morphology.morphotactics.Morpheme;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -23,7 +16,7 @@ import java.util.List;
  * (1, " kitap + Noun + A3sg + Pnon + Dat ") or ("kitap+Noun+A3sg+Pnon+Dat")
  **/
 @SuppressWarnings("Duplicates")
-public class SabanciMetuTreeBankAnalysisFormatter2 implements AnalysisFormatter {
+public class SabanciMetuTreeBankAnalysisFormatter2 implements BatchAnalysisFormatter {
 
     private boolean addIndices;
 
@@ -33,66 +26,70 @@ public class SabanciMetuTreeBankAnalysisFormatter2 implements AnalysisFormatter
 
     @Override
     public String format(SingleAnalysis analysis) {
-        final List<List<String>> groups = new ArrayList<List<String>>();
-
-        final DictionaryItem dictionaryItem = analysis.getDictionaryItem();
-        final String lemmaRoot = dictionaryItem.root;
-        final PrimaryPos primaryPos = dictionaryItem.primaryPos;
-        final SecondaryPos secondaryPos = dictionaryItem.secondaryPos;
-
-        final String secondaryPosStr;
-        if (secondaryPos != null && secondaryPos != SecondaryPos.None) {
-            if (DERIVATION_GROUPING_FORMAT_SECONDARY_POS_TO_SKIP.contains(Pair.of(primaryPos, secondaryPos)))
-                secondaryPosStr = null;
-            else
-                secondaryPosStr = secondaryPos.getStringForm();
-        } else {
-            secondaryPosStr = null;
+        return applyRules(formatWithoutRules(analysis));
+    }
+
+    /**
+     * Formats the analyses one after another into the batch. Consecutive candidates of the same dictionary item, the
+     * usual case within a {@code WordAnalysis}, share the formatted lexeme.
+     */
+    @Override
+    public void formatAll(Iterable<SingleAnalysis> analyses, FormattedBatch batch) {
+        DictionaryItem lastItem = null;
+        String lexeme = null;
+        for (SingleAnalysis analysis : analyses) {
+            final DictionaryItem dictionaryItem = analysis.getDictionaryItem();
+            if (dictionaryItem != lastItem) {
+                lastItem = dictionaryItem;
+                lexeme = LEXEME_PREFIXES.of(dictionaryItem);
+            }
+
+            final int start = batch.begin();
+            formatWithoutRules(analysis, lexeme, batch.text);
+            final long rulesStart = Metrics.start();
+            RULES.replace(batch.text, start);
+            Metrics.record(Metrics.Stage.APPLY_RULES, rulesStart);
+            batch.end();
         }
+    }
 
-        final String formattedLexeme = Joiner.on("+").skipNulls().join(Arrays.asList(lemmaRoot, primaryPos.getStringForm(), secondaryPosStr));
+    /**
+     * Derivation grouped analysis, before {@link #RULES} patch it into the treebank format
+     */
+    String formatWithoutRules(SingleAnalysis analysis) {
+        final StringBuilder builder = new StringBuilder(64);
+        formatWithoutRules(analysis, LEXEME_PREFIXES.of(analysis.getDictionaryItem()), builder);
+        return builder.toString();
+    }
 
-        List<String> currentGroup = new ArrayList<String>(Arrays.asList(formattedLexeme));
+    private void formatWithoutRules(SingleAnalysis analysis, String formattedLexeme, StringBuilder out) {
+        int groupIndex = 1;
+        openGroup(out, groupIndex);
+        out.append(formattedLexeme);
 
         List<SingleAnalysis.MorphemeData> surfaces = analysis.getMorphemeDataList();
         for (int i = 1; i < surfaces.size(); i++) {
-            SingleAnalysis.MorphemeData s = surfaces.get(i);
-            Morpheme morpheme = s.morpheme;
+            final MorphemeDescriptor morpheme = MorphemeDescriptor.of(surfaces.get(i).morpheme);
 
             if (morpheme.derivational) {
-                groups.add(currentGroup);
-                String nextGroupPos = "";
-                if (surfaces.size() >= i + 1) {
-                    final PrimaryPos nextPos = surfaces.get(i + 1).morpheme.pos;
-                    nextGroupPos = nextPos.getStringForm();
-                }
-                currentGroup = new ArrayList<>(Arrays.asList(nextGroupPos));
+                // the group starts with the pos of the next morpheme, which is skipped, then the derivation
+                out.append("\")");
+                openGroup(out, ++groupIndex);
+                out.append(MorphemeDescriptor.of(surfaces.get(i + 1).morpheme).posForm);
                 i++;
             }
 
-            currentGroup.add(s.morpheme.id);
+            out.append('+').append(morpheme.idChars);
         }
 
-        groups.add(currentGroup);
-
-        final List<String> formattedGroups = Lists.transform(groups, new Function<List<String>, String>() {
-            @Override
-            public String apply(List<String> input) {
-                return Joiner.on("+").join(input);
-            }
-        });
-
-        final StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < formattedGroups.size(); i++) {
-            final String formattedGroup = formattedGroups.get(i);
-            builder.append("(");
-            if (addIndices)
-                builder.append(i + 1).append(",");
-            builder.append("\"").append(formattedGroup).append("\")");
-        }
+        out.append("\")");
+    }
 
-        final String base = builder.toString();
-        return applyRules(base);
+    private void openGroup(StringBuilder out, int groupIndex) {
+        out.append('(');
+        if (addIndices)
+            out.append(groupIndex).append(',');
+        out.append('"');
     }
 
     private static final ImmutableSet<Pair<PrimaryPos, SecondaryPos>> DERIVATION_GROUPING_FORMAT_SECONDARY_POS_TO_SKIP
@@ -102,100 +99,118 @@ public class SabanciMetuTreeBankAnalysisFormatter2 implements AnalysisFormatter
             //.add(Pair.of(PrimaryPos.Adjective, SecondaryPos.Question))
             .build();
 
-    private String applyRules(String base) {
-        base = base.replace("+Noun+Time+A3sg\"", "+Noun+Time+A3sg+Pnon+Nom\"");  // gun
+    private static final LexemePrefixes LEXEME_PREFIXES = new LexemePrefixes(DERIVATION_GROUPING_FORMAT_SECONDARY_POS_TO_SKIP);
+
+    static LexemePrefixes lexemePrefixes() {
+        return LEXEME_PREFIXES;
+    }
+
+    /**
+     * Applied in this order, each rule on the output of the previous ones.
+     */
+    private static final SequentialReplacer RULES = SequentialReplacer.builder()
+            .add("+Noun+Time+A3sg\"", "+Noun+Time+A3sg+Pnon+Nom\"")  // gun
+
+            .add("Pass+Narr", "Pass+Pos+Narr")  // taranmis
 
-        base = base.replace("Pass+Narr", "Pass+Pos+Narr");  // taranmis
+            .add("değil+Verb+Neg+", "değil+Verb+")  // değil
 
-        base = base.replace("değil+Verb+Neg+", "değil+Verb+");  // değil
+            .add("Verb+Past", "Verb+Pos+Past")  // oldu
+            .add("Verb+Prog1", "Verb+Pos+Prog1")  // oluyor
+            .add("Verb+Fut", "Verb+Pos+Fut")  // olacak
+            .add("Verb+Aor", "Verb+Pos+Aor")  // olur
+            .add("Verb+Imp", "Verb+Pos+Imp")  // olsun
+            .add("Verb+Desr", "Verb+Pos+Desr")  // olsa
+            .add("Verb+Narr", "Verb+Pos+Narr")  // olmuş
 
-        base = base.replace("Verb+Past", "Verb+Pos+Past");  // oldu
-        base = base.replace("Verb+Prog1", "Verb+Pos+Prog1");  // oluyor
-        base = base.replace("Verb+Fut", "Verb+Pos+Fut");  // olacak
-        base = base.replace("Verb+Aor", "Verb+Pos+Aor");  // olur
-        base = base.replace("Verb+Imp", "Verb+Pos+Imp");  // olsun
-        base = base.replace("Verb+Desr", "Verb+Pos+Desr");  // olsa
-        base = base.replace("Verb+Narr", "Verb+Pos+Narr");  // olmuş
+            .add("Noun+Inf1+A3sg\"", "Noun+Inf1+A3sg+Pnon+Nom\"")  // olmak
+            .add("Noun+Inf2+A3sg\"", "Noun+Inf2+A3sg+Pnon+Nom\"")  // olma
+            .add("Noun+Inf2+A3pl\"", "Noun+Inf2+A3pl+Pnon+Nom\"")  // olmalar
 
-        base = base.replace("Noun+Inf1+A3sg\"", "Noun+Inf1+A3sg+Pnon+Nom\"");  // olmak
-        base = base.replace("Noun+Inf2+A3sg\"", "Noun+Inf2+A3sg+Pnon+Nom\"");  // olma
-        base = base.replace("Noun+Inf2+A3pl\"", "Noun+Inf2+A3pl+Pnon+Nom\"");  // olmalar
+            .add("Ness+A3sg\"", "Ness+A3sg+Pnon+Nom\"")  // cocukluk
 
-        base = base.replace("Ness+A3sg\"", "Ness+A3sg+Pnon+Nom\"");  // cocukluk
+            .add("+Verb\")(2,\"Adj", "+Verb+Pos\")(2,\"Adj")  // olan
+            .add("+Verb\")(2,\"Adv", "+Verb+Pos\")(2,\"Adv")  // olarak
+            .add("\"Adv+ByDoingSo+Adv\"", "\"Adv+ByDoingSo\"")  // olarak
+            .add("+Verb\")(2,\"Noun", "+Verb+Pos\")(2,\"Noun")  // olduğunu
 
-        base = base.replace("+Verb\")(2,\"Adj", "+Verb+Pos\")(2,\"Adj");  // olan
-        base = base.replace("+Verb\")(2,\"Adv", "+Verb+Pos\")(2,\"Adv");  // olarak
-        base = base.replace("\"Adv+ByDoingSo+Adv\"", "\"Adv+ByDoingSo\"");  // olarak
-        base = base.replace("+Verb\")(2,\"Noun", "+Verb+Pos\")(2,\"Noun");  // olduğunu
 
+            .add("Verb+Pass\")(3,\"Adj", "Verb+Pass+Pos\")(3,\"Adj")  // yapılan
 
-        base = base.replace("Verb+Pass\")(3,\"Adj", "Verb+Pass+Pos\")(3,\"Adj");  // yapılan
+            .add("+Noun+A3sg\"", "+Noun+A3sg+Pnon+Nom\"")  // sey
+            .add("+Noun+A3pl\"", "+Noun+A3pl+Pnon+Nom\"")  // seyler
 
-        base = base.replace("+Noun+A3sg\"", "+Noun+A3sg+Pnon+Nom\"");  // sey
-        base = base.replace("+Noun+A3pl\"", "+Noun+A3pl+Pnon+Nom\"");  // seyler
+            .add("A3sg+P1sg\"", "A3sg+P1sg+Nom\"")  // seyim
+            .add("A3sg+P2sg\"", "A3sg+P2sg+Nom\"")  // seyin
+            .add("A3sg+P3sg\"", "A3sg+P3sg+Nom\"")  // seyi
+            .add("A3sg+P1pl\"", "A3sg+P1pl+Nom\"")  // seyimiz
+            .add("A3sg+P2pl\"", "A3sg+P2pl+Nom\"")  // seyiniz
+            .add("A3sg+P3pl\"", "A3sg+P3pl+Nom\"")  // seyleri
 
-        base = base.replace("A3sg+P1sg\"", "A3sg+P1sg+Nom\"");  // seyim
-        base = base.replace("A3sg+P2sg\"", "A3sg+P2sg+Nom\"");  // seyin
-        base = base.replace("A3sg+P3sg\"", "A3sg+P3sg+Nom\"");  // seyi
-        base = base.replace("A3sg+P1pl\"", "A3sg+P1pl+Nom\"");  // seyimiz
-        base = base.replace("A3sg+P2pl\"", "A3sg+P2pl+Nom\"");  // seyiniz
-        base = base.replace("A3sg+P3pl\"", "A3sg+P3pl+Nom\"");  // seyleri
+            .add("A3sg+Loc", "A3sg+Pnon+Loc")  // seyde
+            .add("A3sg+Abl", "A3sg+Pnon+Abl")  // seyden
+            .add("A3sg+Ins", "A3sg+Pnon+Ins")  // seyle
 
-        base = base.replace("A3sg+Loc", "A3sg+Pnon+Loc");  // seyde
-        base = base.replace("A3sg+Abl", "A3sg+Pnon+Abl");  // seyden
-        base = base.replace("A3sg+Ins", "A3sg+Pnon+Ins");  // seyle
+            .add("A3pl+P1sg\"", "A3pl+P1sg+Nom\"")  // seylerim
+            .add("A3pl+P2sg\"", "A3pl+P2sg+Nom\"")  // seylerin
+            .add("A3pl+P3sg\"", "A3pl+P3sg+Nom\"")  // seyleri
 
-        base = base.replace("A3pl+P1sg\"", "A3pl+P1sg+Nom\"");  // seylerim
-        base = base.replace("A3pl+P2sg\"", "A3pl+P2sg+Nom\"");  // seylerin
-        base = base.replace("A3pl+P3sg\"", "A3pl+P3sg+Nom\"");  // seyleri
+            .add("A3pl+Dat\"", "A3pl+Pnon+Nom\"")  // seylere
+            .add("A3pl+Dat\"", "A3pl+Pnon+Nom\"")  // seylerden
 
-        base = base.replace("A3pl+Dat\"", "A3pl+Pnon+Nom\"");  // seylere
-        base = base.replace("A3pl+Dat\"", "A3pl+Pnon+Nom\"");  // seylerden
+            .add("Pers+A1sg\"", "Pers+A1sg+Pnon+Nom\"")  // ben
+            .add("Pers+A2sg\"", "Pers+A2sg+Pnon+Nom\"")  // sen
+            .add("Pers+A3sg\"", "Pers+A3sg+Pnon+Nom\"")  // o
+            .add("Pers+A1pl\"", "Pers+A1pl+Pnon+Nom\"")  // biz
+            .add("Pers+A2pl\"", "Pers+A2pl+Pnon+Nom\"")  // siz
+            .add("Pers+A3pl\"", "Pers+A3pl+Pnon+Nom\"")  // siz
 
-        base = base.replace("Pers+A1sg\"", "Pers+A1sg+Pnon+Nom\"");  // ben
-        base = base.replace("Pers+A2sg\"", "Pers+A2sg+Pnon+Nom\"");  // sen
-        base = base.replace("Pers+A3sg\"", "Pers+A3sg+Pnon+Nom\"");  // o
-        base = base.replace("Pers+A1pl\"", "Pers+A1pl+Pnon+Nom\"");  // biz
-        base = base.replace("Pers+A2pl\"", "Pers+A2pl+Pnon+Nom\"");  // siz
-        base = base.replace("Pers+A3pl\"", "Pers+A3pl+Pnon+Nom\"");  // siz
+            .add("+A1sg+Dat", "+A1sg+Pnon+Dat")  // bana
+            .add("+A2sg+Dat", "+A2sg+Pnon+Dat")  // sana
+            .add("+A3sg+Dat", "+A3sg+Pnon+Dat")  // ona
+            .add("+A1pl+Dat", "+A1pl+Pnon+Dat")  // bize
+            .add("+A2pl+Dat", "+A2pl+Pnon+Dat")  // size
+            .add("+A3pl+Dat", "+A3pl+Pnon+Dat")  // onlara
 
-        base = base.replace("+A1sg+Dat", "+A1sg+Pnon+Dat");  // bana
-        base = base.replace("+A2sg+Dat", "+A2sg+Pnon+Dat");  // sana
-        base = base.replace("+A3sg+Dat", "+A3sg+Pnon+Dat");  // ona
-        base = base.replace("+A1pl+Dat", "+A1pl+Pnon+Dat");  // bize
-        base = base.replace("+A2pl+Dat", "+A2pl+Pnon+Dat");  // size
-        base = base.replace("+A3pl+Dat", "+A3pl+Pnon+Dat");  // onlara
+            .add("+A1sg+Acc\"", "+A1sg+Pnon+Acc\"")  // beni
+            .add("+A2sg+Acc\"", "+A2sg+Pnon+Acc\"")  // seni
+            .add("+A3sg+Acc\"", "+A3sg+Pnon+Acc\"")  // onu
+            .add("+A1pl+Acc\"", "+A1pl+Pnon+Acc\"")  // bizi
+            .add("+A2pl+Acc\"", "+A2pl+Pnon+Acc\"")  // sizi
+            .add("+A3pl+Acc\"", "+A3pl+Pnon+Acc\"")  // onlari
 
-        base = base.replace("+A1sg+Acc\"", "+A1sg+Pnon+Acc\"");  // beni
-        base = base.replace("+A2sg+Acc\"", "+A2sg+Pnon+Acc\"");  // seni
-        base = base.replace("+A3sg+Acc\"", "+A3sg+Pnon+Acc\"");  // onu
-        base = base.replace("+A1pl+Acc\"", "+A1pl+Pnon+Acc\"");  // bizi
-        base = base.replace("+A2pl+Acc\"", "+A2pl+Pnon+Acc\"");  // sizi
-        base = base.replace("+A3pl+Acc\"", "+A3pl+Pnon+Acc\"");  // onlari
+            .add("+A1sg+Gen", "+A1sg+Pnon+Gen")  // benim
+            .add("+A2sg+Gen", "+A2sg+Pnon+Gen")  // senin
+            .add("+A3sg+Gen", "+A3sg+Pnon+Gen")  // onun
+            .add("+A1pl+Gen", "+A1pl+Pnon+Gen")  // bizim
+            .add("+A2pl+Gen", "+A2pl+Pnon+Gen")  // sizin
+            .add("+A3pl+Gen", "+A3pl+Pnon+Gen")  // onlarin
 
-        base = base.replace("+A1sg+Gen", "+A1sg+Pnon+Gen");  // benim
-        base = base.replace("+A2sg+Gen", "+A2sg+Pnon+Gen");  // senin
-        base = base.replace("+A3sg+Gen", "+A3sg+Pnon+Gen");  // onun
-        base = base.replace("+A1pl+Gen", "+A1pl+Pnon+Gen");  // bizim
-        base = base.replace("+A2pl+Gen", "+A2pl+Pnon+Gen");  // sizin
-        base = base.replace("+A3pl+Gen", "+A3pl+Pnon+Gen");  // onlarin
+            .add("Pron+Pers+A3pl+Gen", "Pron+Pers+A3pl+Pnon+Gen")  // onlarin
 
-        base = base.replace("Pron+Pers+A3pl+Gen", "Pron+Pers+A3pl+Pnon+Gen");  // onlarin
+            .add("+A3sg+Abl", "+A3sg+Pnon+Abl")  // ondan
 
-        base = base.replace("+A3sg+Abl", "+A3sg+Pnon+Abl");  // ondan
+            .add("+Ques+A3sg\"", "+Ques+A3sg+Pnon+Nom\"")  // ne
 
-        base = base.replace("+Ques+A3sg\"", "+Ques+A3sg+Pnon+Nom\"");  // ne
+            .add("+Ques+A3pl\"", "+Ques+A3pl+Pnon+Nom\"")  // neler
 
-        base = base.replace("+Ques+A3pl\"", "+Ques+A3pl+Pnon+Nom\"");  // neler
+            .add("+Demons+A3sg\"", "+Demons+A3sg+Pnon+Nom\"")  // bu
+            .add("+Demons+A3pl\"", "+Demons+A3pl+Pnon+Nom\"")  // bunlar
+            .add("+Demons+A3pl+Acc\"", "+Demons+A3pl+Pnon+Acc\"")  // bunlari
 
-        base = base.replace("+Demons+A3sg\"", "+Demons+A3sg+Pnon+Nom\"");  // bu
-        base = base.replace("+Demons+A3pl\"", "+Demons+A3pl+Pnon+Nom\"");  // bunlar
-        base = base.replace("+Demons+A3pl+Acc\"", "+Demons+A3pl+Pnon+Acc\"");  // bunlari
 
+            // change ids
+            .add("+AfterDoing", "+AfterDoingSo")  // gidip
+            .build();
 
-        // change ids
-        base = base.replace("+AfterDoing", "+AfterDoingSo");  // gidip
+    static SequentialReplacer rules() {
+        return RULES;
+    }
 
-        return base;
+    String applyRules(String base) {
+        final long start = Metrics.start();
+        final String result = RULES.replace(base);
+        Metrics.record(Metrics.Stage.APPLY_RULES, start);
+        return result;
     }
 }
@@ -0,0 +1,297 @@
+package experiments;
+
+import zemberek.core.turkish.PrimaryPos;
+import zemberek.core.turkish.SecondaryPos;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.lexicon.DictionaryItem;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Same output as {@link SabanciMetuTreeBankAnalysisFormatter2}, but the missing {@code Pos}, {@code Pnon} and
+ * {@code Nom} markers are inserted while walking the morphemes, instead of patching the formatted string afterwards.
+ * <p>
+ * Each group is collected into a reused token array (references only, nothing is copied) and written straight into
+ * a {@link StringBuilder}, or as tokens into a {@link TokenWriter} such as the one of {@link GoldParse}. The conditions below are the rules of {@link SabanciMetuTreeBankAnalysisFormatter2} in
+ * token form, evaluated in the same order, so chained rules (e.g. "değil+Verb+Neg+" followed by "Verb+Past") still
+ * behave the same.
+ * <p>
+ * A token of a rule pattern that is not preceded by a delimiter only needs to be a suffix of the token it matches,
+ * e.g. "Ness" of "Ness+A3sg\"". Likewise a last pattern token that is not followed by a delimiter only needs to be a
+ * prefix. The helpers follow that, so the result is byte-identical to the string rules.
+ **/
+public class SabanciMetuTreeBankAnalysisFormatter3 implements BatchAnalysisFormatter {
+
+    private static final ThreadLocal<StringBuilder> BUILDERS = ThreadLocal.withInitial(() -> new StringBuilder(128));
+    private static final ThreadLocal<String[][]> TOKENS = ThreadLocal.withInitial(() -> new String[][]{new String[32]});
+    private static final ThreadLocal<TextWriter> TEXT_WRITERS = ThreadLocal.withInitial(TextWriter::new);
+
+    private static final String[] TENSES_WITHOUT_POLARITY = {"Past", "Prog1", "Fut", "Aor", "Imp", "Desr", "Narr"};
+    private static final String[] CASES_AFTER_A3SG_WITHOUT_POSSESSIVE = {"Loc", "Abl", "Ins"};
+    private static final String[] AGREEMENTS = {"A1sg", "A2sg", "A3sg", "A1pl", "A2pl", "A3pl"};
+    private static final String[] POSSESSIVES = {"P1sg", "P2sg", "P3sg", "P1pl", "P2pl", "P3pl"};
+    private static final String[] SINGULAR_POSSESSIVES = {"P1sg", "P2sg", "P3sg"};
+    private static final String[] A3_AGREEMENTS = {"A3sg", "A3pl"};
+    private static final String[] GROUPS_WITH_POLARITY_BEFORE = {"Adj", "Adv", "Noun"};
+
+    private final boolean addIndices;
+
+    public SabanciMetuTreeBankAnalysisFormatter3(boolean addIndices) {
+        this.addIndices = addIndices;
+    }
+
+    @Override
+    public String format(SingleAnalysis analysis) {
+        final StringBuilder builder = BUILDERS.get();
+        builder.setLength(0);
+        formatTo(analysis, builder);
+        return builder.toString();
+    }
+
+    @Override
+    public void formatAll(Iterable<SingleAnalysis> analyses, FormattedBatch batch) {
+        for (SingleAnalysis analysis : analyses) {
+            batch.begin();
+            formatTo(analysis, batch.text);
+            batch.end();
+        }
+    }
+
+    /**
+     * Appends the formatted analysis to the given builder.
+     */
+    public void formatTo(SingleAnalysis analysis, StringBuilder out) {
+        final TextWriter writer = TEXT_WRITERS.get();
+        writer.out = out;
+        writer.addIndices = addIndices;
+        writeTokens(analysis, writer);
+        writer.out = null;
+    }
+
+    boolean addsIndices() {
+        return addIndices;
+    }
+
+    /**
+     * Writes the tokens of the formatted analysis, group by group, with the groups numbered from 1
+     */
+    void writeTokens(SingleAnalysis analysis, TokenWriter out) {
+        final String[][] holder = TOKENS.get();
+        final List<SingleAnalysis.MorphemeData> surfaces = analysis.getMorphemeDataList();
+        String[] tokens = holder[0];
+        if (tokens.length < surfaces.size() + 3) {
+            tokens = holder[0] = new String[surfaces.size() + 3];
+        }
+
+        final DictionaryItem dictionaryItem = analysis.getDictionaryItem();
+        final PrimaryPos primaryPos = dictionaryItem.primaryPos;
+        final SecondaryPos secondaryPos = dictionaryItem.secondaryPos;
+
+        int count = 0;
+        tokens[count++] = dictionaryItem.root;
+        tokens[count++] = primaryPos.getStringForm();
+        if (secondaryPos != null && secondaryPos != SecondaryPos.None && !(primaryPos == PrimaryPos.Adverb && secondaryPos == SecondaryPos.Time))
+            tokens[count++] = secondaryPos.getStringForm();
+
+        int groupIndex = 1;
+        for (int i = 1; i < surfaces.size(); i++) {
+            final MorphemeDescriptor morpheme = MorphemeDescriptor.of(surfaces.get(i).morpheme);
+
+            if (morpheme.derivational) {
+                final String nextGroupPos = MorphemeDescriptor.of(surfaces.get(i + 1).morpheme).posForm;
+                writeGroup(out, groupIndex, tokens, count, nextGroupPos);
+                groupIndex++;
+                count = 0;
+                tokens[count++] = nextGroupPos;
+                i++;
+            }
+
+            // renamed already, e.g. AfterDoing -> AfterDoingSo
+            tokens[count++] = morpheme.sabanciId;
+        }
+
+        writeGroup(out, groupIndex, tokens, count, null);
+        Arrays.fill(tokens, 0, count, null);
+    }
+
+    /**
+     * Appends already grouped tokens, with the morpheme ids renamed as in {@link MorphemeDescriptor#sabanciId}. The
+     * rules of {@link SabanciMetuTreeBankAnalysisFormatter2} are checked against this in tests, without a morphology.
+     */
+    void formatTokens(List<List<String>> groups, StringBuilder out) {
+        final TextWriter writer = new TextWriter();
+        writer.out = out;
+        writer.addIndices = addIndices;
+        for (int i = 0; i < groups.size(); i++) {
+            final String[] tokens = groups.get(i).toArray(new String[0]);
+            final String nextGroupPos = i + 1 < groups.size() ? groups.get(i + 1).get(0) : null;
+            writeGroup(writer, i + 1, tokens, tokens.length, nextGroupPos);
+        }
+    }
+
+    private void writeGroup(TokenWriter out, int groupIndex, String[] t, int n, String nextGroupPos) {
+        // değil+Verb+Neg+ -> değil+Verb+
+        for (int j = 0; j + 3 < n; j++) {
+            if (t[j].endsWith("değil") && t[j + 1].equals("Verb") && t[j + 2].equals("Neg")) {
+                System.arraycopy(t, j + 3, t, j + 2, n - j - 3);
+                n--;
+                break;
+            }
+        }
+
+        // "Adv+ByDoingSo+Adv" -> "Adv+ByDoingSo"
+        if (n == 3 && t[0].equals("Adv") && t[1].equals("ByDoingSo") && t[2].equals("Adv"))
+            n = 2;
+
+        final String last = t[n - 1];
+        final String beforeLast = t[n - 2];
+
+        // A3pl+Dat" -> A3pl+Pnon+Nom"
+        final boolean plainPluralDative = beforeLast.endsWith("A3pl") && last.equals("Dat");
+        // +A1sg+Acc" -> +A1sg+Pnon+Acc"
+        final boolean accusativeWithoutPossessive = n - 2 >= 1 && isOneOf(beforeLast, AGREEMENTS) && last.equals("Acc");
+
+        out.startGroup(groupIndex);
+        for (int j = 0; j < n; j++) {
+            final String token = t[j];
+            if (j > 0) {
+                final String previous = t[j - 1];
+                if (missesPolarity(previous, token)) {
+                    out.token("Pos");
+                } else if (j == n - 1 && plainPluralDative) {
+                    out.token("Pnon");
+                    out.token("Nom");
+                    continue;
+                } else if (missesPossessive(j - 1, previous, token) || (j == n - 1 && accusativeWithoutPossessive)) {
+                    out.token("Pnon");
+                }
+            }
+
+            out.token(token);
+        }
+
+        if (missesPossessiveAndCase(t, n)) {
+            out.token("Pnon");
+            out.token("Nom");
+        } else if ((beforeLast.endsWith("A3sg") && isOneOf(last, POSSESSIVES)) || (beforeLast.endsWith("A3pl") && isOneOf(last, SINGULAR_POSSESSIVES))) {
+            // A3sg+P1sg" -> A3sg+P1sg+Nom"
+            out.token("Nom");
+        } else if (addIndices && nextGroupPos != null && missesPolarityBeforeNextGroup(groupIndex, t, n, nextGroupPos)) {
+            // +Verb")(2,"Adj -> +Verb+Pos")(2,"Adj
+            out.token("Pos");
+        }
+        out.endGroup();
+    }
+
+    /**
+     * Verb+Past -> Verb+Pos+Past, Pass+Narr -> Pass+Pos+Narr
+     */
+    private static boolean missesPolarity(String previous, String token) {
+        return (previous.endsWith("Verb") && startsWithOneOf(token, TENSES_WITHOUT_POLARITY))
+                || (previous.endsWith("Pass") && token.startsWith("Narr"));
+    }
+
+    /**
+     * A3sg+Loc -> A3sg+Pnon+Loc, +A1sg+Dat -> +A1sg+Pnon+Dat, +A1sg+Gen -> +A1sg+Pnon+Gen
+     */
+    private static boolean missesPossessive(int previousIndex, String previous, String token) {
+        if (previous.endsWith("A3sg") && startsWithOneOf(token, CASES_AFTER_A3SG_WITHOUT_POSSESSIVE))
+            return true;
+        return previousIndex >= 1 && isOneOf(previous, AGREEMENTS) && (token.startsWith("Dat") || token.startsWith("Gen"));
+    }
+
+    /**
+     * Groups ending with a bare agreement, e.g. +Noun+A3sg" -> +Noun+A3sg+Pnon+Nom"
+     */
+    private static boolean missesPossessiveAndCase(String[] t, int n) {
+        final String last = t[n - 1];
+        final String beforeLast = t[n - 2];
+        final String twoBeforeLast = n >= 3 ? t[n - 3] : null;
+
+        if (last.equals("A3sg")) {
+            if (twoBeforeLast != null && n - 3 >= 1 && twoBeforeLast.equals("Noun") && beforeLast.equals("Time"))
+                return true;    // gun
+            if (twoBeforeLast != null && twoBeforeLast.endsWith("Noun") && (beforeLast.equals("Inf1") || beforeLast.equals("Inf2")))
+                return true;    // olmak, olma
+            if (beforeLast.endsWith("Ness"))
+                return true;    // cocukluk
+        }
+        if (last.equals("A3pl") && twoBeforeLast != null && twoBeforeLast.endsWith("Noun") && beforeLast.equals("Inf2"))
+            return true;        // olmalar
+
+        if (isOneOf(last, A3_AGREEMENTS) && n - 2 >= 1 && (beforeLast.equals("Noun") || beforeLast.equals("Ques") || beforeLast.equals("Demons")))
+            return true;        // sey, ne, bu
+
+        return beforeLast.endsWith("Pers") && isOneOf(last, AGREEMENTS);     // ben
+    }
+
+    /**
+     * +Verb")(2,"Adj -> +Verb+Pos")(2,"Adj, Verb+Pass")(3,"Adj -> Verb+Pass+Pos")(3,"Adj
+     */
+    private static boolean missesPolarityBeforeNextGroup(int groupIndex, String[] t, int n, String nextGroupPos) {
+        if (groupIndex == 1)
+            return n - 1 >= 1 && t[n - 1].equals("Verb") && startsWithOneOf(nextGroupPos, GROUPS_WITH_POLARITY_BEFORE);
+        if (groupIndex == 2)
+            return t[n - 2].endsWith("Verb") && t[n - 1].equals("Pass") && nextGroupPos.startsWith("Adj");
+        return false;
+    }
+
+    private static boolean isOneOf(String token, String[] candidates) {
+        for (String candidate : candidates) {
+            if (token.equals(candidate))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean startsWithOneOf(String token, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (token.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Receives the tokens of a formatted analysis
+     */
+    interface TokenWriter {
+        void startGroup(int groupIndex);
+
+        void token(String token);
+
+        void endGroup();
+    }
+
+    /**
+     * Writes the tokens as text, {@code (1,"kalem+Noun+A3sg")}
+     */
+    private static final class TextWriter implements TokenWriter {
+        StringBuilder out;
+        boolean addIndices;
+        private boolean groupStart;
+
+        @Override
+        public void startGroup(int groupIndex) {
+            out.append('(');
+            if (addIndices)
+                out.append(groupIndex).append(',');
+            out.append('"');
+            groupStart = true;
+        }
+
+        @Override
+        public void token(String token) {
+            if (!groupStart)
+                out.append('+');
+            out.append(token);
+            groupStart = false;
+        }
+
+        @Override
+        public void endGroup() {
+            out.append("\")");
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package experiments;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import org.apache.commons.lang3.tuple.Pair;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.SentenceAnalysis;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sentence level evaluation: tokens are grouped by the {@code #END#OF#SENTENCE#} markers, every sentence is analyzed
+ * and disambiguated as a whole, and the best analysis of each token is compared with the expected parse (top-1
+ * accuracy). Whether the expected parse is among all candidates (recall) is reported as well.
+ * <p>
+ * {@link TurkishMorphology#analyzeSentence(String)} tokenizes the joined surfaces itself. When that doesn't give the
+ * tokens of the parse set back (e.g. "vb." is split), the surfaces are analyzed one by one before disambiguation.
+ * <p>
+ * Sentences are processed concurrently on the given executor, in batches with a bounded number of batches in flight.
+ **/
+public class SentenceEvaluator {
+
+    private static final int SENTENCES_PER_BATCH = 64;
+    private static final int MAX_PENDING_BATCHES = 4 * Runtime.getRuntime().availableProcessors();
+    private static final ThreadLocal<FormattedBatch> BATCHES = ThreadLocal.withInitial(FormattedBatch::new);
+
+    private final TurkishMorphology morphology;
+    private final AnalysisFormatter formatter;
+    private final ExecutorService executor;
+
+    public SentenceEvaluator(TurkishMorphology morphology, AnalysisFormatter formatter, ExecutorService executor) {
+        this.morphology = morphology;
+        this.formatter = formatter;
+        this.executor = executor;
+    }
+
+    public Result evaluate(SimpleParseSetReader reader) throws IOException {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final Result result = new Result();
+
+        final Deque<Future<Result>> pending = new ArrayDeque<>();
+        List<List<Pair<String, String>>> batch;
+        while (!(batch = nextBatch(reader)).isEmpty()) {
+            if (executor == null) {
+                result.merge(evaluate(batch));
+                continue;
+            }
+
+            if (pending.size() >= MAX_PENDING_BATCHES)
+                result.merge(ParseSetEvaluator.get(pending.poll()));
+
+            final List<List<Pair<String, String>>> sentences = batch;
+            pending.add(executor.submit(() -> evaluate(sentences)));
+        }
+
+        while (!pending.isEmpty()) {
+            result.merge(ParseSetEvaluator.get(pending.poll()));
+        }
+
+        result.elapsedNanos = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    private static List<List<Pair<String, String>>> nextBatch(SimpleParseSetReader reader) throws IOException {
+        final List<List<Pair<String, String>>> batch = new ArrayList<>(SENTENCES_PER_BATCH);
+        List<Pair<String, String>> sentence;
+        while (batch.size() < SENTENCES_PER_BATCH && (sentence = reader.nextSentence()) != null) {
+            batch.add(sentence);
+        }
+        return batch;
+    }
+
+    Result evaluate(List<List<Pair<String, String>>> sentences) {
+        final Result result = new Result();
+        for (List<Pair<String, String>> sentence : sentences) {
+            evaluateSentence(sentence, result);
+        }
+        return result;
+    }
+
+    void evaluateSentence(List<Pair<String, String>> tokens, Result result) {
+        final List<String> surfaces = new ArrayList<>(tokens.size());
+        for (Pair<String, String> token : tokens) {
+            surfaces.add(token.getLeft());
+        }
+        final String sentence = Joiner.on(' ').join(surfaces);
+
+        List<WordAnalysis> analyses = morphology.analyzeSentence(sentence);
+        if (!sameInputs(analyses, surfaces)) {
+            result.tokenizationFallbacks++;
+            analyses = new ArrayList<>(surfaces.size());
+            for (String surface : surfaces) {
+                analyses.add(morphology.analyze(surface));
+            }
+        }
+
+        final SentenceAnalysis disambiguated = morphology.disambiguate(sentence, analyses);
+        final List<SingleAnalysis> best = disambiguated.bestAnalysis();
+
+        result.sentences++;
+        result.tokens += tokens.size();
+
+        boolean sentenceCorrect = true;
+        for (int i = 0; i < tokens.size(); i++) {
+            final String surface = surfaces.get(i);
+            final String expected = tokens.get(i).getRight();
+
+            if (DisambiguateSentences.isSkippedSurface(surface) || DisambiguateSentences.isSkippedExpectedParseResult(expected)) {
+                result.skippedTokens++;
+                continue;
+            }
+
+            result.scoredTokens++;
+            final WordAnalysis analysis = analyses.get(i);
+            if (analysis.analysisCount() == 0) {
+                result.unparsable++;
+                sentenceCorrect = false;
+                continue;
+            }
+
+            if (formatter.format(best.get(i)).equals(expected)) {
+                result.top1Correct++;
+                result.candidateHits++;
+                continue;
+            }
+
+            sentenceCorrect = false;
+            final FormattedBatch candidates = BATCHES.get();
+            candidates.clear();
+            candidates.addAll(formatter, analysis);
+            if (candidates.contains(expected))
+                result.candidateHits++;
+        }
+
+        if (sentenceCorrect)
+            result.correctSentences++;
+    }
+
+    /**
+     * Whether the morphology tokenized the sentence into the given surfaces
+     */
+    static boolean sameInputs(List<WordAnalysis> analyses, List<String> surfaces) {
+        if (analyses.size() != surfaces.size())
+            return false;
+        for (int i = 0; i < surfaces.size(); i++) {
+            if (!analyses.get(i).getInput().equals(surfaces.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    public static class Result {
+        int sentences;
+        int correctSentences;
+        int tokens;
+        int skippedTokens;
+        int scoredTokens;
+        int unparsable;
+        int top1Correct;
+        int candidateHits;
+        int tokenizationFallbacks;
+        long elapsedNanos;
+
+        void merge(Result other) {
+            sentences += other.sentences;
+            correctSentences += other.correctSentences;
+            tokens += other.tokens;
+            skippedTokens += other.skippedTokens;
+            scoredTokens += other.scoredTokens;
+            unparsable += other.unparsable;
+            top1Correct += other.top1Correct;
+            candidateHits += other.candidateHits;
+            tokenizationFallbacks += other.tokenizationFallbacks;
+        }
+
+        public double top1Accuracy() {
+            return top1Correct * 1.0 / scoredTokens;
+        }
+
+        public double candidateRecall() {
+            return candidateHits * 1.0 / scoredTokens;
+        }
+
+        public void printSummary(PrintStream out) {
+            final double seconds = elapsedNanos / 1e9;
+
+            out.println("========SENTENCE SUMMARY===========");
+            out.println("Sentence count            :\t\t" + sentences);
+            out.println("Token count               :\t\t" + tokens);
+            out.println("Skipped tokens            :\t\t" + skippedTokens);
+            out.println("Scored tokens             :\t\t" + scoredTokens);
+            out.println("Unparsable                :\t\t" + unparsable);
+            out.println("Top-1 correct             :\t\t" + top1Correct);
+            out.println("Top-1 accuracy %          :\t\t" + top1Accuracy() * 100);
+            out.println("Candidate recall %        :\t\t" + candidateRecall() * 100);
+            out.println("Fully correct sentences % :\t\t" + correctSentences * 1.0 / sentences * 100);
+            out.println("Tokenization fallbacks    :\t\t" + tokenizationFallbacks);
+            out.println("Elapsed seconds           :\t\t" + seconds);
+            out.println("Sentences / second        :\t\t" + sentences / seconds);
+            out.println("Tokens / second           :\t\t" + tokens / seconds);
+        }
+    }
+}
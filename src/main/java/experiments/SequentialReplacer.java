@@ -0,0 +1,171 @@
+package experiments;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ordered table of {@code target -> replacement} rules that gives exactly the same result as
+ * <pre>
+ *     text = text.replace(target0, replacement0);
+ *     text = text.replace(target1, replacement1);
+ *     ...
+ * </pre>
+ * including the cases where the output of a rule makes a later rule match.
+ * <p>
+ * Instead of scanning the text once per rule, all targets are compiled into a single {@link AhoCorasickMatcher}.
+ * A scan finds the first rule that matches the current text; all rules before it would be no-ops. That rule is applied
+ * and the search continues with the rules after it. So the number of scans is the number of rules that actually fire
+ * plus one, which is almost always 1 or 2 instead of the size of the table.
+ * <p>
+ * Immutable and thread safe; the working buffers are thread local.
+ **/
+public class SequentialReplacer {
+
+    private final ImmutableList<String> targets;
+    private final ImmutableList<String> replacements;
+    private final AhoCorasickMatcher matcher;
+
+    private final ThreadLocal<StringBuilder[]> buffers = ThreadLocal.withInitial(() -> new StringBuilder[]{new StringBuilder(128), new StringBuilder(128)});
+
+    private SequentialReplacer(ImmutableList<String> targets, ImmutableList<String> replacements) {
+        this.targets = targets;
+        this.replacements = replacements;
+        this.matcher = new AhoCorasickMatcher(targets);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int ruleCount() {
+        return targets.size();
+    }
+
+    public String target(int ruleIndex) {
+        return targets.get(ruleIndex);
+    }
+
+    public String replacement(int ruleIndex) {
+        return replacements.get(ruleIndex);
+    }
+
+    /**
+     * @return the rewritten text; the same instance if no rule matched
+     */
+    public String replace(String text) {
+        return replace(text, null);
+    }
+
+    /**
+     * @param listener notified of every rule that matches, in rule order; may be null
+     * @return the rewritten text; the same instance if no rule matched
+     */
+    public String replace(String text, RuleListener listener) {
+        final int first = matcher.firstPattern(text);
+        if (first < 0)
+            return text;
+
+        final StringBuilder[] pair = buffers.get();
+        pair[0].setLength(0);
+        pair[0].append(text);
+        final StringBuilder result = rewrite(pair, first, listener);
+        return result.toString();
+    }
+
+    /**
+     * Rewrites the buffer in place.
+     */
+    public void replace(StringBuilder text) {
+        replace(text, 0);
+    }
+
+    /**
+     * Rewrites the end of the buffer from {@code from} on in place, as if it was a text of its own; the part before
+     * is left as it is.
+     */
+    public void replace(StringBuilder text, int from) {
+        final int first = matcher.firstPattern(text, from);
+        if (first < 0)
+            return;
+
+        final StringBuilder[] pair = buffers.get();
+        pair[0].setLength(0);
+        pair[0].append(text, from, text.length());
+        final StringBuilder result = rewrite(pair, first, null);
+        text.setLength(from);
+        text.append(result);
+    }
+
+    private StringBuilder rewrite(StringBuilder[] pair, int firstRule, RuleListener listener) {
+        StringBuilder current = pair[0];
+        StringBuilder other = pair[1];
+
+        int rule = firstRule;
+        while (rule >= 0) {
+            replaceAll(current, targets.get(rule), replacements.get(rule), other);
+
+            final StringBuilder tmp = current;
+            current = other;
+            other = tmp;
+
+            if (listener != null)
+                listener.ruleApplied(rule, current);
+
+            rule = matcher.firstPatternAbove(current, rule);
+        }
+
+        // keep the pair stable for the next call on this thread
+        pair[0] = other;
+        pair[1] = current;
+        return current;
+    }
+
+    /**
+     * Same semantics as {@link String#replace(CharSequence, CharSequence)}.
+     */
+    private static void replaceAll(StringBuilder source, String target, String replacement, StringBuilder destination) {
+        destination.setLength(0);
+        int from = 0;
+        int index = source.indexOf(target, from);
+        while (index >= 0) {
+            destination.append(source, from, index).append(replacement);
+            from = index + target.length();
+            index = source.indexOf(target, from);
+        }
+        destination.append(source, from, source.length());
+    }
+
+    /**
+     * Plain rule-by-rule application. Reference implementation for tests and benchmarks.
+     */
+    public String replaceSequentially(String text) {
+        for (int i = 0; i < targets.size(); i++) {
+            text = text.replace(targets.get(i), replacements.get(i));
+        }
+        return text;
+    }
+
+    public interface RuleListener {
+        /**
+         * @param text the text right after the rule is applied; only valid during the call
+         */
+        void ruleApplied(int ruleIndex, CharSequence text);
+    }
+
+    public static class Builder {
+        private final List<String> targets = new ArrayList<>();
+        private final List<String> replacements = new ArrayList<>();
+
+        public Builder add(String target, String replacement) {
+            targets.add(target);
+            replacements.add(replacement);
+            return this;
+        }
+
+        public SequentialReplacer build() {
+            return new SequentialReplacer(ImmutableList.copyOf(targets), ImmutableList.copyOf(replacements));
+        }
+    }
+}
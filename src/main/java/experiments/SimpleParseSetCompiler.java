@@ -0,0 +1,184 @@
+package experiments;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a simple parse set text file into the binary format read by {@link CompiledParseSet}. The replace hacks
+ * are applied at compile time.
+ * <p>
+ * All strings (surfaces, lemmas, tags) go into a single string table. Every distinct expected parse is stored once,
+ * as its derivation groups of string ids; e.g. {@code (1,"şark+Noun+A3sg")(2,"Adj+With")} is
+ * {@code [2, 3, şark, Noun, A3sg, 2, Adj, With]}. Expected parses that don't have this shape are stored as a single
+ * string id, with group count 0.
+ * <p>
+ * Layout, all ints big endian:
+ * <pre>
+ *     header          : magic, version, hacks fingerprint, string count, parse count, token count, sentence count
+ *     stringOffsets   : int[string count + 1], byte offsets into stringBytes
+ *     parseOffsets    : int[parse count + 1], int offsets into parseData
+ *     parseData       : int[]
+ *     tokenSurfaces   : int[token count], string ids
+ *     tokenParses     : int[token count], parse ids
+ *     sentenceStarts  : int[sentence count + 1], token indices
+ *     stringBytes     : UTF-8
+ * </pre>
+ **/
+public class SimpleParseSetCompiler {
+
+    static final int MAGIC = 0x53505331;   // "SPS1"
+    static final int VERSION = 1;
+    static final int HEADER_INTS = 7;
+
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+    private final Map<String, Integer> parses = new LinkedHashMap<>();
+
+    private final IntBuffer parseOffsets = new IntBuffer();
+    private final IntBuffer parseData = new IntBuffer();
+    private final IntBuffer tokenSurfaces = new IntBuffer();
+    private final IntBuffer tokenParses = new IntBuffer();
+    private final IntBuffer sentenceStarts = new IntBuffer();
+
+    public static void main(String[] args) throws IOException {
+        final Path input = Paths.get(args[0]);
+        final Path output = args.length > 1 ? Paths.get(args[1]) : Paths.get(args[0].replaceAll("\\.txt(\\.gz)?$", "") + CompiledParseSet.EXTENSION);
+
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final SimpleParseSetCompiler compiler = new SimpleParseSetCompiler();
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(input)) {
+            compiler.addAll(reader);
+        }
+        try (OutputStream out = Files.newOutputStream(output)) {
+            compiler.writeTo(out);
+        }
+
+        System.out.println("Compiled " + compiler.tokenCount() + " tokens in " + compiler.sentenceCount() + " sentences, "
+                + compiler.strings.size() + " strings and " + compiler.parses.size() + " distinct parses into " + output
+                + " (" + Files.size(output) + " bytes) in " + stopwatch);
+    }
+
+    public SimpleParseSetCompiler() {
+        parseOffsets.add(0);
+        sentenceStarts.add(0);
+    }
+
+    public void addAll(SimpleParseSetReader reader) throws IOException {
+        List<Pair<String, String>> sentence;
+        while ((sentence = reader.nextSentence()) != null) {
+            addSentence(sentence);
+        }
+    }
+
+    public void addSentence(List<Pair<String, String>> sentence) {
+        for (Pair<String, String> line : sentence) {
+            tokenSurfaces.add(stringId(line.getLeft()));
+            tokenParses.add(parseId(line.getRight()));
+        }
+        sentenceStarts.add(tokenSurfaces.size());
+    }
+
+    public int tokenCount() {
+        return tokenSurfaces.size();
+    }
+
+    public int sentenceCount() {
+        return sentenceStarts.size() - 1;
+    }
+
+    private int stringId(String string) {
+        Integer id = strings.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.put(string, id);
+        }
+        return id;
+    }
+
+    private int parseId(String parse) {
+        Integer id = parses.get(parse);
+        if (id != null)
+            return id;
+
+        id = parses.size();
+        parses.put(parse, id);
+
+        final List<List<String>> groups = GoldParse.groups(parse);
+        if (groups == null) {
+            parseData.add(0);
+            parseData.add(stringId(parse));
+        } else {
+            parseData.add(groups.size());
+            for (List<String> group : groups) {
+                parseData.add(group.size());
+                for (String tag : group) {
+                    parseData.add(stringId(tag));
+                }
+            }
+        }
+        parseOffsets.add(parseData.size());
+        return id;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        final ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        final IntBuffer stringOffsets = new IntBuffer();
+        stringOffsets.add(0);
+        for (String string : strings.keySet()) {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            stringBytes.write(bytes, 0, bytes.length);
+            stringOffsets.add(stringBytes.size());
+        }
+
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(DisambiguateSentences.parseResultReplaceHacksFingerprint());
+        data.writeInt(strings.size());
+        data.writeInt(parses.size());
+        data.writeInt(tokenSurfaces.size());
+        data.writeInt(sentenceCount());
+        stringOffsets.writeTo(data);
+        parseOffsets.writeTo(data);
+        parseData.writeTo(data);
+        tokenSurfaces.writeTo(data);
+        tokenParses.writeTo(data);
+        sentenceStarts.writeTo(data);
+        stringBytes.writeTo(data);
+        data.flush();
+    }
+
+    private static class IntBuffer {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                out.writeInt(values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package experiments;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lazily reads {@code surface=expected parse} lines of a simple parse set, one line or one sentence at a time.
+ * Only the current line is kept in memory, so the size of the input doesn't matter.
+ * <p>
+ * Files ending with {@code .gz} are decompressed on the fly.
+ **/
+public class SimpleParseSetReader implements Closeable {
+
+    static final String END_OF_SENTENCE = "#END#OF#SENTENCE#";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final BufferedReader reader;
+    private final HashMultiset<String> replaceHackHits = HashMultiset.create();
+    private final SequentialReplacer.RuleListener replaceHackCounter = DisambiguateSentences.replaceHackCounter(replaceHackHits);
+
+    public SimpleParseSetReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, BUFFER_SIZE);
+    }
+
+    public static SimpleParseSetReader open(Path path) throws IOException {
+        return open(Files.newInputStream(path), path.getFileName().toString());
+    }
+
+    public static SimpleParseSetReader open(URL url) throws IOException {
+        return open(url.openStream(), url.getPath());
+    }
+
+    private static SimpleParseSetReader open(InputStream in, String name) throws IOException {
+        if (name.endsWith(".gz"))
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        return new SimpleParseSetReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    /**
+     * @return next surface and expected parse, skipping sentence boundaries; null at the end of the input
+     */
+    public Pair<String, String> nextLine() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!END_OF_SENTENCE.equals(line))
+                return DisambiguateSentences.parseLine(line, replaceHackCounter);
+        }
+        return null;
+    }
+
+    /**
+     * @return lines of the next sentence, without the boundary marker; null at the end of the input
+     */
+    public List<Pair<String, String>> nextSentence() throws IOException {
+        List<Pair<String, String>> sentence = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (END_OF_SENTENCE.equals(line)) {
+                if (sentence != null)
+                    return sentence;
+                continue;
+            }
+            if (sentence == null)
+                sentence = new ArrayList<>();
+            sentence.add(DisambiguateSentences.parseLine(line, replaceHackCounter));
+        }
+        return sentence;
+    }
+
+    /**
+     * @return up to {@code max} lines, skipping sentence boundaries; an empty list at the end of the input
+     */
+    public List<Pair<String, String>> nextLines(int max) throws IOException {
+        final List<Pair<String, String>> lines = new ArrayList<>(max);
+        Pair<String, String> line;
+        while (lines.size() < max && (line = nextLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * @return how many times each replace hack of {@link DisambiguateSentences} changed an expected parse of the lines
+     * read so far
+     */
+    public Multiset<String> replaceHackHits() {
+        return replaceHackHits;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
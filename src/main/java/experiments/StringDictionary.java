@@ -0,0 +1,276 @@
+package experiments;
+
+import org.apache.commons.lang3.Validate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append only dictionary of strings, stored as UTF-8 bytes in direct (off-heap) slabs of {@link #SLAB_SIZE} bytes.
+ * Every distinct string gets an int id, ids start from 0 and are never reused. The heap only holds 16 bytes per
+ * distinct string and the hash table, so structures that keep ids instead of strings, e.g. {@link InternedLines},
+ * cost the heap 4 bytes per string no matter how long or how often repeated it is.
+ * <p>
+ * Equal strings have equal ids. Entries can also be hashed, measured and ordered without decoding them, see
+ * {@link #hash(int)}, {@link #byteLength(int)} and {@link #compare(int, int)}.
+ * <p>
+ * A dictionary belongs to the data it interns, e.g. the lines of one evaluation run, and is released with it; the
+ * slabs are freed when the dictionary is collected.
+ * <p>
+ * Thread safe. Looking up a string that is already in the dictionary is lock free, adding one is synchronized;
+ * reading an entry is lock free, given the id was handed over from the interning thread in a thread safe way (a
+ * concurrent collection, an executor, a final field...).
+ **/
+public final class StringDictionary {
+
+    static final int SLAB_SIZE = 1 << 20;
+
+    private static final ThreadLocal<byte[][]> SCRATCH = ThreadLocal.withInitial(() -> new byte[][]{new byte[256]});
+
+    private volatile ByteBuffer[] slabs = new ByteBuffer[16];
+    private int slabCount;
+    private int slabPosition;
+
+    /**
+     * Slab index in the high, offset in the low 32 bits
+     */
+    private volatile long[] addresses = new long[1024];
+    private volatile int[] lengths = new int[1024];
+    private volatile int[] hashes = new int[1024];
+    private volatile int size;
+
+    /**
+     * Open addressing table of {@code id + 1}, 0 for an empty slot
+     */
+    private volatile int[] table = new int[2048];
+
+    private long offHeapBytes;
+
+    public int id(CharSequence string) {
+        final byte[][] scratch = SCRATCH.get();
+        final int length = encode(string, scratch);
+        final byte[] bytes = scratch[0];
+        final int hash = hash(bytes, length);
+
+        final int id = find(bytes, length, hash);
+        return id >= 0 ? id : add(bytes, length, hash);
+    }
+
+    /**
+     * Lock free lookup. Only entries below the {@link #size} that was read first are trusted: everything they
+     * consist of was written before that size was published. A miss is checked again under the lock by {@link #add}.
+     *
+     * @return id of the bytes, -1 if not found
+     */
+    private int find(byte[] bytes, int length, int hash) {
+        final int published = size;
+        final int[] table = this.table;
+        final int mask = table.length - 1;
+        int slot = hash & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            final int id = entry - 1;
+            if (id < published && hashes[id] == hash && lengths[id] == length && equalsBytes(id, bytes, length))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String string(int id) {
+        final ByteBuffer slice = slice(id);
+        final byte[] bytes = new byte[slice.remaining()];
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return hash of the UTF-8 bytes, the same for equal strings in any dictionary
+     */
+    public int hash(int id) {
+        return hashes[id];
+    }
+
+    public int byteLength(int id) {
+        return lengths[id];
+    }
+
+    /**
+     * Compares the UTF-8 bytes, which orders the strings by code point
+     */
+    public int compare(int first, int second) {
+        if (first == second)
+            return 0;
+        final ByteBuffer a = slice(first);
+        final ByteBuffer b = slice(second);
+        final int length = Math.min(a.remaining(), b.remaining());
+        for (int i = 0; i < length; i++) {
+            final int difference = (a.get(i) & 0xFF) - (b.get(i) & 0xFF);
+            if (difference != 0)
+                return difference;
+        }
+        return a.remaining() - b.remaining();
+    }
+
+    /**
+     * @return number of distinct strings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return bytes of the allocated slabs
+     */
+    public synchronized long offHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * @return read only view of the bytes of the entry, positioned at 0
+     */
+    private ByteBuffer slice(int id) {
+        Validate.isTrue(id >= 0 && id < size, "Unknown id %d", id);
+        final long address = addresses[id];
+        final ByteBuffer slice = slabs[(int) (address >>> 32)].duplicate();
+        slice.position((int) address);
+        slice.limit((int) address + lengths[id]);
+        return slice.slice();
+    }
+
+    private boolean equalsBytes(int id, byte[] bytes, int length) {
+        final long address = addresses[id];
+        final ByteBuffer slab = slabs[(int) (address >>> 32)];
+        final int offset = (int) address;
+        for (int i = 0; i < length; i++) {
+            if (slab.get(offset + i) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    private synchronized int add(byte[] bytes, int length, int hash) {
+        final int[] table = this.table;
+        final int mask = table.length - 1;
+        int slot = hash & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            final int existing = entry - 1;
+            if (hashes[existing] == hash && lengths[existing] == length && equalsBytes(existing, bytes, length))
+                return existing;
+            slot = (slot + 1) & mask;
+        }
+
+        final int id = size;
+        if (id == lengths.length) {
+            addresses = Arrays.copyOf(addresses, id * 2);
+            lengths = Arrays.copyOf(lengths, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+
+        final long address = store(bytes, length);
+        addresses[id] = address;
+        lengths[id] = length;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        // publishes the entry to find()
+        size = id + 1;
+
+        if (size * 2 > table.length)
+            rehash();
+        return id;
+    }
+
+    /**
+     * Copies the bytes into a slab; a string longer than a slab gets a slab of its own
+     */
+    private long store(byte[] bytes, int length) {
+        if (slabCount == 0 || slabPosition + length > SLAB_SIZE) {
+            if (slabCount == slabs.length)
+                slabs = Arrays.copyOf(slabs, slabCount * 2);
+            final int capacity = Math.max(SLAB_SIZE, length);
+            final ByteBuffer[] current = slabs;
+            current[slabCount++] = ByteBuffer.allocateDirect(capacity);
+            slabs = current;
+            offHeapBytes += capacity;
+            slabPosition = 0;
+        }
+
+        final int slab = slabCount - 1;
+        final ByteBuffer target = slabs[slab].duplicate();
+        target.position(slabPosition);
+        target.put(bytes, 0, length);
+        final long address = (long) slab << 32 | slabPosition;
+        // a slab that was allocated for one long string is full
+        slabPosition = length > SLAB_SIZE ? SLAB_SIZE : slabPosition + length;
+        return address;
+    }
+
+    /**
+     * Readers that still hold the old table see the entries that were in it, the rest is looked up under the lock
+     */
+    private void rehash() {
+        final int[] rehashed = new int[table.length * 2];
+        final int mask = rehashed.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        table = rehashed;
+    }
+
+    /**
+     * UTF-8 encodes the string into {@code scratch[0]}, which is grown if needed, unpaired surrogates as {@code ?}
+     * like {@link String#getBytes}
+     *
+     * @return number of bytes
+     */
+    private static int encode(CharSequence string, byte[][] scratch) {
+        final int chars = string.length();
+        if (scratch[0].length < chars * 3)
+            scratch[0] = new byte[Math.max(chars * 3, scratch[0].length * 2)];
+
+        final byte[] bytes = scratch[0];
+        int position = 0;
+        for (int i = 0; i < chars; i++) {
+            final char c = string.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | c >> 6);
+                bytes[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                    bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+                    bytes[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    bytes[position++] = (byte) (0x80 | codePoint & 0x3F);
+                } else {
+                    bytes[position++] = '?';
+                }
+            } else {
+                bytes[position++] = (byte) (0xE0 | c >> 12);
+                bytes[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * FNV-1a
+     */
+    private static int hash(byte[] bytes, int length) {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            hash ^= bytes[i] & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,454 @@
+package experiments;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index of the expected parses of a {@link CompiledParseSet}: for every lemma and tag, and every two
+ * consecutive ones, the sorted ids of the tokens and of the sentences whose expected parse has it. The lists are
+ * stored delta and varint encoded, in memory and in the file written by {@link #save(Path)}.
+ * <p>
+ * A query is a fragment of the treebank format, written the way the rules of
+ * {@link SabanciMetuTreeBankAnalysisFormatter2} are, e.g. {@code Pass+Pos+Narr} or {@code +Verb")(2,"Adj}; it
+ * matches the parses that have these lemmas and tags one after another. Group numbers are not compared. Fragments
+ * separated by spaces must all match, anywhere in the parse: {@code Verb Pass Narr}.
+ * <p>
+ * Matching tokens can be evaluated on their own with {@link #lines(int[])}, e.g.
+ * {@code evaluator.evaluate(index.lines(index.tokens("Pass+Pos+Narr")))}.
+ * <p>
+ * Thread safe after it is built or opened.
+ **/
+public class TagIndex {
+
+    static final int MAGIC = 0x54494458;   // "TIDX"
+    static final int VERSION = 1;
+
+    /**
+     * Derivation group boundary in the elements of a parse or a query
+     */
+    private static final String GROUP_BOUNDARY = "\")(";
+
+    private static final Splitter TAG_SPLITTER = Splitter.on('+');
+    private static final Splitter QUERY_SPLITTER = Splitter.on(' ').omitEmptyStrings();
+    private static final Pattern QUERY_GROUP_BOUNDARY = Pattern.compile("\"?\\)\\((\\d+,)?\"?");
+
+    private final CompiledParseSet parseSet;
+    private final Map<String, Postings> tokenPostings;
+    private final Map<String, Postings> sentencePostings;
+
+    private TagIndex(CompiledParseSet parseSet, Map<String, Postings> tokenPostings, Map<String, Postings> sentencePostings) {
+        this.parseSet = parseSet;
+        this.tokenPostings = tokenPostings;
+        this.sentencePostings = sentencePostings;
+    }
+
+    /**
+     * Usage: {@code TagIndex <compiled parse set> <query> [evaluate]}. The index is kept next to the parse set and built
+     * if it is not there. With {@code evaluate}, the matching tokens are evaluated with
+     * {@link SabanciMetuTreeBankAnalysisFormatter2}.
+     */
+    public static void main(String[] args) throws IOException {
+        final Path parseSetPath = Paths.get(args[0]);
+        final Path indexPath = Paths.get(args[0].replaceAll("\\.bin$", "") + ".tags");
+        final String query = args[1];
+
+        final CompiledParseSet parseSet = CompiledParseSet.open(parseSetPath);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final TagIndex index;
+        if (Files.exists(indexPath)) {
+            index = open(indexPath, parseSet);
+            System.out.println("Opened index of " + index.termCount() + " terms in " + stopwatch);
+        } else {
+            index = build(parseSet);
+            index.save(indexPath);
+            System.out.println("Built index of " + index.termCount() + " terms into " + indexPath
+                    + " (" + Files.size(indexPath) + " bytes) in " + stopwatch);
+        }
+
+        final long start = System.nanoTime();
+        final int[] tokens = index.tokens(query);
+        final int[] sentences = index.sentences(query);
+        final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+        System.out.println("Tokens                    :\t\t" + tokens.length);
+        System.out.println("Sentences                 :\t\t" + sentences.length);
+        System.out.println("Query micros              :\t\t" + micros);
+        final List<Pair<String, String>> lines = index.lines(tokens);
+        for (int i = 0; i < Math.min(20, lines.size()); i++) {
+            System.out.println("\t" + tokens[i] + "\t" + lines.get(i).getLeft() + "=" + lines.get(i).getRight());
+        }
+
+        if (args.length > 2 && "evaluate".equals(args[2])) {
+            final EvaluationResult result = new ParseSetEvaluator(MorphologySnapshot.shared(),
+                    new SabanciMetuTreeBankAnalysisFormatter2(true), false).evaluate(lines);
+            System.out.println("Number of words parsed " + result.getNumberOfSurfaces());
+            result.printSummary(System.out);
+        }
+    }
+
+    public static TagIndex build(CompiledParseSet parseSet) {
+        final Map<String, PostingsBuilder> tokens = new HashMap<>();
+        final Map<String, PostingsBuilder> sentences = new HashMap<>();
+        final List<List<String>> termsOfParse = new ArrayList<>(Collections.nCopies(parseSet.distinctParseCount(), null));
+
+        for (int sentence = 0; sentence < parseSet.sentenceCount(); sentence++) {
+            final int to = parseSet.sentenceStart(sentence + 1);
+            for (int token = parseSet.sentenceStart(sentence); token < to; token++) {
+                final int parseId = parseSet.parseId(token);
+                List<String> terms = termsOfParse.get(parseId);
+                if (terms == null) {
+                    terms = indexTerms(elements(parseSet.parse(parseId)));
+                    termsOfParse.set(parseId, terms);
+                }
+                for (String term : terms) {
+                    tokens.computeIfAbsent(term, t -> new PostingsBuilder()).add(token);
+                    sentences.computeIfAbsent(term, t -> new PostingsBuilder()).add(sentence);
+                }
+            }
+        }
+
+        final Map<String, Postings> tokenPostings = new HashMap<>(tokens.size() * 2);
+        final Map<String, Postings> sentencePostings = new HashMap<>(sentences.size() * 2);
+        tokens.forEach((term, builder) -> tokenPostings.put(term, builder.build()));
+        sentences.forEach((term, builder) -> sentencePostings.put(term, builder.build()));
+        return new TagIndex(parseSet, tokenPostings, sentencePostings);
+    }
+
+    /**
+     * Layout:
+     * <pre>
+     *     header   : magic, version, hacks fingerprint, token count, sentence count, parse count, term count
+     *     per term : term (modified UTF-8), token postings, sentence postings
+     *     postings : value count, byte count, varint encoded deltas
+     * </pre>
+     */
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(DisambiguateSentences.parseResultReplaceHacksFingerprint());
+            out.writeInt(parseSet.tokenCount());
+            out.writeInt(parseSet.sentenceCount());
+            out.writeInt(parseSet.distinctParseCount());
+            out.writeInt(tokenPostings.size());
+            for (Map.Entry<String, Postings> entry : tokenPostings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+                sentencePostings.get(entry.getKey()).writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Opens an index written by {@link #save(Path)} for the given parse set
+     */
+    public static TagIndex open(Path path, CompiledParseSet parseSet) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            Validate.isTrue(in.readInt() == MAGIC, "Not a tag index");
+            final int version = in.readInt();
+            Validate.isTrue(version == VERSION, "Unsupported tag index version %d", version);
+            Validate.isTrue(in.readInt() == DisambiguateSentences.parseResultReplaceHacksFingerprint(),
+                    "Tag index was built with other replace hacks, build it again");
+            Validate.isTrue(in.readInt() == parseSet.tokenCount() && in.readInt() == parseSet.sentenceCount()
+                    && in.readInt() == parseSet.distinctParseCount(), "Tag index was built for another parse set");
+
+            final int termCount = in.readInt();
+            final Map<String, Postings> tokenPostings = new HashMap<>(termCount * 2);
+            final Map<String, Postings> sentencePostings = new HashMap<>(termCount * 2);
+            for (int i = 0; i < termCount; i++) {
+                final String term = in.readUTF();
+                tokenPostings.put(term, Postings.readFrom(in));
+                sentencePostings.put(term, Postings.readFrom(in));
+            }
+            return new TagIndex(parseSet, tokenPostings, sentencePostings);
+        }
+    }
+
+    public int termCount() {
+        return tokenPostings.size();
+    }
+
+    /**
+     * @return ids of the tokens whose expected parse matches the query, ascending
+     */
+    public int[] tokens(String query) {
+        int[] tokens = null;
+        for (String fragment : QUERY_SPLITTER.split(query)) {
+            final int[] matching = matchingTokens(queryElements(fragment));
+            tokens = tokens == null ? matching : intersect(tokens, matching);
+        }
+        Validate.isTrue(tokens != null, "Empty query");
+        return tokens;
+    }
+
+    /**
+     * @return ids of the sentences that have a token matching the query, ascending
+     */
+    public int[] sentences(String query) {
+        final List<String> fragments = QUERY_SPLITTER.splitToList(query);
+        if (fragments.size() == 1) {
+            final List<String> terms = queryTerms(queryElements(fragments.get(0)));
+            if (terms.size() == 1) {
+                final Postings postings = sentencePostings.get(terms.get(0));
+                return postings == null ? new int[0] : postings.decode();
+            }
+        }
+        return sentencesOf(tokens(query));
+    }
+
+    /**
+     * @return lines of the given tokens of the parse set, in the given order
+     */
+    public List<Pair<String, String>> lines(int[] tokens) {
+        return new TokenLineList(parseSet.lines(), tokens);
+    }
+
+    private int[] matchingTokens(List<String> elements) {
+        final List<String> terms = queryTerms(elements);
+        int[] candidates = null;
+        for (String term : terms) {
+            final Postings postings = tokenPostings.get(term);
+            if (postings == null)
+                return new int[0];
+            final int[] tokens = postings.decode();
+            candidates = candidates == null ? tokens : intersect(candidates, tokens);
+        }
+        if (terms.size() == 1)
+            return candidates;
+
+        // every pair matched somewhere in the parse, the sequence as a whole is checked once per distinct parse
+        final Map<Integer, Boolean> matchingParses = new HashMap<>();
+        int size = 0;
+        for (int token : candidates) {
+            final int parseId = parseSet.parseId(token);
+            if (matchingParses.computeIfAbsent(parseId, id -> Collections.indexOfSubList(elements(parseSet.parse(id)), elements) >= 0))
+                candidates[size++] = token;
+        }
+        return Arrays.copyOf(candidates, size);
+    }
+
+    private int[] sentencesOf(int[] tokens) {
+        final PostingsBuilder sentences = new PostingsBuilder();
+        int sentence = 0;
+        for (int token : tokens) {
+            while (parseSet.sentenceStart(sentence + 1) <= token) {
+                sentence++;
+            }
+            sentences.add(sentence);
+        }
+        return Arrays.copyOf(sentences.values, sentences.size);
+    }
+
+    /**
+     * @return lemma and tags of the parse, with {@link #GROUP_BOUNDARY} between the derivation groups; empty if the
+     * parse doesn't have the {@code (1,"..")(2,"..")..} shape
+     */
+    static List<String> elements(String parse) {
+        final List<List<String>> groups = GoldParse.groups(parse);
+        if (groups == null)
+            return Collections.emptyList();
+
+        final List<String> elements = new ArrayList<>();
+        for (List<String> group : groups) {
+            if (!elements.isEmpty())
+                elements.add(GROUP_BOUNDARY);
+            elements.addAll(group);
+        }
+        return elements;
+    }
+
+    /**
+     * Elements of a query fragment; an optional {@code (n,"} at the start, {@code ")} at the end and {@code +} at
+     * either end are dropped
+     */
+    static List<String> queryElements(String fragment) {
+        final String[] groups = QUERY_GROUP_BOUNDARY.split(fragment.replaceFirst("^\\(\\d+,\"", "").replaceFirst("\"\\)$", ""), -1);
+        final List<String> elements = new ArrayList<>();
+        for (int i = 0; i < groups.length; i++) {
+            if (i > 0)
+                elements.add(GROUP_BOUNDARY);
+            final List<String> tags = TAG_SPLITTER.splitToList(groups[i]);
+            final int from = i == 0 && tags.size() > 1 && tags.get(0).isEmpty() ? 1 : 0;
+            final int to = i == groups.length - 1 && tags.size() > 1 && tags.get(tags.size() - 1).isEmpty() ? tags.size() - 1 : tags.size();
+            elements.addAll(tags.subList(from, to));
+        }
+        Validate.isTrue(!elements.get(0).equals(GROUP_BOUNDARY) && !elements.get(elements.size() - 1).equals(GROUP_BOUNDARY)
+                && !elements.contains(""), "Invalid query fragment '%s'", fragment);
+        return elements;
+    }
+
+    /**
+     * Terms a parse is indexed under: every lemma and tag by itself, and every two consecutive ones
+     */
+    private static List<String> indexTerms(List<String> elements) {
+        final List<String> terms = new ArrayList<>();
+        for (String element : elements) {
+            if (!element.equals(GROUP_BOUNDARY))
+                terms.add(element);
+        }
+        terms.addAll(pairs(elements));
+        return terms;
+    }
+
+    /**
+     * Terms whose postings contain every match of a query fragment; a single lemma or tag, or its pairs
+     */
+    private static List<String> queryTerms(List<String> elements) {
+        return elements.size() == 1 ? elements : pairs(elements);
+    }
+
+    /**
+     * Every two consecutive elements: {@code Pass+Pos} in a group, {@code Verb")(Adj} across a group boundary
+     */
+    private static List<String> pairs(List<String> elements) {
+        final List<String> pairs = new ArrayList<>();
+        for (int i = 0; i < elements.size() - 1; i++) {
+            final String element = elements.get(i);
+            if (element.equals(GROUP_BOUNDARY))
+                continue;
+            final String next = elements.get(i + 1);
+            if (next.equals(GROUP_BOUNDARY))
+                pairs.add(element + GROUP_BOUNDARY + elements.get(i + 2));
+            else
+                pairs.add(element + '+' + next);
+        }
+        return pairs;
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        final int[] intersection = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                intersection[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(intersection, size);
+    }
+
+    /**
+     * Ascending ids, stored as varint encoded differences to the previous id
+     */
+    static final class Postings {
+        final int count;
+        final byte[] bytes;
+
+        Postings(int count, byte[] bytes) {
+            this.count = count;
+            this.bytes = bytes;
+        }
+
+        int[] decode() {
+            final int[] values = new int[count];
+            int position = 0;
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                previous += delta;
+                values[i] = previous;
+            }
+            return values;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        static Postings readFrom(DataInputStream in) throws IOException {
+            final int count = in.readInt();
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Postings(count, bytes);
+        }
+    }
+
+    /**
+     * Collects ascending ids, skipping repeats of the last one
+     */
+    private static final class PostingsBuilder {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size > 0 && values[size - 1] == value)
+                return;
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        Postings build() {
+            final byte[] bytes = new byte[size * 5];
+            int position = 0;
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int delta = values[i] - previous;
+                previous = values[i];
+                while ((delta & ~0x7F) != 0) {
+                    bytes[position++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                bytes[position++] = (byte) delta;
+            }
+            return new Postings(size, Arrays.copyOf(bytes, position));
+        }
+    }
+
+    private static final class TokenLineList extends AbstractList<Pair<String, String>> implements RandomAccess {
+        private final List<Pair<String, String>> lines;
+        private final int[] tokens;
+
+        TokenLineList(List<Pair<String, String>> lines, int[] tokens) {
+            this.lines = lines;
+            this.tokens = tokens;
+        }
+
+        @Override
+        public Pair<String, String> get(int index) {
+            return lines.get(tokens[index]);
+        }
+
+        @Override
+        public int size() {
+            return tokens.length;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package experiments;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads for tasks that mostly wait: reading and decompressing corpus files, and waiting for room in the analyzer
+ * pool of a {@link CorpusPipeline}.
+ * <p>
+ * This is the Java 21 version, compiled over the one in {@code src/main/java} by the {@code java21} profile. A reader
+ * that waits for the analyzers parks its virtual thread instead of holding a platform thread, so every file can have a
+ * reader of its own.
+ **/
+final class ReaderThreads {
+
+    private ReaderThreads() {
+    }
+
+    /**
+     * Whether {@link #newThreadPerTaskExecutor()} starts virtual threads in this build. A method and not a constant, so
+     * that callers compiled against the other version don't inline it.
+     */
+    static boolean virtualThreads() {
+        return true;
+    }
+
+    /**
+     * @return executor that starts a virtual thread per task
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
@@ -0,0 +1,51 @@
+package experiments;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchEvaluationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void directoriesAndGlobsAreResolvedToSortedDistinctFiles() throws IOException {
+        final File splits = folder.newFolder("splits");
+        for (String name : new String[]{"dev-2.txt", "dev-1.txt.gz", "test-1.txt", "test-2.bin", "README.md"}) {
+            new File(splits, name).createNewFile();
+        }
+        new File(splits, "nested.txt").mkdir();
+
+        final String[] args = {"4", "out", splits.getPath() + "/dev-*", splits.getPath()};
+        final List<String> names = new ArrayList<>();
+        for (Path corpus : BatchEvaluation.corpora(args, 2)) {
+            names.add(corpus.getFileName().toString());
+        }
+        assertEquals("[dev-1.txt.gz, dev-2.txt, test-1.txt, test-2.bin]", names.toString());
+    }
+
+    @Test
+    public void corporaWithTheSameFileNameGetDistinctNames() throws IOException {
+        for (String name : new String[]{"a/dev.txt", "b/dev.txt", "b/c/test.txt"}) {
+            final File file = new File(folder.getRoot(), name);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+
+        final String root = folder.getRoot().getPath();
+        final List<Path> corpora = BatchEvaluation.corpora(new String[]{root + "/a", root + "/b/c/../dev.txt", root + "/b/c"}, 0);
+        assertEquals("[a/dev.txt, b/dev.txt, b/c/test.txt]", new ArrayList<>(BatchEvaluation.names(corpora).values()).toString());
+
+        // a single corpus is named after its file
+        assertEquals("[test.txt]", BatchEvaluation.names(corpora.subList(2, 3)).values().toString());
+    }
+}
@@ -0,0 +1,67 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CompiledParseSetTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameSentencesAsTextReader() throws IOException {
+        final List<List<Pair<String, String>>> expected = new ArrayList<>();
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset999.txt"))) {
+            List<Pair<String, String>> sentence;
+            while ((sentence = reader.nextSentence()) != null) {
+                expected.add(sentence);
+            }
+        }
+
+        final CompiledParseSet parseSet = compile();
+
+        assertEquals(expected.size(), parseSet.sentenceCount());
+        assertEquals(expected, parseSet.sentences());
+
+        final List<Pair<String, String>> expectedLines = new ArrayList<>();
+        expected.forEach(expectedLines::addAll);
+        assertEquals(expectedLines, parseSet.lines());
+
+        // random access, out of order
+        assertEquals(expected.get(1234), parseSet.sentence(1234));
+        assertEquals(expected.get(7), parseSet.sentence(7));
+        final List<Pair<String, String>> shard = new ArrayList<>(expected.get(10));
+        shard.addAll(expected.get(11));
+        assertEquals(shard, parseSet.lines(10, 12));
+
+        // decoded strings are shared
+        final int token = parseSet.sentenceStart(3);
+        assertSame(parseSet.lines().get(token).getRight(), parseSet.lines().get(token).getRight());
+    }
+
+    private CompiledParseSet compile() throws IOException {
+        final SimpleParseSetCompiler compiler = new SimpleParseSetCompiler();
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset999.txt"))) {
+            compiler.addAll(reader);
+        }
+
+        final Path file = folder.newFile("simpleparseset999.bin").toPath();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            compiler.writeTo(out);
+        }
+        return CompiledParseSet.open(file);
+    }
+}
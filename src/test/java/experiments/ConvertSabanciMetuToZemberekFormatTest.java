@@ -0,0 +1,150 @@
+package experiments;
+
+import com.google.common.base.Joiner;
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import zemberek.morphology.TurkishMorphology;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Converts the sentences of the parse set back to a parse set, in both input modes, on the calling thread and with an
+ * executor. The input has a few batches of sentences, so the order of the batches is checked too.
+ */
+public class ConvertSabanciMetuToZemberekFormatTest {
+
+    private static TurkishMorphology morphology;
+    private static List<List<String>> sentences;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        morphology = MorphologySnapshot.shared();
+
+        final List<List<String>> parseSet = new ArrayList<>();
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset999.txt"))) {
+            List<Pair<String, String>> sentence;
+            while ((sentence = reader.nextSentence()) != null) {
+                final List<String> surfaces = new ArrayList<>();
+                for (Pair<String, String> line : sentence) {
+                    surfaces.add(line.getLeft());
+                }
+                parseSet.add(surfaces);
+            }
+        }
+        sentences = new ArrayList<>();
+        while (sentences.size() < 600) {
+            sentences.addAll(parseSet);
+        }
+    }
+
+    @Test
+    public void textMode() throws IOException {
+        final StringBuilder input = new StringBuilder();
+        final List<List<String>> lines = new ArrayList<>();
+        for (List<String> sentence : sentences) {
+            final String line = Joiner.on(' ').join(sentence);
+            input.append(line).append("\n\n");
+            lines.add(Collections.singletonList(line));
+        }
+
+        final byte[] output = assertSameWithAndWithoutExecutor(new ConvertSabanciMetuToZemberekFormat(morphology,
+                new SabanciMetuTreeBankAnalysisFormatter2(true), false), input.toString(), lines);
+        assertSentences(output, null);
+    }
+
+    @Test
+    public void tokensMode() throws IOException {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < sentences.size(); i++) {
+            for (String token : sentences.get(i)) {
+                input.append(token).append('\n');
+            }
+            // both sentence ends
+            input.append(i % 2 == 0 ? "\n" : SimpleParseSetReader.END_OF_SENTENCE + "\n");
+        }
+
+        final byte[] output = assertSameWithAndWithoutExecutor(new ConvertSabanciMetuToZemberekFormat(morphology,
+                new SabanciMetuTreeBankAnalysisFormatter2(true), true), input.toString(), sentences);
+        // the given tokenization is kept
+        assertSentences(output, sentences);
+    }
+
+    /**
+     * @return output of the converter, which must be the sentences converted one by one in input order
+     */
+    private static byte[] assertSameWithAndWithoutExecutor(ConvertSabanciMetuToZemberekFormat converter, String input,
+                                                           List<List<String>> inputSentences) throws IOException {
+        final ByteArrayOutputStream oneByOne = new ByteArrayOutputStream();
+        for (List<String> sentence : inputSentences) {
+            oneByOne.write(converter.convert(Collections.singletonList(sentence)));
+        }
+
+        final byte[] sequential = convert(converter, input, null);
+        assertArrayEquals(oneByOne.toByteArray(), sequential);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertArrayEquals(sequential, convert(converter, input, executor));
+        } finally {
+            executor.shutdown();
+        }
+        return sequential;
+    }
+
+    private static byte[] convert(ConvertSabanciMetuToZemberekFormat converter, String input, ExecutorService executor) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long converted = converter.convert(new BufferedReader(new StringReader(input)), out, executor);
+        assertEquals(sentences.size(), converted);
+        return out.toByteArray();
+    }
+
+    /**
+     * Every sentence ends with exactly one end of sentence marker, and the output reads back as a parse set
+     *
+     * @param expectedSurfaces surfaces of the sentences, null if the morphology tokenized them
+     */
+    private static void assertSentences(byte[] output, List<List<String>> expectedSurfaces) throws IOException {
+        final String text = new String(output, StandardCharsets.UTF_8);
+        final String[] lines = text.split("\n", -1);
+        int markers = 0;
+        for (int i = 0; i < lines.length - 1; i++) {
+            if (SimpleParseSetReader.END_OF_SENTENCE.equals(lines[i])) {
+                assertFalse("empty sentence before line " + i, i == 0 || SimpleParseSetReader.END_OF_SENTENCE.equals(lines[i - 1]));
+                markers++;
+            }
+        }
+        assertEquals(SimpleParseSetReader.END_OF_SENTENCE, lines[lines.length - 2]);
+        assertEquals("", lines[lines.length - 1]);
+        assertEquals(sentences.size(), markers);
+
+        try (SimpleParseSetReader reader = new SimpleParseSetReader(new StringReader(text))) {
+            for (int i = 0; i < sentences.size(); i++) {
+                final List<Pair<String, String>> sentence = reader.nextSentence();
+                if (expectedSurfaces != null) {
+                    final List<String> surfaces = new ArrayList<>();
+                    for (Pair<String, String> line : sentence) {
+                        surfaces.add(line.getLeft());
+                    }
+                    assertEquals(expectedSurfaces.get(i), surfaces);
+                }
+            }
+            assertNull(reader.nextSentence());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class CorpusPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void summaryIsSameAsEvaluatingTheFilesInOrder() throws IOException {
+        final List<List<String>> sentences = new ArrayList<>();
+        List<String> sentence = new ArrayList<>();
+        for (String line : Resources.readLines(Resources.getResource("simpleparseset999.txt"), StandardCharsets.UTF_8)) {
+            sentence.add(line);
+            if (SimpleParseSetReader.END_OF_SENTENCE.equals(line)) {
+                sentences.add(sentence);
+                sentence = new ArrayList<>();
+            }
+        }
+
+        // first half in one plain file, the rest in 40 gzipped ones
+        final List<Path> corpora = new ArrayList<>();
+        final int half = sentences.size() / 2;
+        corpora.add(write(0, sentences.subList(0, half)));
+        for (int i = 0; i < 40; i++) {
+            final int rest = sentences.size() - half;
+            corpora.add(write(i + 1, sentences.subList(half + rest * i / 40, half + rest * (i + 1) / 40)));
+        }
+
+        final List<Pair<String, String>> lines;
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset999.txt"))) {
+            lines = reader.nextLines(100_000);
+        }
+
+        // the pipeline is what is tested here, not the analyses: some surfaces get no candidates, some a wrong one
+        final ParseSetEvaluator evaluator = new ParseSetEvaluator(null, null, false).withCache(new FakeCandidates());
+
+        final EvaluationResult expected = evaluator.evaluate(lines);
+        final EvaluationResult pipelined = new CorpusPipeline(evaluator, 3, CorpusPipeline.Readers.PLATFORM, 2).evaluate(corpora);
+        assertEquals(lines.size(), pipelined.getNumberOfSurfaces());
+        assertEquals(summary(expected), summary(pipelined));
+
+        // virtual threads in the java21 build, a platform thread per file otherwise
+        final EvaluationResult threadPerFile = new CorpusPipeline(evaluator, 3, CorpusPipeline.Readers.VIRTUAL, 1).evaluate(corpora);
+        assertEquals(summary(expected), summary(threadPerFile));
+
+        // the first half compiled
+        corpora.set(0, compile(corpora.get(0)));
+        final EvaluationResult compiled = new CorpusPipeline(evaluator, 3, CorpusPipeline.Readers.PLATFORM, 2).evaluate(corpora);
+        assertEquals(summary(expected), summary(compiled));
+    }
+
+    private Path compile(Path text) throws IOException {
+        final SimpleParseSetCompiler compiler = new SimpleParseSetCompiler();
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(text)) {
+            compiler.addAll(reader);
+        }
+        final Path file = folder.getRoot().toPath().resolve("part-0" + CompiledParseSet.EXTENSION);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            compiler.writeTo(out);
+        }
+        return file;
+    }
+
+    private Path write(int index, List<List<String>> sentences) throws IOException {
+        final boolean gzip = index > 0;
+        final Path file = folder.getRoot().toPath().resolve("part-" + index + (gzip ? ".txt.gz" : ".txt"));
+        try (Writer writer = new OutputStreamWriter(gzip ? new GZIPOutputStream(Files.newOutputStream(file)) : Files.newOutputStream(file),
+                StandardCharsets.UTF_8)) {
+            for (List<String> sentence : sentences) {
+                for (String line : sentence) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        }
+        return file;
+    }
+
+    private static String summary(EvaluationResult result) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        result.printSummary(new PrintStream(bytes));
+        return bytes.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package experiments;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The compiled skip filters and replace hacks of {@link DisambiguateSentences} against the plain {@code contains} and
+ * {@code replace} loops they replaced
+ */
+public class DisambiguateSentencesTest {
+
+    @Test
+    public void filtersAndReplaceHacksAreTheSameAsThePlainLoops() throws IOException {
+        final List<String> lines = Resources.readLines(Resources.getResource("simpleparseset999.txt"), StandardCharsets.UTF_8);
+        final Multiset<String> expectedHits = HashMultiset.create();
+        final Multiset<String> hits = HashMultiset.create();
+        final SequentialReplacer.RuleListener counter = DisambiguateSentences.replaceHackCounter(hits);
+
+        int skippedSurfaces = 0;
+        int skippedParses = 0;
+        for (String line : lines) {
+            if (SimpleParseSetReader.END_OF_SENTENCE.equals(line))
+                continue;
+
+            final String[] split = line.split("=", 2);
+            final String surface = split[0];
+            String expected = split[1];
+            for (Map.Entry<String, String> hack : DisambiguateSentences.PARSE_RESULT_REPLACE_HACK_MAP.entrySet()) {
+                final String replaced = expected.replace(hack.getKey(), hack.getValue());
+                if (!replaced.equals(expected))
+                    expectedHits.add(hack.getKey());
+                expected = replaced;
+            }
+
+            final Pair<String, String> parsed = DisambiguateSentences.parseLine(line, counter);
+            assertEquals(line, Pair.of(surface, expected), parsed);
+
+            final boolean skippedSurface = DisambiguateSentences.SURFACES_TO_SKIP.contains(surface);
+            assertEquals(line, skippedSurface, DisambiguateSentences.isSkippedSurface(surface));
+            if (skippedSurface)
+                skippedSurfaces++;
+
+            String expectedRule = null;
+            for (String rule : DisambiguateSentences.EXPECTED_PARSE_RESULTS_TO_SKIP) {
+                if (expected.contains(rule)) {
+                    expectedRule = rule;
+                    break;
+                }
+            }
+            assertEquals(line, expectedRule, DisambiguateSentences.skippedExpectedParseResultRule(expected));
+            assertEquals(line, expectedRule != null, DisambiguateSentences.isSkippedExpectedParseResult(expected));
+            if (expectedRule != null)
+                skippedParses++;
+        }
+
+        assertEquals(expectedHits, hits);
+        // the parse set exercises all three
+        assertTrue(skippedSurfaces > 0 && skippedParses > 0 && !hits.isEmpty());
+    }
+
+    @Test
+    public void replaceHackHitsBelongToTheReaderThatReadTheLines() throws IOException {
+        final Multiset<String> first;
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset999.txt"))) {
+            while (reader.nextLine() != null) {
+                // reads everything
+            }
+            first = HashMultiset.create(reader.replaceHackHits());
+        }
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset999.txt"))) {
+            while (reader.nextLine() != null) {
+                // reads everything again
+            }
+            assertEquals(first, reader.replaceHackHits());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package experiments;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ErrorTableTest {
+
+    @Test
+    public void exactTableOrdersByCountThenMessage() {
+        final ErrorTable table = new ErrorTable(0);
+        table.add("b", "x", 1);
+        table.add("a", "y", 2);
+        table.add("a", "x", 2);
+        table.add("c", "x", 5);
+
+        final ErrorTable other = new ErrorTable(0);
+        other.add("b", "x", 1);
+        other.add("d", "z", 1);
+        table.merge(other);
+
+        final List<String> printed = new ArrayList<>();
+        for (ErrorTable.Entry entry : table.top(Integer.MAX_VALUE, 2, (surface, expected) -> surface + "\t" + expected)) {
+            printed.add(entry.message + "=" + entry.count);
+        }
+        assertEquals("[c\tx=5, a\tx=2, a\ty=2, b\tx=2]", printed.toString());
+        assertEquals(0, table.floor());
+    }
+
+    @Test
+    public void idsOfTheDictionaryAndStringsCountTheSame() {
+        final StringDictionary dictionary = new StringDictionary();
+        final ErrorTable byIds = new ErrorTable(0, dictionary);
+        final ErrorTable byStrings = new ErrorTable(0);
+        for (String[] pair : new String[][]{{"a", "x"}, {"b", "x"}, {"a", "x"}, {"ç", "y"}}) {
+            byIds.add(dictionary.id(pair[0]), dictionary.id(pair[1]), 1);
+            byStrings.add(pair[0], pair[1], 1);
+        }
+        assertEquals(messages(byStrings), messages(byIds));
+
+        // tables of different dictionaries are merged by string
+        byIds.merge(byStrings);
+        assertEquals("[a\tx=4, b\tx=2, ç\ty=2]", messages(byIds).toString());
+    }
+
+    private static List<String> messages(ErrorTable table) {
+        final List<String> printed = new ArrayList<>();
+        for (ErrorTable.Entry entry : table.top(Integer.MAX_VALUE, 1, (surface, expected) -> surface + "\t" + expected)) {
+            printed.add(entry.message + "=" + entry.count);
+        }
+        return printed;
+    }
+
+    @Test
+    public void boundedTableKeepsOnlyTheStringsOfItsPairs() {
+        final StringDictionary dictionary = new StringDictionary();
+        final ErrorTable byStrings = new ErrorTable(100, dictionary);
+        final ErrorTable byIds = new ErrorTable(100, dictionary);
+        for (int i = 0; i < 10000; i++) {
+            byStrings.add("noise" + i, "e", 1);
+            byStrings.add("frequent", "e", 1);
+        }
+        // nothing was interned for the string pairs
+        assertEquals(0, dictionary.size());
+
+        byIds.add(dictionary.id("frequent"), dictionary.id("e"), 5);
+        byIds.add(dictionary.id("rare"), dictionary.id("e"), 1);
+        byStrings.merge(byIds);
+        assertTrue(byStrings.size() <= 200);
+
+        final List<String> printed = messages(byStrings);
+        assertEquals("frequent\te=10005", printed.get(0));
+        // ids and strings of the same pair are counted together
+        assertEquals(1, printed.stream().filter(message -> message.startsWith("frequent\t")).count());
+    }
+
+    @Test
+    public void boundedTableFindsTheHeavyHitters() {
+        final Random random = new Random(42);
+        final Multiset<String> exact = HashMultiset.create();
+        final ErrorTable[] parts = {new ErrorTable(200), new ErrorTable(200), new ErrorTable(200)};
+        for (int i = 0; i < 300000; i++) {
+            // zipf-like: a few surfaces occur very often, most of them a few times
+            final String surface = "s" + (int) Math.pow(100000, random.nextDouble());
+            exact.add(surface);
+            parts[i % parts.length].add(surface, "e", 1);
+        }
+        final ErrorTable table = parts[0];
+        table.merge(parts[1]);
+        table.merge(parts[2]);
+
+        assertTrue(table.size() < 400);
+        assertTrue(table.floor() > 0);
+
+        final List<ErrorTable.Entry> top = table.top(5, 1, (surface, expected) -> surface);
+        final List<Multiset.Entry<String>> expected = new ArrayList<>(Multisets.copyHighestCountFirst(exact).entrySet()).subList(0, 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expected.get(i).getElement(), top.get(i).message);
+        }
+
+        final List<String> kept = new ArrayList<>();
+        for (ErrorTable.Entry entry : table.top(Integer.MAX_VALUE, 1, (surface, e) -> surface)) {
+            final int trueCount = exact.count(entry.message);
+            assertTrue(entry.count >= trueCount);
+            assertTrue(entry.count - entry.error <= trueCount);
+            kept.add(entry.message);
+        }
+        for (Multiset.Entry<String> entry : exact.entrySet()) {
+            if (entry.getCount() > table.floor())
+                assertTrue(entry.getElement(), kept.contains(entry.getElement()));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package experiments;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.SingleAnalysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EvaluationDaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path tokenFile;
+    private Path corpora;
+
+    @Before
+    public void setUp() throws IOException {
+        tokenFile = folder.getRoot().toPath().resolve("daemon.token");
+        corpora = folder.newFolder("corpora").toPath();
+    }
+
+    private EvaluationDaemon newDaemon(TurkishMorphology morphology, int threads) throws IOException {
+        return new EvaluationDaemon(morphology, EvaluationDaemon.defaultFormatters(), 0, threads, tokenFile, corpora);
+    }
+
+    @Test
+    public void concurrentClientsGetTheSameAnalysesAsTheFormatter() throws Exception {
+        final TurkishMorphology morphology = MorphologySnapshot.shared();
+        final ExecutorService clients = Executors.newFixedThreadPool(3);
+        try (EvaluationDaemon daemon = newDaemon(morphology, 2)) {
+            final Thread server = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            server.start();
+
+            final List<String> surfaces = Arrays.asList("şarklı", "değil", "taranmış", ".", "xqzw");
+            final List<Future<List<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                responses.add(clients.submit(() -> {
+                    try (EvaluationClient client = new EvaluationClient(daemon.port(), tokenFile)) {
+                        assertEquals(Arrays.asList("pong"), client.request("ping"));
+                        final List<String> request = new ArrayList<>(Arrays.asList("analyze", "sabanci2"));
+                        request.addAll(surfaces);
+                        return client.request(request);
+                    }
+                }));
+            }
+
+            final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
+            final List<String> expected = new ArrayList<>();
+            for (String surface : surfaces) {
+                final StringBuilder line = new StringBuilder(surface);
+                for (SingleAnalysis analysis : morphology.analyze(surface)) {
+                    line.append('\t').append(formatter.format(analysis));
+                }
+                expected.add(line.toString());
+            }
+            for (Future<List<String>> response : responses) {
+                assertEquals(expected, response.get());
+            }
+
+            try (EvaluationClient client = new EvaluationClient(daemon.port(), tokenFile)) {
+                try {
+                    client.request("analyze", "nosuchformatter", "değil");
+                    fail();
+                } catch (IllegalStateException e) {
+                    assertTrue(e.getMessage(), e.getMessage().contains("nosuchformatter"));
+                }
+
+                final List<String> stats = client.request("stats");
+                assertTrue(stats.toString(), stats.get(1).startsWith("analyze") && stats.get(1).contains(" 3 "));
+                assertEquals(Arrays.asList("bye"), client.request("shutdown"));
+            }
+            server.join();
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    @Test
+    public void closingTheDaemonClosesIdleConnections() throws Exception {
+        final EvaluationDaemon daemon = newDaemon(MorphologySnapshot.shared(), 1);
+        final Thread server = serve(daemon);
+
+        try (EvaluationClient client = new EvaluationClient(daemon.port(), tokenFile)) {
+            assertEquals(Arrays.asList("pong"), client.request("ping"));
+            daemon.close();
+            server.join();
+            try {
+                client.request("ping");
+                fail();
+            } catch (IOException e) {
+                // the connection was closed by the daemon
+            }
+        }
+    }
+
+    @Test
+    public void onlyClientsWithTheTokenAreServed() throws Exception {
+        try (EvaluationDaemon daemon = newDaemon(MorphologySnapshot.shared(), 1)) {
+            final Thread server = serve(daemon);
+            if (Files.getFileStore(tokenFile).supportsFileAttributeView("posix"))
+                assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(tokenFile));
+
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.port());
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+                out.write("ping\n");
+                out.flush();
+                assertEquals("ERROR Unauthorized", in.readLine());
+                assertNull(in.readLine());
+            }
+
+            final Path wrongToken = folder.newFile("wrong.token").toPath();
+            Files.write(wrongToken, "0000".getBytes(StandardCharsets.UTF_8));
+            try {
+                new EvaluationClient(daemon.port(), wrongToken).close();
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("Unauthorized", e.getMessage());
+            }
+
+            try (EvaluationClient client = new EvaluationClient(daemon.port(), tokenFile)) {
+                assertEquals(Arrays.asList("bye"), client.request("shutdown"));
+            }
+            server.join();
+        }
+        assertFalse(Files.exists(tokenFile));
+    }
+
+    @Test
+    public void corporaOutsideOfTheCorpusDirectoryAreNotReadAndFilesAreNotQuoted() throws Exception {
+        final Path outside = folder.newFile("secret.txt").toPath();
+        Files.write(outside, "secret line without a separator\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(corpora.resolve("broken.txt"), "another secret line\n".getBytes(StandardCharsets.UTF_8));
+        boolean linked;
+        try {
+            Files.createSymbolicLink(corpora.resolve("link.txt"), outside);
+            linked = true;
+        } catch (IOException | UnsupportedOperationException e) {
+            linked = false;
+        }
+
+        try (EvaluationDaemon daemon = newDaemon(MorphologySnapshot.shared(), 1)) {
+            final Thread server = serve(daemon);
+            try (EvaluationClient client = new EvaluationClient(daemon.port(), tokenFile)) {
+                final List<String> corpusNames = new ArrayList<>(Arrays.asList("../secret.txt", outside.toString(), "broken.txt", "nosuchcorpus.txt"));
+                if (linked)
+                    corpusNames.add("link.txt");
+                for (String corpus : corpusNames) {
+                    try {
+                        client.request("evaluate", "sabanci2", corpus);
+                        fail(corpus);
+                    } catch (IllegalStateException e) {
+                        assertTrue(e.getMessage(), e.getMessage().contains(corpus) && !e.getMessage().contains("secret line"));
+                    }
+                }
+                assertEquals(Arrays.asList("pong"), client.request("ping"));
+                client.request("shutdown");
+            }
+            server.join();
+        }
+    }
+
+    private static Thread serve(EvaluationDaemon daemon) {
+        final Thread server = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
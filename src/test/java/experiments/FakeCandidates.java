@@ -0,0 +1,27 @@
+package experiments;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Candidates without a morphology, for tests of what is done with them: a third of the surfaces get none, a third a
+ * correct looking one and a third a wrong one
+ */
+final class FakeCandidates implements ParseSetEvaluator.CandidateSource {
+
+    private final GoldParse.TagTable tags = new GoldParse.TagTable();
+
+    @Override
+    public List<GoldParse> formattedAnalyses(String surface) {
+        if (surface.length() % 3 == 0)
+            return ImmutableList.of();
+        final String parse = surface.length() % 3 == 1 ? "(1,\"" + surface + "+Noun\")" : "(1,\"" + surface + "+Punc\")";
+        return ImmutableList.of(GoldParse.parse(parse, tags, true));
+    }
+
+    @Override
+    public GoldParse expectedParse(String expected) {
+        return GoldParse.parse(expected, tags, false);
+    }
+}
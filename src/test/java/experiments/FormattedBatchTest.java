@@ -0,0 +1,78 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FormattedBatchTest {
+
+    @Test
+    public void slicesMatchWithoutStrings() {
+        final FormattedBatch batch = new FormattedBatch();
+        batch.add("(1,\"kitap+Noun+A3sg+Pnon+Nom\")");
+        batch.add("(1,\"kitap+Noun+A3sg+Pnon+Dat\")");
+        batch.add("");
+        batch.add("(1,\"kitap+Noun+A3sg+Pnon+Dat\")(2,\"Verb+Zero\")");
+
+        assertEquals(4, batch.size());
+        assertEquals(1, batch.indexOf("(1,\"kitap+Noun+A3sg+Pnon+Dat\")"));
+        assertEquals(2, batch.indexOf(""));
+        assertFalse(batch.contains("(1,\"kitap+Noun+A3sg+Pnon+Acc\")"));
+        assertEquals("(1,\"kitap+Noun+A3sg+Pnon+Dat\")(2,\"Verb+Zero\")", batch.slice(3).toString());
+
+        batch.clear();
+        assertTrue(batch.isEmpty());
+        assertEquals(-1, batch.indexOf(""));
+    }
+
+    /**
+     * The batch of the candidates of every surface of the parse set must be the candidates formatted one by one, also
+     * when the batch already holds slices
+     */
+    @Test
+    public void formatAllIsFormatOfEveryCandidate() throws IOException {
+        final List<Pair<String, String>> lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                Charset.forName("utf-8")).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+        final Set<String> surfaces = new LinkedHashSet<>();
+        for (Pair<String, String> line : lines) {
+            surfaces.add(line.getLeft());
+        }
+
+        final TurkishMorphology morphology = MorphologySnapshot.shared();
+        for (boolean addIndices : new boolean[]{true, false}) {
+            final List<BatchAnalysisFormatter> formatters = Arrays.asList(new SabanciMetuTreeBankAnalysisFormatter(addIndices),
+                    new SabanciMetuTreeBankAnalysisFormatter2(addIndices), new SabanciMetuTreeBankAnalysisFormatter3(addIndices));
+            for (BatchAnalysisFormatter formatter : formatters) {
+                final FormattedBatch batch = new FormattedBatch();
+                for (String surface : surfaces) {
+                    final WordAnalysis analysis = morphology.analyze(surface);
+                    batch.clear();
+                    batch.add(surface);
+                    formatter.formatAll(analysis, batch);
+
+                    assertEquals(surface, analysis.analysisCount() + 1, batch.size());
+                    assertEquals(surface, batch.slice(0).toString());
+                    int i = 1;
+                    for (SingleAnalysis candidate : analysis) {
+                        assertEquals(formatter.getClass().getSimpleName() + " " + surface, formatter.format(candidate),
+                                batch.slice(i++).toString());
+                    }
+                }
+            }
+        }
+    }
+}
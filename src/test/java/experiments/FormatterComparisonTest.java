@@ -0,0 +1,57 @@
+package experiments;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FormatterComparisonTest {
+
+    @Test
+    public void summariesAreSameAsSeparateRuns() throws IOException {
+        final TurkishMorphology morphology = MorphologySnapshot.shared();
+        final List<Pair<String, String>> lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                StandardCharsets.UTF_8).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+        final Map<String, AnalysisFormatter> formatters = ImmutableMap.of(
+                "sabanci1", new SabanciMetuTreeBankAnalysisFormatter(true),
+                "sabanci2", new SabanciMetuTreeBankAnalysisFormatter2(true));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final FormatterComparison.Result result;
+        try {
+            result = new FormatterComparison(morphology, formatters, executor, 333).compare(lines);
+        } finally {
+            executor.shutdown();
+        }
+
+        for (Map.Entry<String, AnalysisFormatter> entry : formatters.entrySet()) {
+            final EvaluationResult separate = new ParseSetEvaluator(morphology, entry.getValue(), false).evaluate(lines);
+            assertEquals(entry.getKey(), summary(separate), summary(result.result(entry.getKey())));
+        }
+
+        // the rules of the second formatter are there because the first one misses some parses
+        final int difference = result.result("sabanci2").getCorrectParses() - result.result("sabanci1").getCorrectParses();
+        assertTrue(result.disagreementCount() >= Math.abs(difference));
+        assertTrue(result.disagreementCount() > 0);
+    }
+
+    private static String summary(EvaluationResult result) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        result.printSummary(new PrintStream(bytes));
+        return bytes.toString();
+    }
+}
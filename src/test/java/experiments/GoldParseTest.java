@@ -0,0 +1,95 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class GoldParseTest {
+
+    @Test
+    public void groups() {
+        assertEquals(Arrays.asList(Arrays.asList("şark", "Noun", "A3sg"), Arrays.asList("Adj", "With")),
+                GoldParse.groups("(1,\"şark+Noun+A3sg\")(2,\"Adj+With\")"));
+        assertEquals(Arrays.asList(Arrays.asList("", "", "Punc")), GoldParse.groups("(1,\"++Punc\")"));
+
+        assertNull(GoldParse.groups(""));
+        assertNull(GoldParse.groups("(2,\"a+Noun\")"));
+        assertNull(GoldParse.groups("(1,\"a+Noun\") "));
+        assertNull(GoldParse.groups("(\"a+Noun\")"));
+    }
+
+    @Test
+    public void structure() {
+        final GoldParse.TagTable tags = new GoldParse.TagTable();
+        final GoldParse parse = GoldParse.parse("(1,\"şark+Noun+A3sg+Pnon+Nom\")(2,\"Adj+With\")(3,\"Noun+Zero+A3sg+Pnon+Nom\")", tags, true);
+        assertEquals(3, parse.groupCount());
+        assertEquals(GoldParse.parse("(1,\"şark+Verb\")", tags, true).lemma(), parse.lemma());
+
+        assertEquals(0, GoldParse.parse("(\"şark+Noun\")", tags, true).groupCount());
+    }
+
+    /**
+     * Equality and string form must be exactly the ones of the strings
+     */
+    @Test
+    public void sameAsStringsOnWholeParseSet() throws IOException {
+        final List<Pair<String, String>> lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                Charset.forName("utf-8")).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+
+        final GoldParse.TagTable tags = new GoldParse.TagTable();
+        final Map<GoldParse, String> strings = new HashMap<>();
+        for (Pair<String, String> line : lines) {
+            final GoldParse parse = GoldParse.parse(line.getRight(), tags, true);
+            assertEquals(line.getRight(), parse.toString());
+            assertEquals(parse, GoldParse.parse(line.getRight(), tags, false));
+
+            final String previous = strings.put(parse, line.getRight());
+            if (previous != null)
+                assertEquals(previous, line.getRight());
+        }
+
+        assertEquals(GoldParse.parse("(1,\"a+Noun\")", tags, true), GoldParse.parse("(1,\"a+Noun\")", tags, true));
+        assertNotEquals(GoldParse.parse("(1,\"a+Noun\")", tags, true), GoldParse.parse("(1,\"a+Noun+Noun\")", tags, true));
+        assertNotEquals(GoldParse.parse("(1,\"a+Noun\")(2,\"Adj\")", tags, true), GoldParse.parse("(1,\"a+Noun+Adj\")", tags, true));
+        assertNotEquals(GoldParse.parse("(1,\"a+Noun\")", tags, true), GoldParse.parse("(\"a+Noun\")", tags, true));
+    }
+
+    @Test
+    public void onlyStructuredParsesAreInterned() {
+        final GoldParse.TagTable tags = new GoldParse.TagTable();
+        final GoldParse raw = GoldParse.parse("[kalem:Noun] kalem:Noun+A3sg", tags, true);
+        GoldParse.parse("(\"kalem+Noun+A3sg\")", tags, true);
+        assertEquals(0, tags.size());
+        assertEquals("[kalem:Noun] kalem:Noun+A3sg", raw.toString());
+        assertEquals(raw, GoldParse.parse("[kalem:Noun] kalem:Noun+A3sg", tags, false));
+
+        final GoldParse candidate = GoldParse.parse("(1,\"kalem+Noun+A3sg\")", tags, true);
+        assertEquals(3, tags.size());
+        assertEquals(candidate, GoldParse.parse("(1,\"kalem+Noun+A3sg\")", tags, false));
+
+        // an expected parse with a tag that no candidate has is not added and matches nothing
+        final GoldParse unknown = GoldParse.parse("(1,\"kalem+Noun+A3pl\")", tags, false);
+        assertEquals(3, tags.size());
+        assertEquals("(1,\"kalem+Noun+A3pl\")", unknown.toString());
+        assertNotEquals(candidate, unknown);
+    }
+
+    @Test
+    public void parsesOfDifferentTablesAreNotEqual() {
+        final GoldParse.TagTable first = new GoldParse.TagTable();
+        final GoldParse.TagTable second = new GoldParse.TagTable();
+        // same ids, different strings
+        assertNotEquals(GoldParse.parse("(1,\"a+Noun\")", first, true), GoldParse.parse("(1,\"b+Noun\")", second, true));
+    }
+}
@@ -0,0 +1,42 @@
+package experiments;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverTheRangeWithoutGaps() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE}) {
+            final int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value + "", LatencyHistogram.lowerBound(bucket) <= value);
+            assertTrue(value + "", value - LatencyHistogram.lowerBound(bucket) < LatencyHistogram.width(bucket));
+        }
+        for (int bucket = 1; bucket < LatencyHistogram.bucket(Long.MAX_VALUE); bucket++) {
+            assertEquals(LatencyHistogram.lowerBound(bucket - 1) + LatencyHistogram.width(bucket - 1), LatencyHistogram.lowerBound(bucket));
+        }
+    }
+
+    @Test
+    public void quantilesAreWithinTheBucketPrecision() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final long[] values = new long[100000];
+        final Random random = new Random(42);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000 + random.nextInt(1000000);
+            histogram.record(values[i]);
+        }
+        java.util.Arrays.sort(values);
+
+        assertEquals(values.length, histogram.count());
+        assertEquals(values[values.length - 1], histogram.max());
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            final long exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            assertEquals(exact, histogram.valueAt(quantile), exact * 0.04);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package experiments;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import zemberek.core.turkish.PrimaryPos;
+import zemberek.core.turkish.SecondaryPos;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.lexicon.DictionaryItem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LexemePrefixesTest {
+
+    @Test
+    public void prefixesAreFormattedOncePerDictionaryItem() {
+        final TurkishMorphology morphology = MorphologySnapshot.shared();
+        final LexemePrefixes prefixes = new LexemePrefixes(ImmutableSet.of(Pair.of(PrimaryPos.Adverb, SecondaryPos.Time)));
+
+        for (String word : new String[]{"kitap", "kitaba", "kitaplar", "yarın", "ben", "bana"}) {
+            for (SingleAnalysis analysis : morphology.analyze(word)) {
+                final DictionaryItem item = analysis.getDictionaryItem();
+                final String prefix = prefixes.of(item);
+                assertSame(prefix, prefixes.of(item));
+                assertTrue(prefix, prefix.startsWith(item.root + "+" + item.primaryPos.getStringForm()));
+                if (item.primaryPos == PrimaryPos.Adverb && item.secondaryPos == SecondaryPos.Time)
+                    assertEquals(item.root + "+Adv", prefix);
+            }
+        }
+        assertTrue(prefixes.stats().hitCount() > 0);
+    }
+}
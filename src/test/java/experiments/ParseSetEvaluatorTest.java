@@ -0,0 +1,150 @@
+package experiments;
+
+import com.google.common.collect.Multiset;
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParseSetEvaluatorTest {
+
+    private static TurkishMorphology morphology;
+    private static List<Pair<String, String>> lines;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        morphology = MorphologySnapshot.shared();
+        lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                Charset.forName("utf-8")).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+    }
+
+    @Test
+    public void parallelSummaryIsSameAsSequential() {
+        final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
+
+        final EvaluationResult sequential = new ParseSetEvaluator(morphology, formatter, true).evaluate(lines);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final EvaluationResult parallel;
+        try {
+            parallel = new ParseSetEvaluator(morphology, formatter, true, executor, 333).evaluate(lines);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(lines.size(), parallel.getNumberOfSurfaces());
+        assertEquals(summary(sequential), summary(parallel));
+        assertEquals(sequential.log.toString(), parallel.log.toString());
+    }
+
+    @Test
+    public void cachedSummaryIsSameAsUncached() {
+        final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
+
+        final EvaluationResult uncached = new ParseSetEvaluator(morphology, formatter, false).evaluate(lines);
+
+        final FormattedAnalysisCache cache = FormattedAnalysisCache.withMaxEntries(morphology, formatter, 1000);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final EvaluationResult cached;
+        try {
+            cached = new ParseSetEvaluator(morphology, formatter, false, executor, 333).withCache(cache).evaluate(lines);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(summary(uncached), summary(cached));
+        assertTrue(cache.stats().hitCount() > 0);
+        assertTrue(cache.stats().evictionCount() > 0);
+    }
+
+    @Test
+    public void deduplicatedSummaryIsSameAsTokenLevel() throws IOException {
+        final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
+
+        final EvaluationResult tokenLevel = new ParseSetEvaluator(morphology, formatter, false).evaluate(lines);
+
+        final Multiset<Pair<String, String>> counts;
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset999.txt"))) {
+            counts = ParseSetEvaluator.countLines(reader);
+        }
+        assertEquals(lines.size(), counts.size());
+        assertTrue(counts.elementSet().size() < lines.size());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final EvaluationResult deduplicated;
+        try {
+            deduplicated = new ParseSetEvaluator(morphology, formatter, false, executor, 333).evaluate(counts);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(summary(tokenLevel), summary(deduplicated));
+    }
+
+    @Test
+    public void internedLinesAreEvaluatedByIdLikeStrings() {
+        final List<Pair<String, String>> strings = new ArrayList<>(lines);
+        final EvaluationResult expected = new ParseSetEvaluator(null, null, true).withCache(new FakeCandidates()).evaluate(strings);
+
+        final EvaluationResult sequential = new ParseSetEvaluator(null, null, true).withCache(new FakeCandidates()).evaluate(lines);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final EvaluationResult parallel;
+        try {
+            parallel = new ParseSetEvaluator(null, null, true, executor, 333).withCache(new FakeCandidates()).evaluate(lines);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(expected.unparsable > 0 && expected.incorrectParses > 0 && expected.getCorrectParses() > 0);
+        for (EvaluationResult byIds : new EvaluationResult[]{sequential, parallel}) {
+            assertEquals(summary(expected), summary(byIds));
+            assertEquals(expected.log.toString(), byIds.log.toString());
+            assertEquals(expected.skippedSurfaceHits, byIds.skippedSurfaceHits);
+            assertEquals(expected.skippedExpectedParseResultHits, byIds.skippedExpectedParseResultHits);
+        }
+    }
+
+    /**
+     * The expected parse is seen first on a surface whose candidates don't have its lemma; it must still match the
+     * candidate of the next surface
+     */
+    @Test
+    public void expectedParseWithALemmaOfALaterSurfaceIsFound() {
+        final String expected = "(1,\"kitap+Punc\")";
+        final List<Pair<String, String>> lemmaLater = Arrays.asList(Pair.of("kitab", expected), Pair.of("kitap", expected));
+        final List<Pair<String, String>> lemmaFirst = Arrays.asList(Pair.of("kitap", expected), Pair.of("kitab", expected));
+
+        for (List<Pair<String, String>> order : Arrays.asList(lemmaLater, lemmaFirst)) {
+            final InternedLines interned = new InternedLines();
+            for (Pair<String, String> line : order) {
+                interned.append(line.getLeft(), line.getRight());
+            }
+            for (List<Pair<String, String>> lines : Arrays.asList(order, interned)) {
+                final EvaluationResult result = new ParseSetEvaluator(null, null, false).withCache(new FakeCandidates())
+                        .withSkipSets(false, false).evaluate(lines);
+                assertEquals(order.toString(), 1, result.getCorrectParses());
+            }
+        }
+    }
+
+    private static String summary(EvaluationResult result) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        result.printSummary(new PrintStream(bytes));
+        return bytes.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A candidate that {@link RuleChain#affectedBy} says is not affected by a change of the rules must have the same
+ * result under the new rules.
+ */
+public class RuleChainTest {
+
+    @Test
+    public void unaffectedCandidatesKeepTheirResult() throws IOException {
+        final List<String> bases = bases();
+        final SequentialReplacer rules = SabanciMetuTreeBankAnalysisFormatter2.rules();
+
+        final List<RuleChain> chains = new ArrayList<>();
+        for (String base : bases) {
+            chains.add(RuleChain.apply(rules, base));
+        }
+
+        int affected = 0;
+        int unaffected = 0;
+        for (int k = 0; k < rules.ruleCount(); k++) {
+            for (SequentialReplacer changed : changes(rules, k)) {
+                final int prefix = RuleChain.commonPrefix(rules, changed);
+                final int suffix = RuleChain.commonSuffix(rules, changed, prefix);
+
+                for (RuleChain chain : chains) {
+                    if (chain.affectedBy(changed, prefix, rules.ruleCount() - suffix, changed.ruleCount() - suffix)) {
+                        affected++;
+                    } else {
+                        unaffected++;
+                        assertEquals(chain.base, changed.replace(chain.base), chain.result());
+                    }
+                }
+            }
+        }
+
+        assertTrue(affected > 0);
+        assertTrue(unaffected > 10 * affected);
+    }
+
+    @Test
+    public void chainRecordsEveryAppliedRule() throws IOException {
+        final SequentialReplacer rules = SabanciMetuTreeBankAnalysisFormatter2.rules();
+        for (String base : bases()) {
+            final RuleChain chain = RuleChain.apply(rules, base);
+            assertEquals(rules.replace(base), chain.result());
+            for (int i = 1; i < chain.rules.length; i++) {
+                assertTrue(chain.rules[i - 1] < chain.rules[i]);
+            }
+        }
+    }
+
+    /**
+     * Rule k removed, its replacement changed, and the target of rule k inserted again before it
+     */
+    private static List<SequentialReplacer> changes(SequentialReplacer rules, int k) {
+        final SequentialReplacer.Builder removed = SequentialReplacer.builder();
+        final SequentialReplacer.Builder replaced = SequentialReplacer.builder();
+        final SequentialReplacer.Builder inserted = SequentialReplacer.builder();
+        for (int i = 0; i < rules.ruleCount(); i++) {
+            if (i != k)
+                removed.add(rules.target(i), rules.replacement(i));
+            replaced.add(rules.target(i), i == k ? rules.replacement(i) + "+X" : rules.replacement(i));
+            if (i == k)
+                inserted.add(rules.target(i), "+Y");
+            inserted.add(rules.target(i), rules.replacement(i));
+        }
+        final List<SequentialReplacer> changes = new ArrayList<>();
+        changes.add(removed.build());
+        changes.add(replaced.build());
+        changes.add(inserted.build());
+        return changes;
+    }
+
+    /**
+     * Expected parses of the parse set, and the same with the markers that the rules insert removed
+     */
+    private static List<String> bases() throws IOException {
+        final List<Pair<String, String>> lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                Charset.forName("utf-8")).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+
+        final Set<String> bases = new LinkedHashSet<>();
+        for (int i = 0; i < lines.size(); i += 7) {
+            final String expected = lines.get(i).getRight();
+            bases.add(expected);
+            bases.add(expected.replace("+Pos", ""));
+            bases.add(expected.replace("+Pnon", "").replace("+Nom", ""));
+        }
+        return new ArrayList<>(bases);
+    }
+}
@@ -0,0 +1,87 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Compiled {@link SabanciMetuTreeBankAnalysisFormatter2#rules()} against the plain rule-by-rule replace chain.
+ */
+public class SabanciMetuTreeBankAnalysisFormatter2RulesTest {
+
+    private static SabanciMetuTreeBankAnalysisFormatter2 formatter;
+    private static TurkishMorphology morphology;
+
+    @BeforeClass
+    public static void beforeClass() {
+        formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
+        morphology = MorphologySnapshot.shared();
+    }
+
+    @Test
+    public void chainedRules() {
+        final SequentialReplacer rules = SabanciMetuTreeBankAnalysisFormatter2.rules();
+
+        assertChain(rules, "(1,\"değil+Verb+Neg+Past+A3sg\")");
+        assertChain(rules, "(1,\"ol+Verb+Past+A3sg\")");
+        assertChain(rules, "(1,\"ol+Verb\")(2,\"Adj+PresPart\")");
+        assertChain(rules, "(1,\"şey+Noun+A3pl+Dat\")");
+        assertChain(rules, "(1,\"o+Pron+Demons+A3pl+Acc\")");
+        assertChain(rules, "(1,\"git+Verb\")(2,\"Adv+AfterDoing\")");
+
+        final String untouched = "(1,\"ve+Conj\")";
+        assertSame(untouched, rules.replace(untouched));
+    }
+
+    @Test
+    public void replacingTheEndOfTheBufferLeavesTheStartAsItIs() {
+        final SequentialReplacer replacer = SequentialReplacer.builder().add("a", "b").add("bb", "c").build();
+        final StringBuilder text = new StringBuilder("aa|aa");
+        replacer.replace(text, 3);
+        assertEquals("aa|c", text.toString());
+
+        // a match before the region doesn't count
+        final StringBuilder untouched = new StringBuilder("aa|xx");
+        replacer.replace(untouched, 3);
+        assertEquals("aa|xx", untouched.toString());
+    }
+
+    @Test
+    public void sameAsSequentialReplaceOnWholeParseSet() throws IOException {
+        final SequentialReplacer rules = SabanciMetuTreeBankAnalysisFormatter2.rules();
+
+        final List<Pair<String, String>> lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                Charset.forName("utf-8")).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+
+        final Set<String> surfaces = new LinkedHashSet<>();
+        for (Pair<String, String> line : lines) {
+            surfaces.add(line.getLeft());
+            // gold parses are in the target format already, rules must behave the same on them too
+            assertChain(rules, line.getRight());
+        }
+
+        for (String surface : surfaces) {
+            final WordAnalysis analysis = morphology.analyze(surface);
+            for (SingleAnalysis singleAnalysis : analysis) {
+                assertChain(rules, formatter.formatWithoutRules(singleAnalysis));
+            }
+        }
+    }
+
+    private static void assertChain(SequentialReplacer rules, String base) {
+        assertEquals(base, rules.replaceSequentially(base), rules.replace(base));
+    }
+}
@@ -25,7 +25,7 @@ public class SabanciMetuTreeBankAnalysisFormatter2Test {
     @BeforeClass
     public static void beforeClass() {
         formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
-        morphology = TurkishMorphology.createWithDefaults();
+        morphology = MorphologySnapshot.shared();
     }
 
     @Parameterized.Parameters
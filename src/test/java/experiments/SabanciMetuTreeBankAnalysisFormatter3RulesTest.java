@@ -0,0 +1,200 @@
+package experiments;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * The token conditions of {@link SabanciMetuTreeBankAnalysisFormatter3} against the string rules of
+ * {@link SabanciMetuTreeBankAnalysisFormatter2#rules()}, without a morphology. Every rule target is embedded into
+ * random groups and both formatters must give the same text, so a rule that is added to or changed in
+ * {@code RULES} without the same change in Formatter3 fails here.
+ */
+public class SabanciMetuTreeBankAnalysisFormatter3RulesTest {
+
+    private static final Pattern GROUP_BOUNDARY = Pattern.compile("\"\\)\\((\\d+),\"");
+
+    /**
+     * Tokens that no rule refers to
+     */
+    private static final List<String> NEUTRAL = Arrays.asList("kalem", "Adj", "Conj", "With", "Become", "Cop", "Pnon", "Nom");
+
+    @Test
+    public void everyRuleTargetGivesTheSameOutput() {
+        final SequentialReplacer rules = SabanciMetuTreeBankAnalysisFormatter2.rules();
+        final List<String> ruleTokens = ruleTokens(rules);
+        final Random random = new Random(7);
+
+        for (int rule = 0; rule < rules.ruleCount(); rule++) {
+            final Target target = Target.parse(rules.target(rule));
+            for (int i = 0; i < 200; i++) {
+                // neutral context checks the rule alone, rule tokens as context check how rules chain
+                final List<String> context = i % 2 == 0 ? NEUTRAL : ruleTokens;
+                final List<List<String>> groups = target.embed(random, context);
+                for (boolean addIndices : new boolean[]{true, false}) {
+                    assertSameOutput(rules, groups, addIndices);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void aRuleThatFormatter3DoesNotKnowIsCaught() {
+        final SequentialReplacer rules = SequentialReplacer.builder()
+                .add("+Noun+A3sg\"", "+Noun+A3sg+Pnon+Nom\"")
+                .add("+Noun+With\"", "+Noun+With+Pnon\"")
+                .build();
+        final List<List<String>> groups = Arrays.asList(Arrays.asList("kalem", "Noun", "With"), Arrays.asList("Adj", "With"));
+        assertNotEquals(expected(rules, groups, true), actual(groups, true));
+    }
+
+    private static void assertSameOutput(SequentialReplacer rules, List<List<String>> groups, boolean addIndices) {
+        assertEquals(groups.toString(), expected(rules, groups, addIndices), actual(groups, addIndices));
+    }
+
+    private static String expected(SequentialReplacer rules, List<List<String>> groups, boolean addIndices) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < groups.size(); i++) {
+            text.append('(');
+            if (addIndices)
+                text.append(i + 1).append(',');
+            text.append('"').append(String.join("+", groups.get(i))).append("\")");
+        }
+        return rules.replace(text.toString());
+    }
+
+    private static String actual(List<List<String>> groups, boolean addIndices) {
+        final List<List<String>> renamed = new ArrayList<>();
+        for (List<String> group : groups) {
+            final List<String> tokens = new ArrayList<>();
+            // the first token of a group is a root or a pos, the rest are morpheme ids
+            tokens.add(group.get(0));
+            for (String token : group.subList(1, group.size())) {
+                tokens.add(MorphemeDescriptor.sabanciId(token));
+            }
+            renamed.add(tokens);
+        }
+        final StringBuilder out = new StringBuilder();
+        new SabanciMetuTreeBankAnalysisFormatter3(addIndices).formatTokens(renamed, out);
+        return out.toString();
+    }
+
+    private static List<String> ruleTokens(SequentialReplacer rules) {
+        final List<String> tokens = new ArrayList<>();
+        for (int rule = 0; rule < rules.ruleCount(); rule++) {
+            for (List<String> group : Target.parse(rules.target(rule)).groups) {
+                for (String token : group) {
+                    if (!tokens.contains(token))
+                        tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A rule target split into the tokens of its groups, e.g. {@code +Verb")(2,"Adj} is [[Verb], [Adj]] with the
+     * second group at index 2
+     */
+    private static final class Target {
+        final List<List<String>> groups = new ArrayList<>();
+        /**
+         * Group index of the first group, 0 if the target can be in any group
+         */
+        int firstGroupIndex;
+        boolean startsGroup;
+        boolean afterToken;
+        boolean endsGroup;
+        boolean beforeToken;
+
+        static Target parse(String target) {
+            final Target parsed = new Target();
+            String text = target;
+            if (text.startsWith("\"")) {
+                parsed.startsGroup = true;
+                text = text.substring(1);
+            } else if (text.startsWith("+")) {
+                parsed.afterToken = true;
+                text = text.substring(1);
+            }
+            if (text.endsWith("\"")) {
+                parsed.endsGroup = true;
+                text = text.substring(0, text.length() - 1);
+            } else if (text.endsWith("+")) {
+                parsed.beforeToken = true;
+                text = text.substring(0, text.length() - 1);
+            }
+
+            final Matcher boundary = GROUP_BOUNDARY.matcher(text);
+            int from = 0;
+            while (boundary.find()) {
+                if (parsed.firstGroupIndex == 0)
+                    parsed.firstGroupIndex = Integer.parseInt(boundary.group(1)) - 1;
+                parsed.groups.add(Arrays.asList(text.substring(from, boundary.start()).split("\\+")));
+                from = boundary.end();
+            }
+            parsed.groups.add(Arrays.asList(text.substring(from).split("\\+")));
+            return parsed;
+        }
+
+        /**
+         * @return the target with random tokens before and after it, as far as its delimiters allow, and random
+         * groups around it; every group has at least two tokens, like the groups of an analysis
+         */
+        List<List<String>> embed(Random random, List<String> context) {
+            final int firstGroupIndex = this.firstGroupIndex > 0 ? this.firstGroupIndex : 1 + random.nextInt(2);
+            final List<List<String>> embedded = new ArrayList<>();
+            for (int i = 1; i < firstGroupIndex; i++) {
+                embedded.add(randomGroup(random, context, embedded.isEmpty()));
+            }
+
+            for (int i = 0; i < groups.size(); i++) {
+                final List<String> group = new ArrayList<>();
+                if (i == 0 && !startsGroup) {
+                    final int before = (afterToken ? 1 : 0) + random.nextInt(2);
+                    for (int j = 0; j < before; j++) {
+                        group.add(j == 0 && embedded.isEmpty() ? "kalem" : pick(random, context));
+                    }
+                }
+                group.addAll(groups.get(i));
+                if (i == groups.size() - 1 && !endsGroup) {
+                    final int after = (beforeToken ? 1 : 0) + random.nextInt(2);
+                    for (int j = 0; j < after; j++) {
+                        group.add(pick(random, context));
+                    }
+                }
+                if (group.size() < 2 && !(i == groups.size() - 1 && endsGroup))
+                    group.add(pick(random, context));
+                if (group.size() < 2)
+                    group.add(0, "kalem");
+                embedded.add(group);
+            }
+
+            if (random.nextBoolean())
+                embedded.add(randomGroup(random, context, false));
+            return embedded;
+        }
+
+        private static List<String> randomGroup(Random random, List<String> context, boolean first) {
+            final List<String> group = new ArrayList<>();
+            group.add(first ? "kalem" : pick(random, context));
+            final int size = 1 + random.nextInt(3);
+            for (int i = 0; i < size; i++) {
+                group.add(pick(random, context));
+            }
+            return group;
+        }
+
+        private static String pick(Random random, List<String> tokens) {
+            return tokens.get(random.nextInt(tokens.size()));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.analysis.WordAnalysis;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link SabanciMetuTreeBankAnalysisFormatter3} must be byte-identical to {@link SabanciMetuTreeBankAnalysisFormatter2}.
+ */
+public class SabanciMetuTreeBankAnalysisFormatter3Test {
+
+    private static TurkishMorphology morphology;
+
+    @BeforeClass
+    public static void beforeClass() {
+        morphology = MorphologySnapshot.shared();
+    }
+
+    @Test
+    public void sameAsFormatter2OnWholeParseSet() throws IOException {
+        final List<Pair<String, String>> lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                Charset.forName("utf-8")).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+
+        final Set<String> surfaces = new LinkedHashSet<>();
+        for (Pair<String, String> line : lines) {
+            surfaces.add(line.getLeft());
+        }
+
+        assertSameOutput(surfaces, new SabanciMetuTreeBankAnalysisFormatter2(true), new SabanciMetuTreeBankAnalysisFormatter3(true));
+        assertSameOutput(surfaces, new SabanciMetuTreeBankAnalysisFormatter2(false), new SabanciMetuTreeBankAnalysisFormatter3(false));
+    }
+
+    /**
+     * The tokens go straight into a {@link GoldParse}; it must be the one of the formatted text
+     */
+    @Test
+    public void goldParseOfTheTokensIsTheOneOfTheText() throws IOException {
+        final List<Pair<String, String>> lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                Charset.forName("utf-8")).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+
+        final SabanciMetuTreeBankAnalysisFormatter3 formatter = new SabanciMetuTreeBankAnalysisFormatter3(true);
+        final GoldParse.TagTable tags = new GoldParse.TagTable();
+        for (Pair<String, String> line : lines) {
+            for (SingleAnalysis analysis : morphology.analyze(line.getLeft())) {
+                final String formatted = formatter.format(analysis);
+                final GoldParse parse = GoldParse.of(analysis, formatter, tags);
+                assertEquals(formatted, parse.toString());
+                assertEquals(formatted, GoldParse.parse(formatted, tags, true), parse);
+            }
+        }
+    }
+
+    @Test
+    public void appendsToGivenBuilder() {
+        final SabanciMetuTreeBankAnalysisFormatter3 formatter = new SabanciMetuTreeBankAnalysisFormatter3(true);
+        final SingleAnalysis analysis = morphology.analyze("olan").getAnalysisResults().get(0);
+
+        final StringBuilder builder = new StringBuilder("olan=");
+        formatter.formatTo(analysis, builder);
+        assertEquals("olan=(1,\"ol+Verb+Pos\")(2,\"Adj+PresPart\")", builder.toString());
+    }
+
+    private static void assertSameOutput(Set<String> surfaces, AnalysisFormatter expected, AnalysisFormatter actual) {
+        for (String surface : surfaces) {
+            final WordAnalysis analysis = morphology.analyze(surface);
+            for (SingleAnalysis singleAnalysis : analysis) {
+                assertEquals(surface, expected.format(singleAnalysis), actual.format(singleAnalysis));
+            }
+        }
+    }
+}
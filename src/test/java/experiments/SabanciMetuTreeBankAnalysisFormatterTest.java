@@ -0,0 +1,97 @@
+package experiments;
+
+import com.google.common.base.Joiner;
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import zemberek.core.turkish.PrimaryPos;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.SingleAnalysis;
+import zemberek.morphology.morphotactics.Morpheme;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SabanciMetuTreeBankAnalysisFormatter} against the loop it had before {@link MorphemeDescriptor}s, which
+ * collected the morpheme ids into group lists and joined them.
+ */
+public class SabanciMetuTreeBankAnalysisFormatterTest {
+
+    private static TurkishMorphology morphology;
+
+    @BeforeClass
+    public static void beforeClass() {
+        morphology = MorphologySnapshot.shared();
+    }
+
+    @Test
+    public void sameAsGroupListsOnWholeParseSet() throws IOException {
+        final List<Pair<String, String>> lines = Resources.asCharSource(Resources.getResource("simpleparseset999.txt"),
+                Charset.forName("utf-8")).readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+        final Set<String> surfaces = new LinkedHashSet<>();
+        for (Pair<String, String> line : lines) {
+            surfaces.add(line.getLeft());
+        }
+
+        for (boolean addIndices : new boolean[]{true, false}) {
+            final SabanciMetuTreeBankAnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter(addIndices);
+            int derived = 0;
+            for (String surface : surfaces) {
+                for (SingleAnalysis analysis : morphology.analyze(surface)) {
+                    final String expected = groupLists(analysis, addIndices);
+                    assertEquals(surface, expected, formatter.format(analysis));
+                    if (expected.contains("(2,") || expected.contains("\")(\""))
+                        derived++;
+                }
+            }
+            // the parse set has derivations, so the group boundaries are covered
+            assertTrue(derived > 0);
+        }
+    }
+
+    private static String groupLists(SingleAnalysis analysis, boolean addIndices) {
+        final List<List<String>> groups = new ArrayList<>();
+
+        List<String> currentGroup = new ArrayList<>(Arrays.asList(SabanciMetuTreeBankAnalysisFormatter.lexemePrefixes().of(analysis.getDictionaryItem())));
+        PrimaryPos currentPos = analysis.getDictionaryItem().primaryPos;
+        int currentMorphemeCountInDerivationalGroup = 0;
+
+        final List<SingleAnalysis.MorphemeData> surfaces = analysis.getMorphemeDataList();
+        for (int i = 1; i < surfaces.size(); i++) {
+            final Morpheme morpheme = surfaces.get(i).morpheme;
+
+            if (morpheme.derivational) {
+                groups.add(currentGroup);
+                final PrimaryPos nextPos = surfaces.get(i + 1).morpheme.pos;
+                currentPos = nextPos;
+                currentGroup = new ArrayList<>(Arrays.asList(nextPos.getStringForm()));
+                currentMorphemeCountInDerivationalGroup = 0;
+            } else if (currentPos == PrimaryPos.Verb && !morpheme.id.startsWith("Neg") && currentMorphemeCountInDerivationalGroup == 0) {
+                currentGroup.add("Pos");
+            }
+
+            currentMorphemeCountInDerivationalGroup++;
+            currentGroup.add(morpheme.id);
+        }
+        groups.add(currentGroup);
+
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < groups.size(); i++) {
+            builder.append("(");
+            if (addIndices)
+                builder.append(i + 1).append(",");
+            builder.append("\"").append(Joiner.on("+").join(groups.get(i))).append("\")");
+        }
+        return builder.toString();
+    }
+}
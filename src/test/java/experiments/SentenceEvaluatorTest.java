@@ -0,0 +1,55 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import zemberek.morphology.TurkishMorphology;
+import zemberek.morphology.analysis.AnalysisFormatter;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SentenceEvaluatorTest {
+
+    private static TurkishMorphology morphology;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        morphology = MorphologySnapshot.shared();
+    }
+
+    @Test
+    public void parallelCountsAreSameAsSequential() throws IOException {
+        final AnalysisFormatter formatter = new SabanciMetuTreeBankAnalysisFormatter2(true);
+
+        final SentenceEvaluator.Result sequential = evaluate(formatter, null);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final SentenceEvaluator.Result parallel;
+        try {
+            parallel = evaluate(formatter, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(sequential.sentences, parallel.sentences);
+        assertEquals(sequential.tokens, parallel.tokens);
+        assertEquals(sequential.scoredTokens, parallel.scoredTokens);
+        assertEquals(sequential.top1Correct, parallel.top1Correct);
+        assertEquals(sequential.candidateHits, parallel.candidateHits);
+        assertEquals(sequential.correctSentences, parallel.correctSentences);
+
+        assertEquals(sequential.tokens, sequential.skippedTokens + sequential.scoredTokens);
+        assertTrue(sequential.top1Correct <= sequential.candidateHits);
+    }
+
+    private static SentenceEvaluator.Result evaluate(AnalysisFormatter formatter, ExecutorService executor) throws IOException {
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset999.txt"))) {
+            return new SentenceEvaluator(morphology, formatter, executor).evaluate(reader);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SimpleParseSetReaderTest {
+
+    @Test
+    public void sameLinesAsLineProcessor() throws IOException {
+        final URL resource = Resources.getResource("simpleparseset999.txt");
+        final List<Pair<String, String>> expected = Resources.asCharSource(resource, Charset.forName("utf-8"))
+                .readLines(new DisambiguateSentences.SimpleParseSetValidationLineProcessor());
+
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(resource)) {
+            assertEquals(expected, readAll(reader));
+        }
+
+        final Path gzipped = Files.createTempFile("simpleparseset", ".txt.gz");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped))) {
+                Resources.copy(resource, out);
+            }
+            try (SimpleParseSetReader reader = SimpleParseSetReader.open(gzipped)) {
+                assertEquals(expected, readAll(reader));
+            }
+        } finally {
+            Files.delete(gzipped);
+        }
+    }
+
+    @Test
+    public void sentences() throws IOException {
+        final String input = "Ali=(1,\"Ali+Noun+Prop+A3sg+Pnon+Nom\")\n" +
+                "geldi=(1,\"gel+Verb+Pos+Past+A3sg\")\n" +
+                "#END#OF#SENTENCE#\n" +
+                "#END#OF#SENTENCE#\n" +
+                "a=b=c\n";
+
+        try (SimpleParseSetReader reader = new SimpleParseSetReader(new StringReader(input))) {
+            assertEquals(Arrays.asList(Pair.of("Ali", "(1,\"Ali+Noun+Prop+A3sg+Pnon+Nom\")"), Pair.of("geldi", "(1,\"gel+Verb+Pos+Past+A3sg\")")),
+                    reader.nextSentence());
+            assertEquals(Arrays.asList(Pair.of("a", "b=c")), reader.nextSentence());
+            assertNull(reader.nextSentence());
+        }
+    }
+
+    private static List<Pair<String, String>> readAll(SimpleParseSetReader reader) throws IOException {
+        final List<Pair<String, String>> lines = new ArrayList<>();
+        Pair<String, String> line;
+        while ((line = reader.nextLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,118 @@
+package experiments;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StringDictionaryTest {
+
+    @Test
+    public void equalStringsGetEqualIdsAndDecodeBack() {
+        final StringDictionary dictionary = new StringDictionary();
+        final List<String> strings = Arrays.asList("", "a", "şarklı", "(1,\"ağaç+Noun+A3sg+Pnon+Nom\")", "😀x",
+                Strings.repeat("ğ", StringDictionary.SLAB_SIZE), "b");
+        final List<Integer> ids = new ArrayList<>();
+        for (String string : strings) {
+            ids.add(dictionary.id(string));
+        }
+        for (int i = 0; i < strings.size(); i++) {
+            final String string = strings.get(i);
+            assertEquals(i, (int) ids.get(i));
+            assertEquals((int) ids.get(i), dictionary.id(new StringBuilder(string)));
+            assertEquals(string, dictionary.string(ids.get(i)));
+            assertEquals(string.getBytes(StandardCharsets.UTF_8).length, dictionary.byteLength(ids.get(i)));
+        }
+        assertEquals(strings.size(), dictionary.size());
+        // the long string has a slab of its own, the next one starts a new slab
+        assertEquals(4L * StringDictionary.SLAB_SIZE, dictionary.offHeapBytes());
+    }
+
+    @Test
+    public void entriesAreComparedAndHashedWithoutDecoding() {
+        final StringDictionary first = new StringDictionary();
+        final StringDictionary second = new StringDictionary();
+        second.id("something else");
+
+        final List<String> strings = Arrays.asList("abc", "ab", "abd", "ç", "z", "�", "😀", "Ab", "");
+        for (String a : strings) {
+            for (String b : strings) {
+                assertEquals(a + " " + b, Integer.signum(compareCodePoints(a, b)),
+                        Integer.signum(first.compare(first.id(a), first.id(b))));
+            }
+            assertEquals(first.hash(first.id(a)), second.hash(second.id(a)));
+        }
+        assertNotEquals(first.hash(first.id("ab")), first.hash(first.id("ba")));
+    }
+
+    @Test
+    public void concurrentInterningGivesOneIdPerString() throws Exception {
+        final StringDictionary dictionary = new StringDictionary();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<int[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    final int[] ids = new int[50_000];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = dictionary.id("surface" + i);
+                    }
+                    return ids;
+                }));
+            }
+            final int[] expected = futures.get(0).get();
+            for (Future<int[]> future : futures) {
+                final int[] ids = future.get();
+                assertTrue(Arrays.equals(expected, ids));
+            }
+            assertEquals(50_000, dictionary.size());
+            for (int i = 0; i < expected.length; i += 997) {
+                assertEquals("surface" + i, dictionary.string(expected[i]));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void internedLinesAreTheLinesOfTheParseSet() throws IOException {
+        final StringDictionary dictionary = new StringDictionary();
+        final InternedLines lines = new InternedLines(dictionary);
+        final List<Pair<String, String>> pairs = new ArrayList<>();
+        for (String line : Resources.readLines(Resources.getResource("simpleparseset999.txt"), StandardCharsets.UTF_8)) {
+            if (!SimpleParseSetReader.END_OF_SENTENCE.equals(line)) {
+                final Pair<String, String> pair = DisambiguateSentences.parseLine(line);
+                lines.append(pair.getLeft(), pair.getRight());
+                pairs.add(pair);
+            }
+        }
+
+        assertEquals(pairs, lines);
+        assertEquals(pairs.subList(100, 200), lines.subList(100, 200));
+        assertTrue(dictionary.size() < 2 * lines.size());
+        assertEquals(dictionary.id(pairs.get(7).getRight()), lines.expectedId(7));
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        final int[] first = a.codePoints().toArray();
+        final int[] second = b.codePoints().toArray();
+        for (int i = 0; i < Math.min(first.length, second.length); i++) {
+            if (first[i] != second[i])
+                return Integer.compare(first[i], second[i]);
+        }
+        return Integer.compare(first.length, second.length);
+    }
+}
@@ -0,0 +1,100 @@
+package experiments;
+
+import com.google.common.io.Resources;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TagIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameTokensAsScanningTheParses() throws IOException {
+        final CompiledParseSet parseSet = compile();
+        final TagIndex index = TagIndex.build(parseSet);
+
+        for (String query : new String[]{"Verb", "Pass+Narr", "Pass+Pos+Narr", "+Verb\")(2,\"Adj", "(1,\"değil+Verb",
+                "Verb Pass Narr", "Noun+A3sg+Pnon+Nom\")(2,\"Adj+With", "NoSuchTag"}) {
+            final int[] expected = scan(parseSet, query);
+            assertArrayEquals(query, expected, index.tokens(query));
+            assertArrayEquals(query, sentencesOf(parseSet, expected), index.sentences(query));
+        }
+        assertTrue(index.tokens("Pass+Pos+Narr").length > 0);
+        assertTrue(index.tokens("+Verb\")(2,\"Adj").length > 0);
+    }
+
+    @Test
+    public void savedIndexAnswersTheSame() throws IOException {
+        final CompiledParseSet parseSet = compile();
+        final TagIndex index = TagIndex.build(parseSet);
+        final Path file = folder.newFile("simpleparseset999.tags").toPath();
+        index.save(file);
+
+        final TagIndex opened = TagIndex.open(file, parseSet);
+        assertEquals(index.termCount(), opened.termCount());
+        for (String query : new String[]{"Verb", "Pass+Pos+Narr", "Adj\")(3,\"Noun", "Verb Pass Narr"}) {
+            assertArrayEquals(query, index.tokens(query), opened.tokens(query));
+            assertArrayEquals(query, index.sentences(query), opened.sentences(query));
+        }
+
+        final int[] tokens = opened.tokens("Pass+Pos+Narr");
+        final List<Pair<String, String>> lines = opened.lines(tokens);
+        assertEquals(tokens.length, lines.size());
+        assertEquals(parseSet.lines().get(tokens[tokens.length - 1]), lines.get(lines.size() - 1));
+    }
+
+    private static int[] scan(CompiledParseSet parseSet, String query) {
+        final List<Integer> tokens = new ArrayList<>();
+        for (int token = 0; token < parseSet.tokenCount(); token++) {
+            final List<String> elements = TagIndex.elements(parseSet.lines().get(token).getRight());
+            boolean all = true;
+            for (String fragment : query.split(" ")) {
+                all &= Collections.indexOfSubList(elements, TagIndex.queryElements(fragment)) >= 0;
+            }
+            if (all)
+                tokens.add(token);
+        }
+        return tokens.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] sentencesOf(CompiledParseSet parseSet, int[] tokens) {
+        final List<Integer> sentences = new ArrayList<>();
+        for (int sentence = 0; sentence < parseSet.sentenceCount(); sentence++) {
+            for (int token : tokens) {
+                if (parseSet.sentenceStart(sentence) <= token && token < parseSet.sentenceStart(sentence + 1)) {
+                    sentences.add(sentence);
+                    break;
+                }
+            }
+        }
+        return sentences.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private CompiledParseSet compile() throws IOException {
+        final SimpleParseSetCompiler compiler = new SimpleParseSetCompiler();
+        try (SimpleParseSetReader reader = SimpleParseSetReader.open(Resources.getResource("simpleparseset999.txt"))) {
+            compiler.addAll(reader);
+        }
+
+        final Path file = folder.newFile("simpleparseset999.bin").toPath();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            compiler.writeTo(out);
+        }
+        return CompiledParseSet.open(file);
+    }
+}